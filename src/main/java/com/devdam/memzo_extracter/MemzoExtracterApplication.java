@@ -1,6 +1,7 @@
 package com.devdam.memzo_extracter;
 
 import com.devdam.memzo_extracter.service.CsvService;
+import com.devdam.memzo_extracter.service.EmailRegistry;
 import com.devdam.memzo_extracter.ui.MainWindow;
 import com.formdev.flatlaf.FlatLightLaf;
 import org.springframework.boot.SpringApplication;
@@ -27,11 +28,12 @@ public class MemzoExtracterApplication {
 				// Set FlatLaf look and feel
 				UIManager.setLookAndFeel(new FlatLightLaf());
 				
-				// Get CSV service from Spring context
+				// Get services from Spring context
 				CsvService csvService = context.getBean(CsvService.class);
+				EmailRegistry emailRegistry = context.getBean(EmailRegistry.class);
 				
 				// Create and show the application
-				MainWindow mainWindow = new MainWindow(csvService);
+				MainWindow mainWindow = new MainWindow(csvService, emailRegistry);
 				mainWindow.showWindow();
 				
 				System.out.println("✅ Memzo Extracter UI started successfully!");
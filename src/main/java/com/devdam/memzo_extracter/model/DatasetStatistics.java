@@ -0,0 +1,148 @@
+package com.devdam.memzo_extracter.model;
+
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+
+/**
+ * Every figure shown on the statistics tab, gathered in a single pass over the rows.
+ *
+ * Instances are mutable accumulators: rows are added with {@code accept}, partial results
+ * are merged with {@link #combine(DatasetStatistics)}, which makes the class usable as a
+ * parallel stream collector as well as for updating the figures while a file is still
+ * loading. Not thread-safe; each thread works on its own instance.
+ */
+public class DatasetStatistics {
+    
+    /** Datasets smaller than this are scanned on the calling thread. */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    
+    private int totalRecords;
+    private int completeRegistrations;
+    private int recordsWithEmail;
+    private int recordsWithPhotos;
+    private long totalPhotos;
+    private int zeroPhotos;
+    private int onePhoto;
+    private int multiplePhotos;
+    
+    /**
+     * Scans the whole dataset, splitting the work across the common pool when it is large.
+     */
+    public static DatasetStatistics of(SelfieDataset data) {
+        if (data == null) {
+            return new DatasetStatistics();
+        }
+        int size = data.size();
+        IntStream rows = IntStream.range(0, size);
+        if (size >= PARALLEL_THRESHOLD) {
+            rows = rows.parallel();
+        }
+        return rows.collect(DatasetStatistics::new,
+                (stats, row) -> stats.accept(data, row),
+                DatasetStatistics::combine);
+    }
+    
+    public static Collector<SelfieDetail, DatasetStatistics, DatasetStatistics> collector() {
+        return Collector.of(DatasetStatistics::new,
+                DatasetStatistics::accept,
+                DatasetStatistics::combine,
+                Collector.Characteristics.IDENTITY_FINISH,
+                Collector.Characteristics.UNORDERED);
+    }
+    
+    public void accept(SelfieDataset data, int row) {
+        add(data.hasName(row), data.hasEmail(row), data.hasContact(row), data.getPhotos(row));
+    }
+    
+    /**
+     * Adds rows {@code [from, to)} of the dataset. Counting continues where a previous
+     * call stopped with {@code acceptRows(data, stats.getTotalRecords(), data.size())}.
+     */
+    public void acceptRows(SelfieDataset data, int from, int to) {
+        for (int row = from; row < to; row++) {
+            accept(data, row);
+        }
+    }
+    
+    public void accept(SelfieDetail detail) {
+        add(isPresent(detail.getName()), isPresent(detail.getEmail()), isPresent(detail.getContact()),
+                detail.getPhotos() != null ? detail.getPhotos() : 0);
+    }
+    
+    public DatasetStatistics combine(DatasetStatistics other) {
+        totalRecords += other.totalRecords;
+        completeRegistrations += other.completeRegistrations;
+        recordsWithEmail += other.recordsWithEmail;
+        recordsWithPhotos += other.recordsWithPhotos;
+        totalPhotos += other.totalPhotos;
+        zeroPhotos += other.zeroPhotos;
+        onePhoto += other.onePhoto;
+        multiplePhotos += other.multiplePhotos;
+        return this;
+    }
+    
+    private void add(boolean hasName, boolean hasEmail, boolean hasContact, int photos) {
+        totalRecords++;
+        if (hasEmail) {
+            recordsWithEmail++;
+            if (hasName && hasContact) {
+                completeRegistrations++;
+            }
+        }
+        if (photos > 0) {
+            recordsWithPhotos++;
+        }
+        totalPhotos += photos;
+        
+        if (photos == 0) {
+            zeroPhotos++;
+        } else if (photos == 1) {
+            onePhoto++;
+        } else {
+            multiplePhotos++;
+        }
+    }
+    
+    private static boolean isPresent(String value) {
+        return value != null && !value.isEmpty();
+    }
+    
+    public int getTotalRecords() {
+        return totalRecords;
+    }
+    
+    public int getCompleteRegistrations() {
+        return completeRegistrations;
+    }
+    
+    public int getRecordsWithEmail() {
+        return recordsWithEmail;
+    }
+    
+    public int getRecordsWithPhotos() {
+        return recordsWithPhotos;
+    }
+    
+    public double getAveragePhotos() {
+        return totalRecords > 0 ? (double) totalPhotos / totalRecords : 0.0;
+    }
+    
+    /**
+     * @return complete registrations as a percentage of all records
+     */
+    public double getCompletionRate() {
+        return totalRecords > 0 ? (double) completeRegistrations / totalRecords * 100 : 0;
+    }
+    
+    public int getZeroPhotos() {
+        return zeroPhotos;
+    }
+    
+    public int getOnePhoto() {
+        return onePhoto;
+    }
+    
+    public int getMultiplePhotos() {
+        return multiplePhotos;
+    }
+}
@@ -0,0 +1,154 @@
+package com.devdam.memzo_extracter.model;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The dated rows of a dataset ordered by time, for answering date ranges without a scan.
+ *
+ * Holds a permutation of row ids sorted by {@link SelfieDataset#getDateMinutes(int)}, with
+ * ties in row order, next to the sorted timestamps. A range is two binary searches and
+ * the slice between them. Rows without a date are left out. The index covers the rows
+ * present when it was built or last extended; {@link #getVersion()} tells which dataset
+ * version that was.
+ * Immutable, so it can be shared between threads.
+ */
+public class DateIndex {
+    
+    private final long version;
+    private final int rowCount;
+    private final int[] rows;
+    private final long[] minutes;
+    
+    private DateIndex(long version, int rowCount, int[] rows, long[] minutes) {
+        this.version = version;
+        this.rowCount = rowCount;
+        this.rows = rows;
+        this.minutes = minutes;
+    }
+    
+    public static DateIndex build(SelfieDataset data) {
+        long version = data.getVersion();
+        int size = data.size();
+        int[] rows = sortedDatedRows(data, 0, size);
+        long[] minutes = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            minutes[i] = data.getDateMinutes(rows[i]);
+        }
+        return new DateIndex(version, size, rows, minutes);
+    }
+    
+    /**
+     * Returns an index over the first {@code size} rows of {@code data}, the dataset this
+     * index was built over, which has grown since. Only the rows added since are read
+     * and sorted; they are then merged with the indexed ones.
+     */
+    public DateIndex extend(SelfieDataset data, int size) {
+        long version = data.getVersion();
+        int[] added = sortedDatedRows(data, rowCount, size);
+        int[] mergedRows = new int[rows.length + added.length];
+        long[] mergedMinutes = new long[mergedRows.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < mergedRows.length; k++) {
+            // New rows come after every indexed row, so on equal times indexed rows go first
+            long next = j < added.length ? data.getDateMinutes(added[j]) : Long.MAX_VALUE;
+            if (i < rows.length && (j == added.length || minutes[i] <= next)) {
+                mergedRows[k] = rows[i];
+                mergedMinutes[k] = minutes[i++];
+            } else {
+                mergedRows[k] = added[j++];
+                mergedMinutes[k] = next;
+            }
+        }
+        return new DateIndex(version, Math.max(size, rowCount), mergedRows, mergedMinutes);
+    }
+    
+    // The dated rows in [from, to), ordered by time with ties in row order
+    private static int[] sortedDatedRows(SelfieDataset data, int from, int to) {
+        int dated = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int row = from; row < to; row++) {
+            long value = data.getDateMinutes(row);
+            if (value != SelfieDataset.NO_DATE) {
+                dated++;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        
+        int[] rows = new int[dated];
+        if (dated > 0 && max - min < (1L << 31)) {
+            // Pack (time offset, row) into one long so a primitive sort does the work
+            long[] keys = new long[dated];
+            int next = 0;
+            for (int row = from; row < to; row++) {
+                long value = data.getDateMinutes(row);
+                if (value != SelfieDataset.NO_DATE) {
+                    keys[next++] = ((value - min) << 32) | row;
+                }
+            }
+            Arrays.parallelSort(keys);
+            for (int i = 0; i < dated; i++) {
+                rows[i] = (int) keys[i];
+            }
+        } else if (dated > 0) {
+            // Dates thousands of years apart; not worth a faster path
+            rows = IntStream.range(from, to)
+                    .filter(row -> data.getDateMinutes(row) != SelfieDataset.NO_DATE)
+                    .boxed()
+                    .sorted((a, b) -> Long.compare(data.getDateMinutes(a), data.getDateMinutes(b)))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+        return rows;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * @return the number of dataset rows the index was built over, dated or not
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+    
+    /**
+     * @return the number of rows dated in {@code [fromMinutes, toMinutes)}
+     */
+    public int countBetween(long fromMinutes, long toMinutes) {
+        return Math.max(0, lowerBound(toMinutes) - lowerBound(fromMinutes));
+    }
+    
+    /**
+     * @return the rows dated in {@code [fromMinutes, toMinutes)}, in row order
+     */
+    public int[] rowsBetween(long fromMinutes, long toMinutes) {
+        int from = lowerBound(fromMinutes);
+        int to = lowerBound(toMinutes);
+        if (from >= to) {
+            return new int[0];
+        }
+        int[] slice = Arrays.copyOfRange(rows, from, to);
+        Arrays.sort(slice);
+        return slice;
+    }
+    
+    // Position of the first entry at or after the given time
+    private int lowerBound(long value) {
+        int low = 0;
+        int high = minutes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (minutes[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
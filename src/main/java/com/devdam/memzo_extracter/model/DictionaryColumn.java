@@ -0,0 +1,117 @@
+package com.devdam.memzo_extracter.model;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only string column that stores each distinct value once and an int code per row.
+ * Suited to low-cardinality fields such as counters and timestamps that repeat heavily.
+ * Code 0 is reserved for null.
+ */
+final class DictionaryColumn {
+    
+    private final Map<String, Integer> codes = new HashMap<>();
+    private String[] values = new String[16];
+    private int valueCount = 1; // values[0] is null
+    private int[] rowCodes;
+    
+    // Codes in this column of the values of the last source column appended from, by
+    // source code; 0 until looked up. Keyed by the source's values array, whose strings
+    // this dictionary shares anyway, so no other part of the source is kept reachable
+    private String[] remapValues;
+    private int[] remap;
+    
+    DictionaryColumn(int initialRows) {
+        this.rowCodes = new int[Math.max(1, initialRows)];
+    }
+    
+    /**
+     * Writes the dictionary as length-prefixed UTF-8 values, then the codes of the first
+     * {@code rows} rows.
+     */
+    void writeTo(SelfieDatasetSnapshot.Output out, int rows) throws IOException {
+        out.putInt(valueCount - 1);
+        for (int code = 1; code < valueCount; code++) {
+            out.putString(values[code]);
+        }
+        out.putInts(rowCodes, rows);
+    }
+    
+    static DictionaryColumn readFrom(SelfieDatasetSnapshot.Input in, int rows) throws IOException {
+        int distinct = in.getLength(Integer.BYTES);
+        DictionaryColumn column = new DictionaryColumn(rows + 1); // room for the next row
+        for (int i = 0; i < distinct; i++) {
+            String value = in.getString();
+            if (value.isEmpty() || column.codeOf(value) != i + 1) {
+                throw SelfieDatasetSnapshot.Input.corrupt(); // empty or repeated value
+            }
+        }
+        in.getInts(column.rowCodes, rows);
+        for (int row = 0; row < rows; row++) {
+            if (column.rowCodes[row] < 0 || column.rowCodes[row] > distinct) {
+                throw SelfieDatasetSnapshot.Input.corrupt();
+            }
+        }
+        return column;
+    }
+    
+    void append(int row, String value) {
+        if (row >= rowCodes.length) {
+            rowCodes = Arrays.copyOf(rowCodes, Utf8Column.grow(rowCodes.length, row + 1));
+        }
+        rowCodes[row] = value == null || value.isEmpty() ? 0 : codeOf(value);
+    }
+    
+    /**
+     * Appends a value of another column, looking each distinct source value up only once
+     * for a run of appends from the same column.
+     */
+    void append(int row, DictionaryColumn source, int sourceRow) {
+        if (row >= rowCodes.length) {
+            rowCodes = Arrays.copyOf(rowCodes, Utf8Column.grow(rowCodes.length, row + 1));
+        }
+        int sourceCode = source.rowCodes[sourceRow];
+        if (source.values != remapValues) {
+            remapValues = source.values;
+            remap = new int[source.values.length];
+        }
+        int code = remap[sourceCode];
+        if (code == 0 && sourceCode != 0) {
+            code = codeOf(source.values[sourceCode]);
+            remap[sourceCode] = code;
+        }
+        rowCodes[row] = code;
+    }
+    
+    String get(int row) {
+        return values[rowCodes[row]];
+    }
+    
+    boolean isPresent(int row) {
+        return rowCodes[row] != 0;
+    }
+    
+    int distinctValues() {
+        return valueCount - 1;
+    }
+    
+    long heapBytes() {
+        // Rough: row codes plus the dictionary's strings and map entries
+        return 4L * rowCodes.length + 96L * valueCount;
+    }
+    
+    private int codeOf(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (valueCount == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[valueCount] = value;
+        codes.put(value, valueCount);
+        return valueCount++;
+    }
+}
@@ -0,0 +1,228 @@
+package com.devdam.memzo_extracter.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Allocation-free handling of Memzo export dates such as {@code "05 September 2026 14:30"}
+ * ({@code dd MMMM yyyy HH:mm}).
+ *
+ * Dates are kept as epoch minutes: minutes since 1970-01-01T00:00 of the wall-clock time,
+ * with no time zone applied. They are parsed once at ingest so filtering and sorting work
+ * on plain longs.
+ */
+public final class MemzoDates {
+    
+    /** Returned for missing or unparseable dates. Sorts before every real date. */
+    public static final long NO_DATE = Long.MIN_VALUE;
+    
+    private static final String[] MONTHS = {
+        "January", "February", "March", "April", "May", "June",
+        "July", "August", "September", "October", "November", "December"
+    };
+    
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    
+    private MemzoDates() {
+    }
+    
+    /**
+     * Parses a {@code dd MMMM yyyy HH:mm} date. Month names match case-insensitively and
+     * a day past the end of the month is clamped to its last day, as the lenient
+     * {@code DateTimeFormatter} resolver did.
+     *
+     * @return epoch minutes, or {@link #NO_DATE} if the value is blank or malformed
+     */
+    public static long parseEpochMinutes(String value) {
+        if (value == null) {
+            return NO_DATE;
+        }
+        int end = value.length();
+        int pos = 0;
+        while (pos < end && value.charAt(pos) <= ' ') pos++;
+        while (end > pos && value.charAt(end - 1) <= ' ') end--;
+        if (end - pos < 16) { // shortest form: "01 May 2026 00:00"
+            return NO_DATE;
+        }
+        
+        int day = twoDigits(value, pos);
+        if (day < 1 || value.charAt(pos + 2) != ' ') {
+            return NO_DATE;
+        }
+        pos += 3;
+        
+        int nameStart = pos;
+        while (pos < end && isAsciiLetter(value.charAt(pos))) pos++;
+        int month = monthOf(value, nameStart, pos - nameStart);
+        if (month == 0 || pos >= end || value.charAt(pos) != ' ') {
+            return NO_DATE;
+        }
+        pos++;
+        
+        int yearStart = pos;
+        int year = 0;
+        while (pos < end && pos - yearStart < 9) {
+            int digit = value.charAt(pos) - '0';
+            if (digit < 0 || digit > 9) break;
+            year = year * 10 + digit;
+            pos++;
+        }
+        if (pos - yearStart < 4 || end - pos != 6 || value.charAt(pos) != ' ') {
+            return NO_DATE;
+        }
+        pos++;
+        
+        int hour = twoDigits(value, pos);
+        int minute = twoDigits(value, pos + 3);
+        if (value.charAt(pos + 2) != ':' || hour < 0 || hour > 23 || minute < 0 || minute > 59 || day > 31) {
+            return NO_DATE;
+        }
+        
+        day = Math.min(day, lengthOfMonth(year, month));
+        return daysFromCivil(year, month, day) * MINUTES_PER_DAY + hour * 60L + minute;
+    }
+    
+    /**
+     * Parses a {@code yyyy-MM-dd HH:mm} date, as written by {@link #formatIso(long)} and
+     * stamped on entries of the unique email database. Unlike Memzo dates, days past the
+     * end of the month are malformed.
+     *
+     * @return epoch minutes, or {@link #NO_DATE} if the value is blank or malformed
+     */
+    public static long parseIsoEpochMinutes(String value) {
+        if (value == null) {
+            return NO_DATE;
+        }
+        int end = value.length();
+        int pos = 0;
+        while (pos < end && value.charAt(pos) <= ' ') pos++;
+        while (end > pos && value.charAt(end - 1) <= ' ') end--;
+        if (end - pos != 16 || value.charAt(pos + 4) != '-' || value.charAt(pos + 7) != '-'
+                || value.charAt(pos + 10) != ' ' || value.charAt(pos + 13) != ':') {
+            return NO_DATE;
+        }
+        
+        int century = twoDigits(value, pos);
+        int yearOfCentury = twoDigits(value, pos + 2);
+        int month = twoDigits(value, pos + 5);
+        int day = twoDigits(value, pos + 8);
+        int hour = twoDigits(value, pos + 11);
+        int minute = twoDigits(value, pos + 14);
+        int year = century * 100 + yearOfCentury;
+        if (century < 0 || yearOfCentury < 0 || month < 1 || month > 12 || day < 1
+                || day > lengthOfMonth(year, month) || hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return NO_DATE;
+        }
+        return daysFromCivil(year, month, day) * MINUTES_PER_DAY + hour * 60L + minute;
+    }
+    
+    public static long toEpochMinutes(LocalDateTime dateTime) {
+        if (dateTime == null) {
+            return NO_DATE;
+        }
+        return dateTime.toLocalDate().toEpochDay() * MINUTES_PER_DAY
+                + dateTime.getHour() * 60L + dateTime.getMinute();
+    }
+    
+    /**
+     * @return the epoch minute at which the given day starts
+     */
+    public static long toEpochMinutes(LocalDate date) {
+        return date == null ? NO_DATE : date.toEpochDay() * MINUTES_PER_DAY;
+    }
+    
+    public static LocalDateTime toLocalDateTime(long epochMinutes) {
+        if (epochMinutes == NO_DATE) {
+            return null;
+        }
+        long days = Math.floorDiv(epochMinutes, MINUTES_PER_DAY);
+        int minuteOfDay = Math.floorMod(epochMinutes, MINUTES_PER_DAY);
+        return LocalDate.ofEpochDay(days).atTime(minuteOfDay / 60, minuteOfDay % 60);
+    }
+    
+    /**
+     * Formats epoch minutes as {@code yyyy-MM-dd HH:mm} without going through
+     * {@code java.time}.
+     */
+    public static String formatIso(long epochMinutes) {
+        if (epochMinutes == NO_DATE) {
+            return null;
+        }
+        long days = Math.floorDiv(epochMinutes, MINUTES_PER_DAY);
+        int minuteOfDay = Math.floorMod(epochMinutes, MINUTES_PER_DAY);
+        
+        // Civil-from-days (Howard Hinnant's algorithm)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        
+        char[] out = new char[16];
+        writeDigits(out, 0, year, 4);
+        out[4] = '-';
+        writeDigits(out, 5, month, 2);
+        out[7] = '-';
+        writeDigits(out, 8, day, 2);
+        out[10] = ' ';
+        writeDigits(out, 11, minuteOfDay / 60, 2);
+        out[13] = ':';
+        writeDigits(out, 14, minuteOfDay % 60, 2);
+        return new String(out);
+    }
+    
+    private static void writeDigits(char[] out, int offset, long value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+    
+    private static int twoDigits(String value, int pos) {
+        int tens = value.charAt(pos) - '0';
+        int ones = value.charAt(pos + 1) - '0';
+        if (tens < 0 || tens > 9 || ones < 0 || ones > 9) {
+            return -1;
+        }
+        return tens * 10 + ones;
+    }
+    
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+    
+    private static int monthOf(String value, int start, int length) {
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (MONTHS[i].length() == length && value.regionMatches(true, start, MONTHS[i], 0, length)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+    
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+    
+    // Days-from-civil (Howard Hinnant's algorithm)
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
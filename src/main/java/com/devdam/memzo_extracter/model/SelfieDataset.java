@@ -0,0 +1,386 @@
+package com.devdam.memzo_extracter.model;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Columnar, append-only store for parsed selfie rows, shared by all panels.
+ *
+ * Numeric fields live in primitive arrays, high-cardinality strings are UTF-8 packed and
+ * repetitive strings are dictionary encoded, which keeps the per-row footprint a fraction
+ * of a {@link SelfieDetail} object graph and lets aggregate scans walk flat arrays.
+ * Individual rows can still be viewed as {@link SelfieDetail} through {@link #getRow(int)}
+ * and {@link #asList()}. Rows may also be tagged with the name of the file they came
+ * from, when several files are imported into one dataset.
+ *
+ * A dataset has a single writer. Readers see every row below the {@link #size()} they
+ * observed, as each row is fully written before the size is published. Every mutation
+ * also moves the dataset to a new {@link #getVersion() version}, so derived views can be
+ * cached against it. Versions are taken when asked for rather than on every add, so
+ * writers on different datasets never contend on the shared counter.
+ */
+public class SelfieDataset {
+    
+    /** Sentinel stored for rows whose date is missing or unparseable. */
+    public static final long NO_DATE = MemzoDates.NO_DATE;
+    
+    // Shared by all datasets so a version never repeats, even across instances
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    
+    private final Utf8Column image;
+    private final Utf8Column name;
+    private final Utf8Column email;
+    private final Utf8Column contact;
+    private final DictionaryColumn downloadRequests;
+    private final DictionaryColumn photosShared;
+    private final DictionaryColumn photosDownload;
+    private final DictionaryColumn date;
+    private final DictionaryColumn sourceFile;
+    private int[] photos;
+    private long[] dateMinutes;
+    private volatile int size;
+    private final Object versionLock = new Object();
+    private long version; // guarded by versionLock, with the size it stands for
+    private int versionedSize = -1;
+    
+    public SelfieDataset() {
+        this(1024);
+    }
+    
+    public SelfieDataset(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        this.image = new Utf8Column(capacity);
+        this.name = new Utf8Column(capacity);
+        this.email = new Utf8Column(capacity);
+        this.contact = new Utf8Column(capacity);
+        this.downloadRequests = new DictionaryColumn(capacity);
+        this.photosShared = new DictionaryColumn(capacity);
+        this.photosDownload = new DictionaryColumn(capacity);
+        this.date = new DictionaryColumn(capacity);
+        this.sourceFile = new DictionaryColumn(capacity);
+        this.photos = new int[capacity];
+        this.dateMinutes = new long[capacity];
+    }
+    
+    private SelfieDataset(Utf8Column image, Utf8Column name, Utf8Column email, Utf8Column contact,
+            DictionaryColumn downloadRequests, DictionaryColumn photosShared, DictionaryColumn photosDownload,
+            DictionaryColumn date, DictionaryColumn sourceFile, int[] photos, long[] dateMinutes, int size) {
+        this.image = image;
+        this.name = name;
+        this.email = email;
+        this.contact = contact;
+        this.downloadRequests = downloadRequests;
+        this.photosShared = photosShared;
+        this.photosDownload = photosDownload;
+        this.date = date;
+        this.sourceFile = sourceFile;
+        this.photos = photos;
+        this.dateMinutes = dateMinutes;
+        this.size = size;
+    }
+    
+    public static SelfieDataset of(Collection<SelfieDetail> details) {
+        SelfieDataset dataset = new SelfieDataset(details.size());
+        details.forEach(dataset::add);
+        return dataset;
+    }
+    
+    public void add(SelfieDetail detail) {
+        add(detail, null);
+    }
+    
+    /**
+     * Adds a row tagged with the name of the file it came from.
+     */
+    public void add(SelfieDetail detail, String sourceFile) {
+        int row = size;
+        if (row == photos.length) {
+            int capacity = Utf8Column.grow(photos.length, row + 1);
+            photos = Arrays.copyOf(photos, capacity);
+            dateMinutes = Arrays.copyOf(dateMinutes, capacity);
+        }
+        
+        image.append(row, detail.getImage());
+        name.append(row, detail.getName());
+        email.append(row, detail.getEmail());
+        contact.append(row, detail.getContact());
+        downloadRequests.append(row, detail.getDownloadRequests());
+        photosShared.append(row, detail.getPhotosShared());
+        photosDownload.append(row, detail.getPhotosDownload());
+        date.append(row, detail.getDate());
+        this.sourceFile.append(row, sourceFile);
+        photos[row] = detail.getPhotos() != null ? detail.getPhotos() : 0;
+        dateMinutes[row] = MemzoDates.parseEpochMinutes(detail.getDate());
+        
+        size = row + 1; // publish the row
+    }
+    
+    /**
+     * Appends row {@code row} of another dataset tagged with {@code sourceFile}. The
+     * values are copied in their encoded form, so nothing is decoded or parsed again.
+     * {@code other} must not be this dataset.
+     */
+    public void add(SelfieDataset other, int row, String sourceFile) {
+        int target = copyRow(other, row);
+        this.sourceFile.append(target, sourceFile);
+        size = target + 1; // publish the row
+    }
+    
+    /**
+     * Appends every row of another dataset, source file tags included, copying the values
+     * in their encoded form. {@code other} must not be this dataset.
+     */
+    public void addAll(SelfieDataset other) {
+        for (int row = 0, rows = other.size(); row < rows; row++) {
+            int target = copyRow(other, row);
+            sourceFile.append(target, other.sourceFile, row);
+            size = target + 1; // publish the row
+        }
+    }
+    
+    // Copies all but the source file tag into the next row, which is not published yet
+    private int copyRow(SelfieDataset other, int row) {
+        int target = size;
+        if (target == photos.length) {
+            int capacity = Utf8Column.grow(photos.length, target + 1);
+            photos = Arrays.copyOf(photos, capacity);
+            dateMinutes = Arrays.copyOf(dateMinutes, capacity);
+        }
+        
+        image.append(target, other.image, row);
+        name.append(target, other.name, row);
+        email.append(target, other.email, row);
+        contact.append(target, other.contact, row);
+        downloadRequests.append(target, other.downloadRequests, row);
+        photosShared.append(target, other.photosShared, row);
+        photosDownload.append(target, other.photosDownload, row);
+        date.append(target, other.date, row);
+        photos[target] = other.photos[row];
+        dateMinutes[target] = other.dateMinutes[row];
+        return target;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Stamp that changes whenever rows are added. Versions are unique across all datasets,
+     * so an equal version means the same dataset with the same rows. A reader that takes
+     * the version before {@link #size()} sees at least the rows that version stands for.
+     */
+    public long getVersion() {
+        synchronized (versionLock) {
+            int current = size;
+            if (current != versionedSize) {
+                version = VERSIONS.incrementAndGet();
+                versionedSize = current;
+            }
+            return version;
+        }
+    }
+    
+    public String getImage(int row) {
+        return image.get(row);
+    }
+    
+    public String getName(int row) {
+        return name.get(row);
+    }
+    
+    public String getEmail(int row) {
+        return email.get(row);
+    }
+    
+    public String getContact(int row) {
+        return contact.get(row);
+    }
+    
+    public String getDownloadRequests(int row) {
+        return downloadRequests.get(row);
+    }
+    
+    public int getPhotos(int row) {
+        return photos[row];
+    }
+    
+    public String getPhotosShared(int row) {
+        return photosShared.get(row);
+    }
+    
+    public String getPhotosDownload(int row) {
+        return photosDownload.get(row);
+    }
+    
+    public String getDate(int row) {
+        return date.get(row);
+    }
+    
+    /**
+     * @return the name of the file the row came from, or {@code null} if it was not tagged
+     */
+    public String getSourceFile(int row) {
+        return sourceFile.get(row);
+    }
+    
+    /**
+     * @return minutes since 1970-01-01T00:00 of the row's wall-clock date, or {@link #NO_DATE}
+     */
+    public long getDateMinutes(int row) {
+        return dateMinutes[row];
+    }
+    
+    public boolean hasName(int row) {
+        return name.isPresent(row);
+    }
+    
+    public boolean hasEmail(int row) {
+        return email.isPresent(row);
+    }
+    
+    public boolean hasContact(int row) {
+        return contact.isPresent(row);
+    }
+    
+    /**
+     * @return whether the row's email ends with the UTF-8 {@code suffix}, ignoring ASCII
+     *         case; the suffix must be lower case. Does not decode the email.
+     */
+    public boolean emailEndsWith(int row, byte[] suffix) {
+        return email.endsWithIgnoreCase(row, suffix);
+    }
+    
+    /**
+     * @return the {@link com.devdam.memzo_extracter.util.EmailKeys#fingerprint email
+     *         fingerprint} of the row's email computed from its stored bytes, or 0 if the
+     *         row has no email
+     */
+    public long getEmailFingerprint(int row) {
+        return email.fingerprint(row);
+    }
+    
+    /**
+     * Materializes one row as a standalone {@link SelfieDetail}.
+     */
+    public SelfieDetail getRow(int row) {
+        return SelfieDetail.builder()
+                .image(image.get(row))
+                .name(name.get(row))
+                .email(email.get(row))
+                .contact(contact.get(row))
+                .downloadRequests(downloadRequests.get(row))
+                .photos(photos[row])
+                .photosShared(photosShared.get(row))
+                .photosDownload(photosDownload.get(row))
+                .date(date.get(row))
+                .build();
+    }
+    
+    /**
+     * Read-only list view over the rows present when the view is created. Each
+     * {@code get} materializes a fresh {@link SelfieDetail}.
+     */
+    public List<SelfieDetail> asList() {
+        return new RowList(size);
+    }
+    
+    /**
+     * Same as {@link #asList()} restricted to the given rows, in the given order.
+     */
+    public List<SelfieDetail> asList(int[] rows) {
+        return new RowSubList(rows);
+    }
+    
+    /**
+     * Approximate heap used by the column storage, for diagnostics.
+     */
+    public long estimatedHeapBytes() {
+        return image.heapBytes() + name.heapBytes() + email.heapBytes() + contact.heapBytes()
+                + downloadRequests.heapBytes() + photosShared.heapBytes()
+                + photosDownload.heapBytes() + date.heapBytes() + sourceFile.heapBytes()
+                + 4L * photos.length + 8L * dateMinutes.length;
+    }
+    
+    /**
+     * Writes the first {@code rows} rows column by column, for {@link SelfieDatasetSnapshot}.
+     */
+    void writeTo(SelfieDatasetSnapshot.Output out, int rows) throws IOException {
+        image.writeTo(out, rows);
+        name.writeTo(out, rows);
+        email.writeTo(out, rows);
+        contact.writeTo(out, rows);
+        downloadRequests.writeTo(out, rows);
+        photosShared.writeTo(out, rows);
+        photosDownload.writeTo(out, rows);
+        date.writeTo(out, rows);
+        sourceFile.writeTo(out, rows);
+        out.putInts(photos, rows);
+        out.putLongs(dateMinutes, rows);
+    }
+    
+    static SelfieDataset readFrom(SelfieDatasetSnapshot.Input in, int rows) throws IOException {
+        Utf8Column image = Utf8Column.readFrom(in, rows);
+        Utf8Column name = Utf8Column.readFrom(in, rows);
+        Utf8Column email = Utf8Column.readFrom(in, rows);
+        Utf8Column contact = Utf8Column.readFrom(in, rows);
+        DictionaryColumn downloadRequests = DictionaryColumn.readFrom(in, rows);
+        DictionaryColumn photosShared = DictionaryColumn.readFrom(in, rows);
+        DictionaryColumn photosDownload = DictionaryColumn.readFrom(in, rows);
+        DictionaryColumn date = DictionaryColumn.readFrom(in, rows);
+        DictionaryColumn sourceFile = DictionaryColumn.readFrom(in, rows);
+        int[] photos = new int[rows + 1]; // room for the next row
+        in.getInts(photos, rows);
+        long[] dateMinutes = new long[rows + 1];
+        in.getLongs(dateMinutes, rows);
+        return new SelfieDataset(image, name, email, contact, downloadRequests, photosShared,
+                photosDownload, date, sourceFile, photos, dateMinutes, rows);
+    }
+    
+    private final class RowList extends AbstractList<SelfieDetail> implements RandomAccess {
+        private final int rowCount;
+        
+        RowList(int rowCount) {
+            this.rowCount = rowCount;
+        }
+        
+        @Override
+        public SelfieDetail get(int index) {
+            if (index < 0 || index >= rowCount) {
+                throw new IndexOutOfBoundsException("Row " + index + " of " + rowCount);
+            }
+            return getRow(index);
+        }
+        
+        @Override
+        public int size() {
+            return rowCount;
+        }
+    }
+    
+    private final class RowSubList extends AbstractList<SelfieDetail> implements RandomAccess {
+        private final int[] rows;
+        
+        RowSubList(int[] rows) {
+            this.rows = rows;
+        }
+        
+        @Override
+        public SelfieDetail get(int index) {
+            return getRow(rows[index]);
+        }
+        
+        @Override
+        public int size() {
+            return rows.length;
+        }
+    }
+}
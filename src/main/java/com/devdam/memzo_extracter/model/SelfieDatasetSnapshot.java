@@ -0,0 +1,318 @@
+package com.devdam.memzo_extracter.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary image of a {@link SelfieDataset}, written column by column so it can be read
+ * back with bulk copies instead of re-parsing the CSV it came from.
+ *
+ * The file is a header (magic, format, row count, the content hash and a description of
+ * the source it was made from), then every column as length-prefixed sections of raw
+ * little-endian arrays in the same layout the dataset keeps in memory, then the magic
+ * again. A file cut short by a crash lacks the trailing magic and is rejected on open.
+ * Reading maps the file a window at a time and copies each section straight into the
+ * column's array, so the cost is close to that of reading the bytes from disk.
+ */
+public final class SelfieDatasetSnapshot implements Closeable {
+    
+    private static final long MAGIC = 0x4D454D5A4F534E50L; // "MEMZOSNP"
+    private static final int FORMAT = 2;
+    
+    private final FileChannel channel;
+    private final int rowCount;
+    private final long contentHash;
+    private final String source;
+    private final long bodyOffset;
+    
+    private SelfieDatasetSnapshot(FileChannel channel, int rowCount, long contentHash, String source, long bodyOffset) {
+        this.channel = channel;
+        this.rowCount = rowCount;
+        this.contentHash = contentHash;
+        this.source = source;
+        this.bodyOffset = bodyOffset;
+    }
+    
+    /**
+     * Writes the rows present in {@code data} to {@code file}, replacing its contents.
+     * The dataset must not be written to meanwhile; reading it is fine.
+     *
+     * @param source      identifies what the data was loaded from, for {@link #getSource()}
+     * @param contentHash hash of the source's contents, for {@link #getContentHash()}
+     */
+    public static void write(SelfieDataset data, Path file, String source, long contentHash) throws IOException {
+        int rows = data.size();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            out.putLong(MAGIC);
+            out.putInt(FORMAT);
+            out.putInt(rows);
+            out.putLong(contentHash);
+            out.putString(source);
+            data.writeTo(out, rows);
+            out.putLong(MAGIC);
+            out.flush();
+            channel.force(false);
+        }
+    }
+    
+    /**
+     * Opens a snapshot and reads its header. Nothing else is read until {@link #read()}.
+     *
+     * @throws IOException if the file is not a complete snapshot in this format
+     */
+    public static SelfieDatasetSnapshot open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            Input in = new Input(channel, 0);
+            if (channel.size() < 2 * Long.BYTES + 2 * Integer.BYTES || in.getLong() != MAGIC || in.getInt() != FORMAT
+                    || trailer(channel) != MAGIC) {
+                throw new IOException("Not a complete dataset snapshot: " + file);
+            }
+            int rows = in.getInt();
+            long contentHash = in.getLong();
+            String source = in.getString();
+            if (rows < 0) {
+                throw Input.corrupt();
+            }
+            return new SelfieDatasetSnapshot(channel, rows, contentHash, source, in.position());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    private static long trailer(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        long position = channel.size() - Long.BYTES;
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+            // read the whole trailer
+        }
+        return buffer.getLong(0);
+    }
+    
+    public int getRowCount() {
+        return rowCount;
+    }
+    
+    public long getContentHash() {
+        return contentHash;
+    }
+    
+    public String getSource() {
+        return source;
+    }
+    
+    /**
+     * Reads the rows into a new dataset, which can be appended to like any other.
+     *
+     * @throws IOException if the file cannot be read or its contents are inconsistent
+     */
+    public SelfieDataset read() throws IOException {
+        return read(Input.WINDOW_SIZE);
+    }
+    
+    // Tests read through small windows so that sections straddle them
+    SelfieDataset read(long windowSize) throws IOException {
+        Input in = new Input(channel, bodyOffset, windowSize);
+        SelfieDataset data = SelfieDataset.readFrom(in, rowCount);
+        if (in.getLong() != MAGIC) {
+            throw Input.corrupt();
+        }
+        return data;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    /**
+     * Sequential writer of little-endian values through a direct buffer.
+     */
+    static final class Output {
+        private static final int BUFFER_SIZE = 1 << 20;
+        
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+        
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+        
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+        
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            putBytes(bytes, 0, bytes.length);
+        }
+        
+        void putInts(int[] values, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                ensure(Integer.BYTES);
+                int n = Math.min(count - done, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().put(values, done, n);
+                buffer.position(buffer.position() + n * Integer.BYTES);
+                done += n;
+            }
+        }
+        
+        void putLongs(long[] values, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                ensure(Long.BYTES);
+                int n = Math.min(count - done, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().put(values, done, n);
+                buffer.position(buffer.position() + n * Long.BYTES);
+                done += n;
+            }
+        }
+        
+        void putBytes(byte[] values, int from, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                ensure(1);
+                int n = Math.min(count - done, buffer.remaining());
+                buffer.put(values, from + done, n);
+                done += n;
+            }
+        }
+        
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+    
+    /**
+     * Sequential reader of little-endian values from a file mapped a window at a time,
+     * so files beyond the 2 GB limit of a single mapping can be read too.
+     */
+    static final class Input {
+        private static final long WINDOW_SIZE = 1L << 28;
+        
+        private final FileChannel channel;
+        private final long size;
+        private final long windowSize;
+        private long windowStart;
+        private MappedByteBuffer buffer;
+        
+        Input(FileChannel channel, long position) throws IOException {
+            this(channel, position, WINDOW_SIZE);
+        }
+        
+        Input(FileChannel channel, long position, long windowSize) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.windowSize = windowSize;
+            map(position);
+        }
+        
+        static IOException corrupt() {
+            return new IOException("Corrupt dataset snapshot");
+        }
+        
+        long position() {
+            return windowStart + buffer.position();
+        }
+        
+        int getInt() throws IOException {
+            ensure(Integer.BYTES);
+            return buffer.getInt();
+        }
+        
+        long getLong() throws IOException {
+            ensure(Long.BYTES);
+            return buffer.getLong();
+        }
+        
+        String getString() throws IOException {
+            int length = getLength(1);
+            byte[] bytes = new byte[length];
+            getBytes(bytes, length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        /**
+         * Reads a count of elements of the given size and checks that they fit in the file.
+         */
+        int getLength(int elementBytes) throws IOException {
+            int length = getInt();
+            if (length < 0 || (long) length * elementBytes > size - position()) {
+                throw corrupt();
+            }
+            return length;
+        }
+        
+        void getInts(int[] values, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                ensure(Integer.BYTES);
+                int n = Math.min(count - done, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().get(values, done, n);
+                buffer.position(buffer.position() + n * Integer.BYTES);
+                done += n;
+            }
+        }
+        
+        void getLongs(long[] values, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                ensure(Long.BYTES);
+                int n = Math.min(count - done, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().get(values, done, n);
+                buffer.position(buffer.position() + n * Long.BYTES);
+                done += n;
+            }
+        }
+        
+        void getBytes(byte[] values, int count) throws IOException {
+            for (int done = 0; done < count; ) {
+                ensure(1);
+                int n = Math.min(count - done, buffer.remaining());
+                buffer.get(values, done, n);
+                done += n;
+            }
+        }
+        
+        // Moves the window up to the current position when fewer than the wanted bytes are left in it
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            long position = position();
+            if (size - position < bytes) {
+                throw corrupt();
+            }
+            map(position);
+        }
+        
+        private void map(long position) throws IOException {
+            windowStart = position;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
@@ -6,7 +6,6 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * Model class representing selfie details extracted from CSV data.
@@ -29,15 +28,7 @@ public class SelfieDetail {
     
     // Utility method to parse date string to LocalDateTime
     public LocalDateTime getParsedDate() {
-        if (date == null || date.trim().isEmpty()) {
-            return null;
-        }
-        try {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd MMMM yyyy HH:mm");
-            return LocalDateTime.parse(date, formatter);
-        } catch (Exception e) {
-            return null;
-        }
+        return MemzoDates.toLocalDateTime(MemzoDates.parseEpochMinutes(date));
     }
     
     // Utility method to check if this record has user information
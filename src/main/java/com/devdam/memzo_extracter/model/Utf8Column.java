@@ -0,0 +1,168 @@
+package com.devdam.memzo_extracter.model;
+
+import com.devdam.memzo_extracter.util.EmailKeys;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append-only string column that packs every value as UTF-8 into one shared byte array,
+ * addressed by an offsets array. Used for high-cardinality fields such as emails and
+ * image URLs, where a dictionary would not pay off but per-value String objects would.
+ * Empty and null values are both stored as zero-length entries and read back as null.
+ */
+final class Utf8Column {
+    
+    private byte[] bytes;
+    private int[] offsets; // offsets[row] .. offsets[row + 1] delimit a value
+    private int byteCount;
+    
+    Utf8Column(int initialRows) {
+        this.bytes = new byte[Math.max(16, initialRows * 16)];
+        this.offsets = new int[Math.max(2, initialRows + 1)];
+    }
+    
+    private Utf8Column(byte[] bytes, int[] offsets, int byteCount) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.byteCount = byteCount;
+    }
+    
+    /**
+     * Writes the first {@code rows} values as the length of their bytes, the offsets and
+     * then the bytes.
+     */
+    void writeTo(SelfieDatasetSnapshot.Output out, int rows) throws IOException {
+        int length = offsets[rows];
+        out.putInt(length);
+        out.putInts(offsets, rows + 1);
+        out.putBytes(bytes, 0, length);
+    }
+    
+    static Utf8Column readFrom(SelfieDatasetSnapshot.Input in, int rows) throws IOException {
+        int length = in.getLength(1);
+        int[] offsets = new int[rows + 2]; // room for the next row
+        in.getInts(offsets, rows + 1);
+        byte[] bytes = new byte[Math.max(16, length)];
+        in.getBytes(bytes, length);
+        if (offsets[0] != 0 || offsets[rows] != length) {
+            throw SelfieDatasetSnapshot.Input.corrupt();
+        }
+        for (int row = 0; row < rows; row++) {
+            if (offsets[row + 1] < offsets[row]) {
+                throw SelfieDatasetSnapshot.Input.corrupt();
+            }
+        }
+        return new Utf8Column(bytes, offsets, length);
+    }
+    
+    void append(int row, String value) {
+        if (row + 1 >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, grow(offsets.length, row + 2));
+        }
+        if (value != null && !value.isEmpty()) {
+            writeUtf8(value);
+        }
+        offsets[row + 1] = byteCount;
+    }
+    
+    /**
+     * Appends a value of another column by copying its bytes, without decoding it.
+     */
+    void append(int row, Utf8Column source, int sourceRow) {
+        if (row + 1 >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, grow(offsets.length, row + 2));
+        }
+        int start = source.offsets[sourceRow];
+        int length = source.offsets[sourceRow + 1] - start;
+        ensureBytes(length);
+        System.arraycopy(source.bytes, start, bytes, byteCount, length);
+        byteCount += length;
+        offsets[row + 1] = byteCount;
+    }
+    
+    String get(int row) {
+        int start = offsets[row];
+        int length = offsets[row + 1] - start;
+        return length == 0 ? null : new String(bytes, start, length, StandardCharsets.UTF_8);
+    }
+    
+    boolean isPresent(int row) {
+        return offsets[row + 1] > offsets[row];
+    }
+    
+    /**
+     * Compares the value's trailing bytes with {@code suffix} without decoding the value.
+     * ASCII letters in the value are lower-cased first, so the suffix must be lower case.
+     */
+    boolean endsWithIgnoreCase(int row, byte[] suffix) {
+        int start = offsets[row];
+        int end = offsets[row + 1];
+        if (end - start < suffix.length) {
+            return false;
+        }
+        for (int i = suffix.length - 1, j = end - 1; i >= 0; i--, j--) {
+            byte b = bytes[j];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != suffix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @return the {@link EmailKeys#fingerprint(byte[], int, int) fingerprint} of the
+     *         value's bytes, or 0 if the value is blank
+     */
+    long fingerprint(int row) {
+        int start = offsets[row];
+        int end = offsets[row + 1];
+        while (start < end && bytes[start] >= 0 && bytes[start] <= ' ') {
+            start++;
+        }
+        return start == end ? 0 : EmailKeys.fingerprint(bytes, start, end);
+    }
+    
+    long heapBytes() {
+        return bytes.length + 4L * offsets.length;
+    }
+    
+    private void writeUtf8(String value) {
+        int length = value.length();
+        ensureBytes(length);
+        // ASCII fast path: copy chars straight through, bail out on the first wide char
+        int i = 0;
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            bytes[byteCount++] = (byte) c;
+        }
+        if (i < length) {
+            byte[] rest = value.substring(i).getBytes(StandardCharsets.UTF_8);
+            ensureBytes(rest.length);
+            System.arraycopy(rest, 0, bytes, byteCount, rest.length);
+            byteCount += rest.length;
+        }
+    }
+    
+    private void ensureBytes(int extra) {
+        long required = (long) byteCount + extra;
+        if (required > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Column exceeds 2 GB of string data");
+        }
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, grow(bytes.length, (int) required));
+        }
+    }
+    
+    static int grow(int current, int required) {
+        long next = Math.max((long) current + (current >> 1), required);
+        return (int) Math.min(next, Integer.MAX_VALUE - 8);
+    }
+}
@@ -0,0 +1,49 @@
+package com.devdam.memzo_extracter.search;
+
+/**
+ * Case-insensitive substring test for a fixed piece of text. Unlike a regex built from
+ * user input, every character of the search text is matched literally.
+ */
+public final class LiteralMatcher {
+    
+    private final char[] needle;
+    
+    public LiteralMatcher(String literal) {
+        needle = new char[literal.length()];
+        for (int i = 0; i < needle.length; i++) {
+            needle[i] = Character.toLowerCase(literal.charAt(i));
+        }
+    }
+    
+    public boolean isEmpty() {
+        return needle.length == 0;
+    }
+    
+    /**
+     * @return whether the text contains the literal, ignoring case; {@code false} for
+     *         {@code null}
+     */
+    public boolean matches(CharSequence text) {
+        if (text == null) {
+            return false;
+        }
+        int last = text.length() - needle.length;
+        if (needle.length == 0) {
+            return last >= 0;
+        }
+        char first = needle[0];
+        for (int i = 0; i <= last; i++) {
+            if (Character.toLowerCase(text.charAt(i)) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < needle.length && Character.toLowerCase(text.charAt(i + j)) == needle[j]) {
+                j++;
+            }
+            if (j == needle.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,576 @@
+package com.devdam.memzo_extracter.search;
+
+import com.devdam.memzo_extracter.model.DateIndex;
+import com.devdam.memzo_extracter.model.MemzoDates;
+import com.devdam.memzo_extracter.model.SelfieDataset;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Row filter typed into a search box, such as
+ * {@code photos>=3 domain:gmail.com date:2026-09 has:contact}. Every term must hold:
+ * <ul>
+ * <li>{@code photos>=3}: also {@code >}, {@code <}, {@code <=}, {@code =} and {@code photos:3}</li>
+ * <li>{@code date:2026-09}: a year, month or day; the comparisons work as for photos</li>
+ * <li>{@code domain:gmail.com}: the part of the email after the {@code @}</li>
+ * <li>{@code has:email}, {@code has:contact}, {@code has:name}, {@code has:date}, {@code has:photos}</li>
+ * <li>{@code name:}, {@code email:} and {@code contact:}: text within that one field</li>
+ * </ul>
+ * A leading {@code -} negates a term and double quotes keep spaces in a value. The words
+ * left over are free text, matched as one phrase against name, email and contact just
+ * like the plain search box.
+ *
+ * {@link #compile} turns the terms into predicates over the dataset's primitive columns,
+ * takes its candidate rows from whichever index narrows the query most, and orders the
+ * remaining checks so that cheap, selective ones run first.
+ */
+public final class RecordQuery {
+    
+    // Below this many candidates a plan is run on the calling thread
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    
+    // Rows tested per clause to estimate how many pass it
+    private static final int SAMPLE_SIZE = 512;
+    
+    private static final Pattern TERM = Pattern.compile(
+            "(photos|date|domain|has|name|email|contact)(:|>=|<=|>|<|=)(.*)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern PERIOD = Pattern.compile("(\\d{4})(?:-(\\d{1,2})(?:-(\\d{1,2}))?)?");
+    
+    private static final int ALL_FIELDS = -1;
+    private static final int NAME = 0;
+    private static final int EMAIL = 1;
+    private static final int CONTACT = 2;
+    
+    private final List<Clause> clauses;
+    
+    private RecordQuery(List<Clause> clauses) {
+        this.clauses = clauses;
+    }
+    
+    /**
+     * @throws IllegalArgumentException if a term has a value it cannot take, with a
+     *         message fit to show the user
+     */
+    public static RecordQuery parse(String text) {
+        List<Clause> clauses = new ArrayList<>();
+        StringBuilder freeText = new StringBuilder();
+        
+        for (Token token : tokenize(text)) {
+            String term = token.text;
+            boolean negated = !token.quoted && term.length() > 1 && term.charAt(0) == '-';
+            Matcher matcher = token.quoted ? null : TERM.matcher(negated ? term.substring(1) : term);
+            if (matcher == null || !matcher.matches()) {
+                if (freeText.length() > 0) {
+                    freeText.append(' ');
+                }
+                freeText.append(term);
+                continue;
+            }
+            Clause clause = clause(matcher.group(1).toLowerCase(), matcher.group(2), matcher.group(3));
+            clause.negated = negated;
+            clauses.add(clause);
+        }
+        
+        if (freeText.length() > 0) {
+            clauses.add(new TextClause(ALL_FIELDS, freeText.toString()));
+        }
+        return new RecordQuery(clauses);
+    }
+    
+    /**
+     * @return a query for rows dated in {@code [fromMinutes, toMinutes)}
+     */
+    public static RecordQuery dateRange(long fromMinutes, long toMinutes) {
+        return new RecordQuery(List.of(new DateClause(fromMinutes, toMinutes)));
+    }
+    
+    /**
+     * @return a query for the rows matching both this query and {@code other}
+     */
+    public RecordQuery and(RecordQuery other) {
+        List<Clause> combined = new ArrayList<>(clauses);
+        combined.addAll(other.clauses);
+        return new RecordQuery(combined);
+    }
+    
+    public boolean isEmpty() {
+        return clauses.isEmpty();
+    }
+    
+    /**
+     * Prepares the query for the first {@code limit} rows of {@code data}. The indexes
+     * are optional; one is used only if it was built over those rows, and for the text
+     * index documents must be dataset rows.
+     */
+    public Plan compile(SelfieDataset data, int limit, DateIndex dates, SearchResultCache text) {
+        if (dates != null && dates.getRowCount() < limit) {
+            dates = null;
+        }
+        if (text != null && text.getIndex().size() < limit) {
+            text = null;
+        }
+        
+        // Start from the index that leaves the fewest rows, if any leaves fewer than all
+        IndexLookup driver = null;
+        for (Clause clause : clauses) {
+            IndexLookup lookup = clause.negated ? null : clause.lookup(dates, text);
+            if (lookup != null && lookup.estimate < (driver != null ? driver.estimate : limit)) {
+                driver = lookup;
+            }
+        }
+        int[] candidates = null;
+        if (driver != null) {
+            candidates = driver.rows.get();
+            // The index may cover more rows than were asked for; they sort last
+            int end = candidates.length;
+            while (end > 0 && candidates[end - 1] >= limit) {
+                end--;
+            }
+            candidates = Arrays.copyOf(candidates, end);
+        }
+        
+        // Estimate each check's pass rate on a sample of the candidates, then run the
+        // ones that reject the most rows per unit of cost first. Indexed clauses are
+        // checked too, as an index may return a superset of the clause's matches.
+        int count = candidates != null ? candidates.length : limit;
+        int samples = Math.min(count, SAMPLE_SIZE);
+        IntPredicate[] checks = new IntPredicate[clauses.size()];
+        double[] ranks = new double[clauses.size()];
+        Integer[] order = new Integer[clauses.size()];
+        for (int i = 0; i < checks.length; i++) {
+            Clause clause = clauses.get(i);
+            IntPredicate check = clause.predicate(data);
+            checks[i] = clause.negated ? check.negate() : check;
+            int passed = 0;
+            for (int s = 0; s < samples; s++) {
+                int position = (int) ((long) s * count / samples);
+                if (checks[i].test(candidates != null ? candidates[position] : position)) {
+                    passed++;
+                }
+            }
+            double passRate = (passed + 1.0) / (samples + 2.0);
+            ranks[i] = clause.cost() / (1 - passRate);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(ranks[a], ranks[b]));
+        IntPredicate[] ordered = new IntPredicate[checks.length];
+        for (int i = 0; i < ordered.length; i++) {
+            ordered[i] = checks[order[i]];
+        }
+        return new Plan(candidates, limit, ordered);
+    }
+    
+    /**
+     * A compiled query: the rows worth checking and the checks to run on each, in order.
+     * Safe to run from any thread as long as the dataset only grows.
+     */
+    public static final class Plan {
+        private final int[] candidates; // null for every row below the limit
+        private final int limit;
+        private final IntPredicate[] checks;
+        
+        private Plan(int[] candidates, int limit, IntPredicate[] checks) {
+            this.candidates = candidates;
+            this.limit = limit;
+            this.checks = checks;
+        }
+        
+        /**
+         * @return the number of rows that may match; a superset of the matches
+         */
+        public int getCandidateCount() {
+            return candidates != null ? candidates.length : limit;
+        }
+        
+        /**
+         * @return the candidate at {@code position}; candidates are in row order
+         */
+        public int getCandidate(int position) {
+            return candidates != null ? candidates[position] : position;
+        }
+        
+        public boolean matches(int row) {
+            for (IntPredicate check : checks) {
+                if (!check.test(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * @return every matching row in row order, checked in parallel for large inputs
+         */
+        public int[] matchingRows() {
+            int count = getCandidateCount();
+            if (count >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1) {
+                return IntStream.range(0, count).parallel()
+                        .map(this::getCandidate)
+                        .filter(this::matches)
+                        .toArray();
+            }
+            int[] rows = new int[Math.min(count, 1024)];
+            int found = 0;
+            for (int i = 0; i < count; i++) {
+                int row = getCandidate(i);
+                if (matches(row)) {
+                    if (found == rows.length) {
+                        rows = Arrays.copyOf(rows, Math.min(count, found * 2));
+                    }
+                    rows[found++] = row;
+                }
+            }
+            return Arrays.copyOf(rows, found);
+        }
+    }
+    
+    private static Clause clause(String key, String operator, String value) {
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException(key + operator + " needs a value");
+        }
+        switch (key) {
+            case "photos":
+                return photosClause(operator, value);
+            case "date":
+                return dateClause(operator, value);
+            default:
+                break;
+        }
+        if (!operator.equals(":")) {
+            throw new IllegalArgumentException(key + " only takes " + key + ":value");
+        }
+        switch (key) {
+            case "domain":
+                return new DomainClause(value.startsWith("@") ? value.substring(1) : value);
+            case "has":
+                return new HasClause(value.toLowerCase());
+            case "name":
+                return new TextClause(NAME, value);
+            case "email":
+                return new TextClause(EMAIL, value);
+            default:
+                return new TextClause(CONTACT, value);
+        }
+    }
+    
+    private static Clause photosClause(String operator, String value) {
+        long photos;
+        try {
+            photos = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("photos needs a whole number, not \"" + value + "\"");
+        }
+        // Counts are ints, so clamping just past them selects the same rows and keeps the
+        // bounds below from overflowing
+        photos = Math.max(Integer.MIN_VALUE - 1L, Math.min(Integer.MAX_VALUE + 1L, photos));
+        switch (operator) {
+            case ">=":
+                return new PhotosClause(photos, Long.MAX_VALUE);
+            case ">":
+                return new PhotosClause(photos + 1, Long.MAX_VALUE);
+            case "<=":
+                return new PhotosClause(Long.MIN_VALUE, photos);
+            case "<":
+                return new PhotosClause(Long.MIN_VALUE, photos - 1);
+            default:
+                return new PhotosClause(photos, photos);
+        }
+    }
+    
+    private static Clause dateClause(String operator, String value) {
+        Matcher matcher = PERIOD.matcher(value);
+        LocalDate start;
+        LocalDate end;
+        try {
+            if (!matcher.matches()) {
+                throw new DateTimeException(value);
+            }
+            int year = Integer.parseInt(matcher.group(1));
+            if (matcher.group(2) == null) {
+                start = LocalDate.of(year, 1, 1);
+                end = start.plusYears(1);
+            } else if (matcher.group(3) == null) {
+                start = LocalDate.of(year, Integer.parseInt(matcher.group(2)), 1);
+                end = start.plusMonths(1);
+            } else {
+                start = LocalDate.of(year, Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)));
+                end = start.plusDays(1);
+            }
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("date needs yyyy, yyyy-mm or yyyy-mm-dd, not \"" + value + "\"");
+        }
+        long from = MemzoDates.toEpochMinutes(start);
+        long to = MemzoDates.toEpochMinutes(end);
+        switch (operator) {
+            case ">=":
+                return new DateClause(from, Long.MAX_VALUE);
+            case ">":
+                return new DateClause(to, Long.MAX_VALUE);
+            case "<=":
+                return new DateClause(Long.MIN_VALUE, to);
+            case "<":
+                return new DateClause(Long.MIN_VALUE, from);
+            default:
+                return new DateClause(from, to);
+        }
+    }
+    
+    // Splits on whitespace outside double quotes; quotes are dropped
+    private static List<Token> tokenize(String text) {
+        List<Token> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inQuotes = false;
+        boolean quoted = false;
+        boolean started = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quoted |= !started;
+                started = true;
+                inQuotes = !inQuotes;
+            } else if (Character.isWhitespace(c) && !inQuotes) {
+                if (started) {
+                    tokens.add(new Token(current.toString(), quoted));
+                    current.setLength(0);
+                    quoted = false;
+                    started = false;
+                }
+            } else {
+                current.append(c);
+                started = true;
+            }
+        }
+        if (started) {
+            tokens.add(new Token(current.toString(), quoted));
+        }
+        return tokens;
+    }
+    
+    private static final class Token {
+        private final String text;
+        private final boolean quoted; // a quoted term is always free text
+        
+        Token(String text, boolean quoted) {
+            this.text = text;
+            this.quoted = quoted;
+        }
+    }
+    
+    private abstract static class Clause {
+        boolean negated;
+        
+        /**
+         * @return the test for the clause itself, ignoring {@link #negated}
+         */
+        abstract IntPredicate predicate(SelfieDataset data);
+        
+        /**
+         * @return relative cost of one test; 1 for a primitive column read
+         */
+        abstract int cost();
+        
+        /**
+         * @return the clause's candidate rows from one of the available indexes, or
+         *         {@code null} if none helps
+         */
+        IndexLookup lookup(DateIndex dates, SearchResultCache text) {
+            return null;
+        }
+    }
+    
+    /**
+     * The rows an index offers for a clause: how many there are, known up front, and the
+     * rows themselves, fetched only for the clause that drives the plan.
+     */
+    private static final class IndexLookup {
+        private final int estimate;
+        private final Supplier<int[]> rows; // ascending; a superset of the clause's matches
+        
+        IndexLookup(int estimate, Supplier<int[]> rows) {
+            this.estimate = estimate;
+            this.rows = rows;
+        }
+    }
+    
+    private static IndexLookup textLookup(SearchResultCache text, String query) {
+        return new IndexLookup(text.estimateMatches(query), () -> text.search(query).stream().toArray());
+    }
+    
+    private static final class PhotosClause extends Clause {
+        private final long min;
+        private final long max;
+        
+        PhotosClause(long min, long max) {
+            this.min = min;
+            this.max = max;
+        }
+        
+        @Override
+        IntPredicate predicate(SelfieDataset data) {
+            return row -> {
+                int photos = data.getPhotos(row);
+                return photos >= min && photos <= max;
+            };
+        }
+        
+        @Override
+        int cost() {
+            return 1;
+        }
+    }
+    
+    private static final class DateClause extends Clause {
+        private final long from;
+        private final long to;
+        
+        DateClause(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        IntPredicate predicate(SelfieDataset data) {
+            return row -> {
+                long minutes = data.getDateMinutes(row);
+                return minutes != SelfieDataset.NO_DATE && minutes >= from && minutes < to;
+            };
+        }
+        
+        @Override
+        int cost() {
+            return 1;
+        }
+        
+        @Override
+        IndexLookup lookup(DateIndex dates, SearchResultCache text) {
+            if (dates == null) {
+                return null;
+            }
+            return new IndexLookup(dates.countBetween(from, to), () -> dates.rowsBetween(from, to));
+        }
+    }
+    
+    private static final class HasClause extends Clause {
+        private final String field;
+        
+        HasClause(String field) {
+            switch (field) {
+                case "email", "contact", "name", "date", "photos" -> this.field = field;
+                default -> throw new IllegalArgumentException(
+                        "has takes email, contact, name, date or photos, not \"" + field + "\"");
+            }
+        }
+        
+        @Override
+        IntPredicate predicate(SelfieDataset data) {
+            return switch (field) {
+                case "email" -> data::hasEmail;
+                case "contact" -> data::hasContact;
+                case "name" -> data::hasName;
+                case "date" -> row -> data.getDateMinutes(row) != SelfieDataset.NO_DATE;
+                default -> row -> data.getPhotos(row) > 0;
+            };
+        }
+        
+        @Override
+        int cost() {
+            return 1;
+        }
+    }
+    
+    private static final class DomainClause extends Clause {
+        private final String suffix;
+        private final byte[] suffixBytes;
+        
+        DomainClause(String domain) {
+            StringBuilder lower = new StringBuilder("@");
+            for (int i = 0; i < domain.length(); i++) {
+                lower.append(Character.toLowerCase(domain.charAt(i)));
+            }
+            this.suffix = lower.toString();
+            this.suffixBytes = suffix.getBytes(StandardCharsets.UTF_8);
+        }
+        
+        @Override
+        IntPredicate predicate(SelfieDataset data) {
+            return row -> data.emailEndsWith(row, suffixBytes);
+        }
+        
+        @Override
+        int cost() {
+            return 2;
+        }
+        
+        @Override
+        IndexLookup lookup(DateIndex dates, SearchResultCache text) {
+            // Rows with "@domain" anywhere include every email ending with it
+            return text != null ? textLookup(text, suffix) : null;
+        }
+    }
+    
+    private static final class TextClause extends Clause {
+        private final int field;
+        private final String phrase;
+        private final LiteralMatcher matcher;
+        
+        TextClause(int field, String phrase) {
+            this.field = field;
+            this.phrase = phrase.toLowerCase();
+            this.matcher = new LiteralMatcher(phrase);
+        }
+        
+        @Override
+        IntPredicate predicate(SelfieDataset data) {
+            return switch (field) {
+                case NAME -> row -> matcher.matches(data.getName(row));
+                case EMAIL -> row -> matcher.matches(data.getEmail(row));
+                case CONTACT -> row -> matcher.matches(data.getContact(row));
+                default -> row -> matchesAnyField(data, row);
+            };
+        }
+        
+        private boolean matchesAnyField(SelfieDataset data, int row) {
+            String email = data.getEmail(row);
+            String contact = data.getContact(row);
+            String name = data.getName(row);
+            if (matcher.matches(email) || matcher.matches(contact) || matcher.matches(name)) {
+                return true;
+            }
+            // A phrase with a space can span fields, which are searched as "email contact name"
+            if (phrase.indexOf(' ') < 0) {
+                return false;
+            }
+            String searchableText = (
+                (email != null ? email : "") + " " +
+                (contact != null ? contact : "") + " " +
+                (name != null ? name : "")
+            ).toLowerCase();
+            return searchableText.contains(phrase);
+        }
+        
+        @Override
+        int cost() {
+            return field == ALL_FIELDS ? 8 : 4;
+        }
+        
+        @Override
+        IndexLookup lookup(DateIndex dates, SearchResultCache text) {
+            // The index matches within single fields, so it misses phrases spanning two
+            if (text == null || (field == ALL_FIELDS && phrase.indexOf(' ') >= 0)) {
+                return null;
+            }
+            return textLookup(text, phrase);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.devdam.memzo_extracter.search;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results of recent searches on one {@link TrigramIndex}.
+ *
+ * Typing a query one character at a time produces a chain of queries that each contain
+ * the one before, so their results only shrink. A query that is not cached is answered
+ * by re-checking the smallest cached result it refines, unless the index promises fewer
+ * candidates; backspacing returns to queries that are still cached. Results are kept
+ * for the last {@value #DEFAULT_CAPACITY} distinct queries, least recently used first out,
+ * and only for the index contents they were computed on: once documents are added, the
+ * cache starts over.
+ *
+ * Synchronized, so one cache can serve several threads, as long as documents are not
+ * added to the index during a search; {@link #addDocuments(int)} adds them under the
+ * cache's lock, so they can arrive while the cache is in use.
+ */
+public final class SearchResultCache {
+    
+    public static final int DEFAULT_CAPACITY = 32;
+    
+    private final TrigramIndex index;
+    private final Map<String, BitSet> results;
+    private int indexedSize;
+    
+    public SearchResultCache(TrigramIndex index) {
+        this(index, DEFAULT_CAPACITY);
+    }
+    
+    public SearchResultCache(TrigramIndex index, int capacity) {
+        this.index = index;
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BitSet> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.indexedSize = index.size();
+    }
+    
+    public TrigramIndex getIndex() {
+        return index;
+    }
+    
+    /**
+     * Indexes the next {@code count} documents, between searches.
+     */
+    public synchronized void addDocuments(int count) {
+        index.addAll(count);
+        invalidateIfGrown();
+    }
+    
+    /**
+     * @return the documents matching the query, as {@link TrigramIndex#search(String)}
+     *         would return them; the caller may modify the result
+     */
+    public synchronized BitSet search(String query) {
+        String key = key(query);
+        if (key.isEmpty()) {
+            return index.search(key);
+        }
+        invalidateIfGrown();
+        
+        BitSet result = results.get(key);
+        if (result == null) {
+            BitSet refined = narrowestRefined(key);
+            if (refined != null && refined.cardinality() <= index.estimateMatches(key)) {
+                result = index.searchWithin(key, refined);
+            } else {
+                result = index.search(key);
+            }
+            results.put(key, result);
+        }
+        return (BitSet) result.clone();
+    }
+    
+    /**
+     * Upper bound on the size of {@link #search(String)}'s result, exact when the query
+     * is cached. Never decodes postings or checks documents.
+     */
+    public synchronized int estimateMatches(String query) {
+        String key = key(query);
+        if (key.isEmpty()) {
+            return index.size();
+        }
+        invalidateIfGrown();
+        
+        BitSet cached = results.get(key);
+        if (cached != null) {
+            return cached.cardinality();
+        }
+        BitSet refined = narrowestRefined(key);
+        int estimate = index.estimateMatches(key);
+        return refined == null ? estimate : Math.min(estimate, refined.cardinality());
+    }
+    
+    // The smallest cached result whose query the key contains, without touching LRU order
+    private BitSet narrowestRefined(String key) {
+        BitSet narrowest = null;
+        for (Map.Entry<String, BitSet> entry : results.entrySet()) {
+            if (key.contains(entry.getKey())
+                    && (narrowest == null || entry.getValue().cardinality() < narrowest.cardinality())) {
+                narrowest = entry.getValue();
+            }
+        }
+        return narrowest;
+    }
+    
+    private void invalidateIfGrown() {
+        if (index.size() != indexedSize) {
+            results.clear();
+            indexedSize = index.size();
+        }
+    }
+    
+    // Lower-cased like LiteralMatcher, so containment between keys implies it between matches
+    private static String key(String query) {
+        String text = query.trim();
+        StringBuilder key = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            key.append(Character.toLowerCase(text.charAt(i)));
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,347 @@
+package com.devdam.memzo_extracter.search;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Inverted index from lower-cased three-character substrings to the documents containing
+ * them, for case-insensitive substring search over a few text fields per document.
+ *
+ * Documents are numbered in the order they are added, normally the model row index.
+ * Each posting list is a byte array of varint-encoded gaps between document numbers, so
+ * a trigram shared by most rows costs about a byte per row. A search decodes the
+ * postings of the query's trigrams, starting with the rarest, intersects them and then
+ * checks only the surviving candidates with a {@link LiteralMatcher}, so its cost
+ * follows the number of candidates rather than the number of rows. Queries shorter than
+ * three characters have no trigrams and fall back to checking every document.
+ *
+ * The index does not keep the text; it reads fields through a {@link FieldReader} when
+ * indexing and verifying. Not thread-safe: build it on one thread, then hand it over.
+ * Searching and estimating only read the index, so once building has stopped any number
+ * of threads may query it.
+ */
+public final class TrigramIndex {
+    
+    /**
+     * Reads one searchable field of a document; {@code null} counts as empty.
+     */
+    @FunctionalInterface
+    public interface FieldReader {
+        CharSequence read(int document, int field);
+    }
+    
+    private static final int[] NO_DOCUMENTS = new int[0];
+    
+    private final int fieldCount;
+    private final FieldReader reader;
+    private int size;
+    
+    // Open-addressing map from packed trigram to posting number; keys of 0 mark empty slots
+    private long[] keys = new long[1 << 12];
+    private int[] slots = new int[1 << 12];
+    private int trigramCount;
+    
+    // Per posting number: encoded gaps, bytes used, last document and document count
+    private byte[][] postings = new byte[1 << 10][];
+    private int[] postingLengths = new int[1 << 10];
+    private int[] lastDocuments = new int[1 << 10];
+    private int[] documentCounts = new int[1 << 10];
+    
+    public TrigramIndex(int fieldCount, FieldReader reader) {
+        this.fieldCount = fieldCount;
+        this.reader = reader;
+    }
+    
+    /**
+     * Builds an index over documents {@code 0..documents-1}.
+     */
+    public static TrigramIndex build(int documents, int fieldCount, FieldReader reader) {
+        TrigramIndex index = new TrigramIndex(fieldCount, reader);
+        index.addAll(documents);
+        return index;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Indexes the next document, numbered {@link #size()}.
+     */
+    public void add() {
+        int document = size++;
+        for (int field = 0; field < fieldCount; field++) {
+            CharSequence text = reader.read(document, field);
+            if (text == null || text.length() < 3) {
+                continue;
+            }
+            char a = Character.toLowerCase(text.charAt(0));
+            char b = Character.toLowerCase(text.charAt(1));
+            for (int i = 2; i < text.length(); i++) {
+                char c = Character.toLowerCase(text.charAt(i));
+                addPosting(posting(pack(a, b, c), true), document);
+                a = b;
+                b = c;
+            }
+        }
+    }
+    
+    /**
+     * Indexes the next {@code count} documents.
+     */
+    public void addAll(int count) {
+        for (int i = 0; i < count; i++) {
+            add();
+        }
+    }
+    
+    /**
+     * @return the documents with a field containing the query, ignoring case; every
+     *         document for a blank query
+     */
+    public BitSet search(String query) {
+        String text = query.trim();
+        BitSet result = new BitSet(size);
+        if (text.isEmpty()) {
+            result.set(0, size);
+            return result;
+        }
+        LiteralMatcher matcher = new LiteralMatcher(text);
+        
+        int[] candidates = text.length() < 3 ? null : candidates(text);
+        if (candidates == null) {
+            for (int document = 0; document < size; document++) {
+                if (matches(document, matcher)) {
+                    result.set(document);
+                }
+            }
+        } else {
+            for (int document : candidates) {
+                if (matches(document, matcher)) {
+                    result.set(document);
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Same result as {@link #search(String)}, but only documents in {@code within} are
+     * checked. Meant for narrowing an earlier result: when the query contains the earlier
+     * query, every match is already in that result and the index is not consulted.
+     */
+    public BitSet searchWithin(String query, BitSet within) {
+        String text = query.trim();
+        LiteralMatcher matcher = new LiteralMatcher(text);
+        BitSet result = new BitSet(size);
+        for (int document = within.nextSetBit(0); document >= 0 && document < size;
+             document = within.nextSetBit(document + 1)) {
+            if (text.isEmpty() || matches(document, matcher)) {
+                result.set(document);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Cheap upper bound on the number of documents {@link #search(String)} would return:
+     * the length of the rarest posting list among the query's trigrams. Decodes nothing,
+     * so callers can compare it with other filters before deciding which to run first.
+     */
+    public int estimateMatches(String query) {
+        String text = query.trim();
+        if (text.length() < 3) {
+            return size;
+        }
+        int estimate = size;
+        char a = Character.toLowerCase(text.charAt(0));
+        char b = Character.toLowerCase(text.charAt(1));
+        for (int i = 2; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int posting = posting(pack(a, b, c), false);
+            if (posting < 0) {
+                return 0;
+            }
+            estimate = Math.min(estimate, documentCounts[posting]);
+            a = b;
+            b = c;
+        }
+        return estimate;
+    }
+    
+    private boolean matches(int document, LiteralMatcher matcher) {
+        for (int field = 0; field < fieldCount; field++) {
+            if (matcher.matches(reader.read(document, field))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Documents holding every trigram of the text; a superset of the matches
+    private int[] candidates(String text) {
+        int trigrams = text.length() - 2;
+        int[] found = new int[trigrams];
+        int distinct = 0;
+        char a = Character.toLowerCase(text.charAt(0));
+        char b = Character.toLowerCase(text.charAt(1));
+        for (int i = 2; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int posting = posting(pack(a, b, c), false);
+            if (posting < 0) {
+                return NO_DOCUMENTS;
+            }
+            found[distinct++] = posting;
+            a = b;
+            b = c;
+        }
+        
+        // Rarest first, so the running intersection is as small as it can be from the start
+        long[] order = new long[distinct];
+        for (int i = 0; i < distinct; i++) {
+            order[i] = ((long) documentCounts[found[i]] << 32) | found[i];
+        }
+        Arrays.sort(order);
+        
+        int[] candidates = decode((int) order[0]);
+        int count = candidates.length;
+        for (int i = 1; i < distinct && count > 0; i++) {
+            int posting = (int) order[i];
+            if (posting == (int) order[i - 1]) {
+                continue;
+            }
+            count = intersect(candidates, count, posting);
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+    
+    // Keeps the candidates that are in the posting list; both are ascending
+    private int intersect(int[] candidates, int count, int posting) {
+        byte[] bytes = postings[posting];
+        int length = postingLengths[posting];
+        int position = 0;
+        int document = -1;
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int candidate = candidates[i];
+            while (document < candidate && position < length) {
+                int gap = 0;
+                int shift = 0;
+                byte next;
+                do {
+                    next = bytes[position++];
+                    gap |= (next & 0x7F) << shift;
+                    shift += 7;
+                } while (next < 0);
+                document += gap;
+            }
+            if (document == candidate) {
+                candidates[kept++] = candidate;
+            } else if (document < candidate) {
+                break; // postings exhausted
+            }
+        }
+        return kept;
+    }
+    
+    private int[] decode(int posting) {
+        byte[] bytes = postings[posting];
+        int length = postingLengths[posting];
+        int[] documents = new int[documentCounts[posting]];
+        int document = -1;
+        int count = 0;
+        for (int position = 0; position < length; ) {
+            int gap = 0;
+            int shift = 0;
+            byte next;
+            do {
+                next = bytes[position++];
+                gap |= (next & 0x7F) << shift;
+                shift += 7;
+            } while (next < 0);
+            document += gap;
+            documents[count++] = document;
+        }
+        return documents;
+    }
+    
+    private void addPosting(int posting, int document) {
+        if (documentCounts[posting] > 0 && lastDocuments[posting] == document) {
+            return;
+        }
+        int gap = document - (documentCounts[posting] > 0 ? lastDocuments[posting] : -1);
+        byte[] bytes = postings[posting];
+        int length = postingLengths[posting];
+        if (length + 5 > bytes.length) {
+            bytes = postings[posting] = Arrays.copyOf(bytes, Math.max(length + 5, bytes.length * 2));
+        }
+        while (gap >= 0x80) {
+            bytes[length++] = (byte) (gap | 0x80);
+            gap >>>= 7;
+        }
+        bytes[length++] = (byte) gap;
+        postingLengths[posting] = length;
+        lastDocuments[posting] = document;
+        documentCounts[posting]++;
+    }
+    
+    /**
+     * @return the posting number for the trigram, or -1 if it is absent and not created
+     */
+    private int posting(long key, boolean create) {
+        int mask = keys.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slots[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (!create) {
+            return -1;
+        }
+        int posting = trigramCount++;
+        if (posting == postings.length) {
+            int capacity = posting * 2;
+            postings = Arrays.copyOf(postings, capacity);
+            postingLengths = Arrays.copyOf(postingLengths, capacity);
+            lastDocuments = Arrays.copyOf(lastDocuments, capacity);
+            documentCounts = Arrays.copyOf(documentCounts, capacity);
+        }
+        postings[posting] = new byte[4];
+        keys[slot] = key;
+        slots[slot] = posting;
+        if (trigramCount > keys.length >> 1) {
+            rehash();
+        }
+        return posting;
+    }
+    
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new long[oldKeys.length * 2];
+        slots = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = (int) mix(oldKeys[i]) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                slots[slot] = oldSlots[i];
+            }
+        }
+    }
+    
+    // Never 0, since bit 48 is always set
+    private static long pack(char a, char b, char c) {
+        return (1L << 48) | ((long) a << 32) | ((long) b << 16) | c;
+    }
+    
+    private static long mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 29);
+    }
+}
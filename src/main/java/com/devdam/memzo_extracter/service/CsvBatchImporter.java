@@ -0,0 +1,187 @@
+package com.devdam.memzo_extracter.service;
+
+import com.devdam.memzo_extracter.model.SelfieDataset;
+import com.devdam.memzo_extracter.util.EmailKeys;
+import com.devdam.memzo_extracter.util.LongHashSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Imports many CSV files into one dataset, such as the per-event exports of a whole
+ * folder.
+ *
+ * The files are parsed concurrently on a pool of at most one thread per processor,
+ * each into a dataset of its own with
+ * {@link CsvService#parseCsvFileParallel(File, java.util.function.LongConsumer)}. The
+ * importing thread merges them in the given order, each as soon as it is parsed, while
+ * later files are still being parsed, so an import takes about as long as its largest
+ * file. The files bypass the snapshot cache: hashing each would read it twice, and a
+ * folder of exports would evict the snapshots of the files opened on their own.
+ *
+ * Every merged row is tagged with the name of its file and copied column by column in
+ * its encoded form, so merging decodes nothing. A row whose email already appeared in an
+ * earlier file is dropped, comparing {@link EmailKeys#fingerprint email fingerprints}
+ * computed from the stored bytes; rows without an email and repeats within one file are
+ * kept, as loading that file on its own would keep them.
+ */
+public class CsvBatchImporter {
+    
+    private static final long PROGRESS_INTERVAL_MILLIS = 100;
+    
+    /**
+     * Follows an import.
+     */
+    public interface Monitor {
+        /**
+         * Called on the importing thread every so often and after each merged file.
+         *
+         * @param bytesRead bytes parsed so far, over all files
+         */
+        void progress(long bytesRead, int filesMerged, int rowsMerged);
+        
+        /**
+         * Checked on every thread while files are parsed; once true, the import stops
+         * with a {@link CancellationException}.
+         */
+        boolean isCancelled();
+    }
+    
+    /**
+     * The merged dataset and how many rows were dropped as duplicates of earlier files.
+     */
+    public static final class Result {
+        private final SelfieDataset data;
+        private final int duplicates;
+        
+        private Result(SelfieDataset data, int duplicates) {
+            this.data = data;
+            this.duplicates = duplicates;
+        }
+        
+        public SelfieDataset getData() {
+            return data;
+        }
+        
+        public int getDuplicates() {
+            return duplicates;
+        }
+    }
+    
+    private final CsvService csvService;
+    
+    public CsvBatchImporter(CsvService csvService) {
+        this.csvService = csvService;
+    }
+    
+    public Result importFiles(List<File> files, Monitor monitor) throws IOException {
+        int threads = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "csv-import-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        AtomicLongArray bytesRead = new AtomicLongArray(files.size());
+        List<Future<SelfieDataset>> parsed = new ArrayList<>(files.size());
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                int file = i;
+                parsed.add(pool.submit(() -> csvService.parseCsvFileParallel(files.get(file), read -> {
+                    if (monitor.isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    bytesRead.lazySet(file, read);
+                })));
+            }
+            
+            SelfieDataset merged = new SelfieDataset();
+            LongHashSet earlierEmails = new LongHashSet();
+            int duplicates = 0;
+            for (int i = 0; i < files.size(); i++) {
+                SelfieDataset part = await(parsed.get(i), monitor, bytesRead, i, merged);
+                parsed.set(i, null); // let the part go once merged
+                duplicates += merge(part, files.get(i).getName(), merged, earlierEmails);
+                monitor.progress(total(bytesRead), i + 1, merged.size());
+            }
+            return new Result(merged, duplicates);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    // Waits for one file, reporting progress meanwhile
+    private static SelfieDataset await(Future<SelfieDataset> future, Monitor monitor, AtomicLongArray bytesRead,
+                                       int filesMerged, SelfieDataset merged) throws IOException {
+        while (true) {
+            if (monitor.isCancelled()) {
+                throw new CancellationException();
+            }
+            try {
+                return future.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                monitor.progress(total(bytesRead), filesMerged, merged.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+    
+    /**
+     * Appends the part's rows whose emails are not in {@code earlierEmails}, then adds
+     * the part's emails to it.
+     *
+     * @return the number of rows dropped
+     */
+    private static int merge(SelfieDataset part, String sourceFile, SelfieDataset merged, LongHashSet earlierEmails) {
+        LongHashSet partEmails = new LongHashSet();
+        int duplicates = 0;
+        for (int row = 0, size = part.size(); row < size; row++) {
+            long fingerprint = part.getEmailFingerprint(row);
+            if (fingerprint != 0) {
+                if (earlierEmails.contains(fingerprint)) {
+                    duplicates++;
+                    continue;
+                }
+                partEmails.add(fingerprint);
+            }
+            merged.add(part, row, sourceFile);
+        }
+        partEmails.forEach(earlierEmails::add);
+        return duplicates;
+    }
+    
+    private static long total(AtomicLongArray bytesRead) {
+        long total = 0;
+        for (int i = 0; i < bytesRead.length(); i++) {
+            total += bytesRead.get(i);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,136 @@
+package com.devdam.memzo_extracter.service;
+
+import com.devdam.memzo_extracter.model.SelfieDetail;
+import org.apache.commons.csv.CSVRecord;
+
+import java.util.Map;
+
+/**
+ * Column accessors for one CSV header, resolved once per file instead of looking every
+ * cell up by name. Columns absent from the header become constant-null accessors, so a
+ * missing column costs nothing per row.
+ */
+public final class CsvColumnMapping {
+    
+    @FunctionalInterface
+    private interface Column {
+        String get(CSVRecord record);
+    }
+    
+    private static final Column MISSING = record -> null;
+    private static final int NO_COLUMN = -1;
+    
+    private final Column image;
+    private final Column name;
+    private final Column email;
+    private final Column contact;
+    private final Column downloadRequests;
+    private final Column photosShared;
+    private final Column photosDownload;
+    private final Column date;
+    private final int photosIndex;
+    
+    private CsvColumnMapping(Map<String, Integer> headerMap) {
+        this.image = column(headerMap, "image");
+        this.name = column(headerMap, "name");
+        this.email = column(headerMap, "email");
+        this.contact = column(headerMap, "contact");
+        this.downloadRequests = column(headerMap, "download_requests");
+        this.photosShared = column(headerMap, "photos_shared");
+        this.photosDownload = column(headerMap, "photos_download");
+        this.date = column(headerMap, "date");
+        this.photosIndex = indexOf(headerMap, "photos");
+    }
+    
+    /**
+     * @param headerMap the parser's header map; with {@code ignoreHeaderCase} it is
+     *                  case-insensitive, which the lookups here rely on
+     */
+    public static CsvColumnMapping compile(Map<String, Integer> headerMap) {
+        return new CsvColumnMapping(headerMap);
+    }
+    
+    public SelfieDetail toSelfieDetail(CSVRecord record) {
+        return SelfieDetail.builder()
+                .image(image.get(record))
+                .name(name.get(record))
+                .email(email.get(record))
+                .contact(contact.get(record))
+                .downloadRequests(downloadRequests.get(record))
+                .photos(photos(record))
+                .photosShared(photosShared.get(record))
+                .photosDownload(photosDownload.get(record))
+                .date(date.get(record))
+                .build();
+    }
+    
+    private int photos(CSVRecord record) {
+        if (photosIndex == NO_COLUMN || photosIndex >= record.size()) {
+            return 0;
+        }
+        return parseCount(record.get(photosIndex));
+    }
+    
+    private static Column column(Map<String, Integer> headerMap, String columnName) {
+        int index = indexOf(headerMap, columnName);
+        if (index == NO_COLUMN) {
+            return MISSING;
+        }
+        // Values arrive already trimmed by the CSV format, so only emptiness needs checking
+        return record -> {
+            if (index >= record.size()) {
+                return null;
+            }
+            String value = record.get(index);
+            return value.isEmpty() ? null : value;
+        };
+    }
+    
+    private static int indexOf(Map<String, Integer> headerMap, String columnName) {
+        if (headerMap == null) {
+            return NO_COLUMN;
+        }
+        Integer index = headerMap.get(columnName);
+        return index != null ? index : NO_COLUMN;
+    }
+    
+    /**
+     * Parses an optionally signed decimal int without allocating or throwing.
+     * Blank, malformed and out-of-range values all yield 0.
+     */
+    static int parseCount(CharSequence value) {
+        int length = value.length();
+        int start = 0;
+        int end = length;
+        while (start < end && value.charAt(start) <= ' ') start++;
+        while (end > start && value.charAt(end - 1) <= ' ') end--;
+        if (start == end) {
+            return 0;
+        }
+        
+        boolean negative = false;
+        char first = value.charAt(start);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++start == end) {
+                return 0;
+            }
+        }
+        
+        // Accumulate negatively so Integer.MIN_VALUE is representable
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10) {
+                return 0;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return 0;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+}
@@ -0,0 +1,194 @@
+package com.devdam.memzo_extracter.service;
+
+import com.devdam.memzo_extracter.model.SelfieDetail;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows CSV files that keep growing, such as exports written during an event, and
+ * parses only the records appended since they were last read.
+ *
+ * Each followed file has its {@link CsvTail}: the offset of its last complete record and
+ * its header mapping. The directories of followed files are watched with a
+ * {@link WatchService}; when a file changes, the records completed since its tail are
+ * parsed and handed to its listener, and the tail moves past them. Network shares often
+ * report no changes, so every file is also checked every {@link #POLL_INTERVAL_SECONDS}
+ * seconds. Everything runs on one daemon thread, started with the first file.
+ */
+public class CsvFileFollower implements Closeable {
+    
+    private static final long POLL_INTERVAL_SECONDS = 5;
+    
+    /**
+     * Receives what happens to one followed file. Called on the follower's thread; Swing
+     * listeners must hop to the EDT themselves.
+     */
+    public interface Listener {
+        /**
+         * Records completed since the last call, in file order; never empty.
+         */
+        void recordsAppended(List<SelfieDetail> records);
+        
+        /**
+         * The file could no longer be followed, for instance because it got shorter; it
+         * is not followed any more.
+         */
+        void followingStopped(IOException reason);
+    }
+    
+    private static final class Followed {
+        CsvTail tail;
+        final Listener listener;
+        
+        Followed(CsvTail tail, Listener listener) {
+            this.tail = tail;
+            this.listener = listener;
+        }
+    }
+    
+    private final CsvService csvService;
+    private final Object lock = new Object();
+    private final Map<Path, Followed> followed = new HashMap<>(); // guarded by lock
+    private final Map<Path, WatchKey> directories = new HashMap<>(); // guarded by lock
+    private WatchService watchService; // guarded by lock; created with the first file
+    private boolean closed;
+    
+    public CsvFileFollower(CsvService csvService) {
+        this.csvService = csvService;
+    }
+    
+    /**
+     * Starts following the file of {@code tail} from there, replacing any earlier
+     * listener for the same file.
+     */
+    public void follow(CsvTail tail, Listener listener) throws IOException {
+        Path path = pathOf(tail.getFile());
+        synchronized (lock) {
+            if (closed) {
+                throw new IOException("File follower is closed");
+            }
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                Thread thread = new Thread(this::run, "csv-follower");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            Path directory = path.getParent();
+            if (!directories.containsKey(directory)) {
+                directories.put(directory, directory.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+            }
+            followed.put(path, new Followed(tail, listener));
+        }
+    }
+    
+    /**
+     * Stops following the file. Appended records that are being parsed right now may
+     * still be delivered.
+     */
+    public void unfollow(File file) {
+        Path path = pathOf(file);
+        synchronized (lock) {
+            remove(path);
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            followed.clear();
+            directories.clear();
+            if (watchService != null) {
+                watchService.close();
+            }
+        }
+    }
+    
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.poll(POLL_INTERVAL_SECONDS, TimeUnit.SECONDS);
+                Set<Path> changed = new HashSet<>();
+                boolean checkAll = key == null; // nothing reported within the interval
+                if (key != null) {
+                    Path directory = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            checkAll = true;
+                        } else {
+                            changed.add(directory.resolve((Path) event.context()));
+                        }
+                    }
+                    key.reset();
+                }
+                for (Map.Entry<Path, Followed> entry : snapshot()) {
+                    if (checkAll || changed.contains(entry.getKey())) {
+                        readAppended(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+    
+    private List<Map.Entry<Path, Followed>> snapshot() {
+        synchronized (lock) {
+            return new ArrayList<>(followed.entrySet());
+        }
+    }
+    
+    private void readAppended(Path path, Followed file) {
+        List<SelfieDetail> records = new ArrayList<>();
+        try {
+            file.tail = csvService.parseAppendedRecords(file.tail, records::add);
+        } catch (IOException | RuntimeException e) {
+            synchronized (lock) {
+                if (followed.get(path) == file) {
+                    remove(path);
+                }
+            }
+            file.listener.followingStopped(e instanceof IOException ? (IOException) e : new IOException(e));
+            return;
+        }
+        if (!records.isEmpty()) {
+            file.listener.recordsAppended(records);
+        }
+    }
+    
+    // Drops the file, and the watch on its directory once no other file there is followed
+    private void remove(Path path) {
+        if (followed.remove(path) == null) {
+            return;
+        }
+        Path directory = path.getParent();
+        boolean stillWatched = followed.keySet().stream().anyMatch(other -> other.getParent().equals(directory));
+        if (!stillWatched) {
+            WatchKey key = directories.remove(directory);
+            if (key != null) {
+                key.cancel();
+            }
+        }
+    }
+    
+    private static Path pathOf(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+}
@@ -1,5 +1,7 @@
 package com.devdam.memzo_extracter.service;
 
+import com.devdam.memzo_extracter.model.DatasetStatistics;
+import com.devdam.memzo_extracter.model.SelfieDataset;
 import com.devdam.memzo_extracter.model.SelfieDetail;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -7,94 +9,324 @@ import org.apache.commons.csv.CSVRecord;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
 
 @Service
 public class CsvService {
     
+    private static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT
+            .withIgnoreHeaderCase()
+            .withTrim();
+    
+    // Files smaller than this are parsed on the calling thread; splitting them costs more than it saves
+    private static final long PARALLEL_THRESHOLD = 8L * 1024 * 1024;
+    private static final long PARALLEL_RANGE_SIZE = 4L * 1024 * 1024;
+    
+    private final CsvSnapshotCache snapshotCache;
+    
+    /**
+     * Keeps snapshots in {@link CsvSnapshotCache#DEFAULT_DIRECTORY}.
+     */
+    public CsvService() {
+        this(new CsvSnapshotCache(CsvSnapshotCache.DEFAULT_DIRECTORY));
+    }
+    
+    public CsvService(CsvSnapshotCache snapshotCache) {
+        this.snapshotCache = snapshotCache;
+    }
+    
     public List<SelfieDetail> parseCsvFile(File file) throws IOException {
         List<SelfieDetail> selfieDetails = new ArrayList<>();
-        
-        try (FileInputStream fis = new FileInputStream(file);
-             InputStreamReader isr = new InputStreamReader(fis, StandardCharsets.UTF_8);
-             CSVParser csvParser = CSVFormat.DEFAULT
-                     .withFirstRecordAsHeader()
-                     .withIgnoreHeaderCase()
-                     .withTrim()
-                     .parse(isr)) {
-            
+        parseCsvFile(file, selfieDetails::add);
+        return selfieDetails;
+    }
+    
+    /**
+     * Parses the file straight into a columnar dataset without building an
+     * intermediate list of rows, in parallel when it is large enough (see
+     * {@link #parseCsvFileParallel}). An unchanged file that was loaded before is read
+     * from its snapshot instead of being parsed.
+     */
+    public SelfieDataset loadDataset(File file) throws IOException {
+        return loadDataset(file, bytesRead -> { });
+    }
+    
+    /**
+     * Same as {@link #loadDataset(File)}, reporting progress as
+     * {@link #parseCsvFileParallel} does. A file read from its snapshot reports its whole
+     * size once.
+     */
+    public SelfieDataset loadDataset(File file, LongConsumer bytesRead) throws IOException {
+        CsvSnapshotCache.SourceFile source = snapshotCache.describe(file);
+        SelfieDataset dataset = snapshotCache.load(source);
+        if (dataset != null) {
+            bytesRead.accept(file.length());
+            return dataset;
+        }
+        SelfieDataset parsed = parseCsvFileParallel(file, bytesRead);
+        snapshotCache.store(source, parsed);
+        return parsed;
+    }
+    
+    /**
+     * Snapshots of loaded files, for loaders that parse with {@link #parseCsvFile(File, Consumer, LongConsumer)}.
+     */
+    public CsvSnapshotCache getSnapshotCache() {
+        return snapshotCache;
+    }
+    
+    /**
+     * Push-style streaming parse: every row is handed to the consumer as soon as it
+     * is decoded, so nothing is held in memory beyond the current record.
+     *
+     * @return the number of rows delivered to the consumer
+     */
+    public int parseCsvFile(File file, Consumer<? super SelfieDetail> consumer) throws IOException {
+        return parseCsvFile(file, consumer, bytesRead -> { });
+    }
+    
+    /**
+     * Same as {@link #parseCsvFile(File, Consumer)}, also reporting after every row how
+     * many bytes of the file have been read, for progress. The count runs ahead of the
+     * rows by at most the reader's buffer.
+     */
+    public int parseCsvFile(File file, Consumer<? super SelfieDetail> consumer, LongConsumer bytesRead) throws IOException {
+        CountingInputStream input = new CountingInputStream(new FileInputStream(file), Long.MAX_VALUE);
+        try (CSVParser csvParser = openParser(input)) {
+            CsvColumnMapping mapping = CsvColumnMapping.compile(csvParser.getHeaderMap());
+            return parseRecords(csvParser, mapping, input, consumer, bytesRead);
+        }
+    }
+    
+    private static int parseRecords(CSVParser csvParser, CsvColumnMapping mapping, CountingInputStream input,
+                                    Consumer<? super SelfieDetail> consumer, LongConsumer bytesRead) throws IOException {
+        int rows = 0;
+        try {
             for (CSVRecord record : csvParser) {
-                SelfieDetail detail = SelfieDetail.builder()
-                        .image(getStringValue(record, "image"))
-                        .name(getStringValue(record, "name"))
-                        .email(getStringValue(record, "email"))
-                        .contact(getStringValue(record, "contact"))
-                        .downloadRequests(getStringValue(record, "download_requests"))
-                        .photos(getIntegerValue(record, "photos"))
-                        .photosShared(getStringValue(record, "photos_shared"))
-                        .photosDownload(getStringValue(record, "photos_download"))
-                        .date(getStringValue(record, "date"))
-                        .build();
-                
-                selfieDetails.add(detail);
+                consumer.accept(mapping.toSelfieDetail(record));
+                bytesRead.accept(input.count);
+                rows++;
             }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        
-        return selfieDetails;
+        return rows;
     }
     
-    private String getStringValue(CSVRecord record, String columnName) {
-        try {
-            String value = record.get(columnName);
-            return (value == null || value.trim().isEmpty()) ? null : value.trim();
-        } catch (Exception e) {
-            return null;
+    /**
+     * Like {@link #parseCsvFile(File, Consumer, LongConsumer)} for a file that is still
+     * being written. Only records ended by a line break are parsed, as the writer may not
+     * have finished the last one yet, and the returned tail tells
+     * {@link #parseAppendedRecords} where to carry on.
+     *
+     * @throws IOException if the file cannot be read or its header is not complete yet
+     */
+    public CsvTail parseCompleteRecords(File file, Consumer<? super SelfieDetail> consumer, LongConsumer bytesRead) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long end = ParallelCsvReader.lastRecordEnd(channel, 0, channel.size());
+            if (end == 0) {
+                throw new IOException("The header of " + file.getName() + " is not complete yet");
+            }
+            CountingInputStream input = new CountingInputStream(Channels.newInputStream(channel), end);
+            try (CSVParser csvParser = openParser(input)) {
+                CsvColumnMapping mapping = CsvColumnMapping.compile(csvParser.getHeaderMap());
+                parseRecords(csvParser, mapping, input, consumer, bytesRead);
+                return new CsvTail(file, end, mapping);
+            }
         }
     }
     
-    private Integer getIntegerValue(CSVRecord record, String columnName) {
-        try {
-            String value = record.get(columnName);
-            if (value == null || value.trim().isEmpty()) {
-                return 0;
+    /**
+     * Parses the complete records appended to a file since {@code tail}, with the
+     * header mapping read when it was first parsed. Reads nothing before the tail.
+     *
+     * @return the tail after the parsed records
+     * @throws IOException if the file cannot be read or is now shorter than the tail
+     */
+    public CsvTail parseAppendedRecords(CsvTail tail, Consumer<? super SelfieDetail> consumer) throws IOException {
+        File file = tail.getFile();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < tail.getOffset()) {
+                throw new IOException(file.getName() + " is shorter than when it was last read");
+            }
+            long end = ParallelCsvReader.lastRecordEnd(channel, tail.getOffset(), size);
+            if (end == tail.getOffset()) {
+                return tail;
             }
-            return Integer.parseInt(value.trim());
-        } catch (Exception e) {
-            return 0;
+            channel.position(tail.getOffset());
+            CountingInputStream input = new CountingInputStream(Channels.newInputStream(channel), end - tail.getOffset());
+            try (CSVParser csvParser = CSV_FORMAT.parse(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+                parseRecords(csvParser, tail.getMapping(), input, consumer, bytesRead -> { });
+            }
+            return new CsvTail(file, end, tail.getMapping());
         }
     }
     
-    public int getTotalRecords(List<SelfieDetail> data) {
+    /**
+     * Parses the file into a dataset on the fork-join common pool by memory-mapping it
+     * and splitting it into record-aligned byte ranges, each parsed into a dataset of its
+     * own and then appended in order. Produces exactly the same rows, in the same order,
+     * as {@link #parseCsvFile(File, Consumer)}, which it falls back to for small files.
+     * Progress is reported as each range is done rather than after every row.
+     */
+    public SelfieDataset parseCsvFileParallel(File file, LongConsumer bytesRead) throws IOException {
+        SelfieDataset data = new SelfieDataset();
+        parseCsvFileParallel(file, data, bytesRead);
+        return data;
+    }
+    
+    /**
+     * Same as {@link #parseCsvFileParallel(File, LongConsumer)}, appending to {@code data}
+     * each range as soon as it and every range before it are parsed, so the start of a
+     * large file can be shown while the rest is still being parsed. Ranges are appended
+     * by whichever thread finished them, one at a time, and {@code data} may be read
+     * meanwhile as while {@link #parseCsvFile(File, Consumer, LongConsumer)} fills it.
+     * {@code bytesRead} is told after the rows it covers have been appended, and may
+     * throw to stop parsing.
+     */
+    public void parseCsvFileParallel(File file, SelfieDataset data, LongConsumer bytesRead) throws IOException {
+        if (isParsedInParallel(file) && parseInRanges(file, PARALLEL_RANGE_SIZE, data, bytesRead)) {
+            return;
+        }
+        parseCsvFile(file, data::add, bytesRead);
+    }
+    
+    /**
+     * Appends the rows of the file to {@code data}, parsed in ranges of about
+     * {@code rangeSize} bytes.
+     *
+     * @return {@code false}, having appended nothing, if the file has no complete header
+     *         to split after
+     */
+    boolean parseInRanges(File file, long rangeSize, SelfieDataset data, LongConsumer bytesRead) throws IOException {
+        return new ParallelCsvReader<SelfieDetail, SelfieDataset>(CSV_FORMAT,
+                headerMap -> CsvColumnMapping.compile(headerMap)::toSelfieDetail,
+                SelfieDataset::new, SelfieDataset::add, rangeSize)
+                .read(file, data::addAll, bytesRead);
+    }
+    
+    /**
+     * @return whether {@link #parseCsvFileParallel} splits the file across threads rather
+     *         than parsing it on the calling thread
+     */
+    public boolean isParsedInParallel(File file) {
+        return file.length() >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1;
+    }
+    
+    /**
+     * Lazy, pull-style view over the rows of a CSV file. Rows are decoded on demand
+     * as the stream is consumed. The returned stream holds the file open and must be
+     * closed by the caller, typically with try-with-resources.
+     */
+    public Stream<SelfieDetail> streamCsvFile(File file) throws IOException {
+        CSVParser csvParser = openParser(file);
+        CsvColumnMapping mapping = CsvColumnMapping.compile(csvParser.getHeaderMap());
+        return csvParser.stream()
+                .map(mapping::toSelfieDetail)
+                .onClose(() -> {
+                    try {
+                        csvParser.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+    
+    private CSVParser openParser(File file) throws IOException {
+        return openParser(new FileInputStream(file));
+    }
+    
+    private CSVParser openParser(InputStream input) throws IOException {
+        Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+        try {
+            return CSV_FORMAT.withFirstRecordAsHeader().parse(reader);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Computes every statistic in one pass; prefer this over the individual getters when
+     * more than one figure is needed.
+     */
+    public DatasetStatistics getStatistics(SelfieDataset data) {
+        return DatasetStatistics.of(data);
+    }
+    
+    public int getTotalRecords(SelfieDataset data) {
         return data.size();
     }
     
-    public int getCompleteRegistrations(List<SelfieDetail> data) {
-        return (int) data.stream()
-                .filter(detail -> detail.getName() != null && !detail.getName().isEmpty() &&
-                                detail.getEmail() != null && !detail.getEmail().isEmpty() &&
-                                detail.getContact() != null && !detail.getContact().isEmpty())
-                .count();
+    public int getCompleteRegistrations(SelfieDataset data) {
+        return getStatistics(data).getCompleteRegistrations();
+    }
+    
+    public int getRecordsWithEmail(SelfieDataset data) {
+        return getStatistics(data).getRecordsWithEmail();
     }
     
-    public int getRecordsWithEmail(List<SelfieDetail> data) {
-        return (int) data.stream()
-                .filter(detail -> detail.getEmail() != null && !detail.getEmail().isEmpty())
-                .count();
+    public int getRecordsWithPhotos(SelfieDataset data) {
+        return getStatistics(data).getRecordsWithPhotos();
     }
     
-    public int getRecordsWithPhotos(List<SelfieDetail> data) {
-        return (int) data.stream()
-                .filter(detail -> detail.getPhotos() != null && detail.getPhotos() > 0)
-                .count();
+    public double getAveragePhotos(SelfieDataset data) {
+        return getStatistics(data).getAveragePhotos();
     }
     
-    public double getAveragePhotos(List<SelfieDetail> data) {
-        return data.stream()
-                .filter(detail -> detail.getPhotos() != null)
-                .mapToInt(SelfieDetail::getPhotos)
-                .average()
-                .orElse(0.0);
+    /**
+     * Counts the bytes read, and reads no more than {@code limit} of them.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+        private long remaining;
+        
+        CountingInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+                remaining--;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int n = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (n > 0) {
+                count += n;
+                remaining -= n;
+            }
+            return n;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            count += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
     }
 }
@@ -0,0 +1,184 @@
+package com.devdam.memzo_extracter.service;
+
+import com.devdam.memzo_extracter.model.SelfieDataset;
+import com.devdam.memzo_extracter.model.SelfieDatasetSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Directory of {@link SelfieDatasetSnapshot binary snapshots} of parsed CSV files, so
+ * re-opening an unchanged file reads the snapshot instead of parsing the CSV again.
+ *
+ * Each CSV file has at most one snapshot, named after its path. A snapshot is used only
+ * if the file still has the path, size and modification time it was made from and its
+ * contents still have the same CRC32C; hashing reads the file once, which is far cheaper
+ * than parsing it. Snapshots are written on a background thread to a temp file that is
+ * renamed into place, and the least recently written are removed beyond
+ * {@link #MAX_SNAPSHOTS}. A cache that fails is only ever a slower load: every error is
+ * logged and treated as a miss.
+ */
+public class CsvSnapshotCache {
+    
+    /**
+     * Where the application keeps its snapshots: under the user's home rather than the
+     * working directory, so they are found again wherever the application is started from.
+     */
+    public static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("user.home"), ".memzo-extracter", "csv-cache");
+    
+    private static final int MAX_SNAPSHOTS = 8;
+    private static final String EXTENSION = ".snapshot";
+    private static final long HASH_WINDOW_SIZE = 64L * 1024 * 1024;
+    
+    // One writer thread for all caches; daemon so it never blocks shutdown
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "csv-snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final Path directory;
+    
+    public CsvSnapshotCache(Path directory) {
+        this.directory = directory;
+    }
+    
+    /**
+     * A CSV file as it was when a load started: its path, size and modification time.
+     */
+    public static final class SourceFile {
+        private final Path path;
+        private final long size;
+        private final long modified;
+        
+        private SourceFile(Path path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+        
+        public Path getPath() {
+            return path;
+        }
+        
+        // Stored in the snapshot; the content hash is compared separately
+        String describe() {
+            return path + "\n" + size + "\n" + modified;
+        }
+    }
+    
+    /**
+     * Records the file's current state. Take it before reading the file, so a change
+     * made while it is parsed keeps the result out of the cache.
+     */
+    public SourceFile describe(File file) throws IOException {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return new SourceFile(path, attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+    
+    /**
+     * @return the dataset of the file's snapshot, or {@code null} if there is no
+     *         snapshot of the file in its described state
+     */
+    public SelfieDataset load(SourceFile source) {
+        Path snapshotPath = snapshotPath(source);
+        if (!Files.isRegularFile(snapshotPath)) {
+            return null;
+        }
+        try (SelfieDatasetSnapshot snapshot = SelfieDatasetSnapshot.open(snapshotPath)) {
+            if (!snapshot.getSource().equals(source.describe())
+                    || snapshot.getContentHash() != contentHash(source.path)) {
+                return null;
+            }
+            return snapshot.read();
+        } catch (IOException e) {
+            System.err.println("Ignoring CSV snapshot " + snapshotPath + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Saves a snapshot of the dataset loaded from the file in the background. Nothing is
+     * saved if the file has changed since it was described. {@code data} must be
+     * complete; it is read, never modified.
+     */
+    public void store(SourceFile source, SelfieDataset data) {
+        WRITER.execute(() -> {
+            Path snapshotPath = snapshotPath(source);
+            Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+            try {
+                long hash = contentHash(source.path);
+                if (!describe(source.path.toFile()).describe().equals(source.describe())) {
+                    return; // changed while it was loaded or hashed
+                }
+                Files.createDirectories(directory);
+                SelfieDatasetSnapshot.write(data, tempPath, source.describe(), hash);
+                Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                removeOldSnapshots();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error saving CSV snapshot " + snapshotPath + ": " + e.getMessage());
+                try {
+                    Files.deleteIfExists(tempPath);
+                } catch (IOException ignored) {
+                    // the next store overwrites it
+                }
+            }
+        });
+    }
+    
+    // Readable and unique enough; the snapshot itself records the full path it is for
+    private Path snapshotPath(SourceFile source) {
+        String name = source.path.getFileName() + "-" + Integer.toHexString(source.path.toString().hashCode());
+        return directory.resolve(name + EXTENSION);
+    }
+    
+    private static long contentHash(Path path) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_WINDOW_SIZE) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(HASH_WINDOW_SIZE, size - position));
+                crc.update(window);
+            }
+        }
+        return crc.getValue();
+    }
+    
+    private void removeOldSnapshots() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(EXTENSION)).forEach(snapshots::add);
+        }
+        if (snapshots.size() <= MAX_SNAPSHOTS) {
+            return;
+        }
+        snapshots.sort(Comparator.comparingLong(CsvSnapshotCache::lastModified).reversed());
+        for (Path old : snapshots.subList(MAX_SNAPSHOTS, snapshots.size())) {
+            Files.deleteIfExists(old);
+        }
+    }
+    
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.devdam.memzo_extracter.service;
+
+import java.io.File;
+
+/**
+ * How far a CSV file that is still being written has been read: the byte offset just
+ * past its last complete record, and the column mapping of its header, which appended
+ * records are parsed with. Produced by {@link CsvService#parseCompleteRecords} and
+ * advanced by {@link CsvService#parseAppendedRecords}.
+ */
+public final class CsvTail {
+    
+    private final File file;
+    private final long offset;
+    private final CsvColumnMapping mapping;
+    
+    CsvTail(File file, long offset, CsvColumnMapping mapping) {
+        this.file = file;
+        this.offset = offset;
+        this.mapping = mapping;
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * @return the number of bytes at the start of the file that have been parsed
+     */
+    public long getOffset() {
+        return offset;
+    }
+    
+    CsvColumnMapping getMapping() {
+        return mapping;
+    }
+}
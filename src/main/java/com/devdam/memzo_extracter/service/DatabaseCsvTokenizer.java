@@ -0,0 +1,302 @@
+package com.devdam.memzo_extracter.service;
+
+import com.devdam.memzo_extracter.model.SelfieDetail;
+import com.devdam.memzo_extracter.util.EmailKeys;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Single-pass RFC 4180 reader for the unique email database files.
+ *
+ * Works on raw bytes: a record is split into fields in one scan, with quoted fields
+ * allowed to contain commas, doubled quotes and line breaks. The field bytes go into one
+ * {@link Record} that is reused for every record of a scan, so nothing is allocated per
+ * record until a field is actually turned into a {@code String}. Like the format's
+ * writer, whitespace around a field is dropped unless it is inside quotes.
+ *
+ * Not thread-safe; each scan uses its own buffers.
+ */
+final class DatabaseCsvTokenizer {
+    
+    private static final int CHUNK_SIZE = 1 << 16;
+    
+    // Parser states
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+    private static final int AFTER_QUOTED = 4;
+    private static final int RECORD_END = 5;
+    
+    @FunctionalInterface
+    interface RecordVisitor {
+        void visit(long offset, Record record) throws IOException;
+    }
+    
+    /**
+     * The fields of the record being visited. Only valid during the visit; the same
+     * instance is refilled for the next record.
+     */
+    static final class Record {
+        private byte[] data = new byte[256];
+        private int length;
+        private int[] fieldStarts = new int[8];
+        private int[] fieldEnds = new int[8];
+        private int fieldCount;
+        
+        int size() {
+            return fieldCount;
+        }
+        
+        /**
+         * @return the field's text, or {@code ""} if the record has fewer fields
+         */
+        String field(int index) {
+            if (index >= fieldCount) {
+                return "";
+            }
+            return new String(data, fieldStarts[index], fieldEnds[index] - fieldStarts[index], StandardCharsets.UTF_8);
+        }
+        
+        /**
+         * Same value as {@link EmailKeys#fingerprint} of {@link #field(int)}, usually
+         * without decoding the field.
+         */
+        long fingerprint(int index) {
+            if (index >= fieldCount) {
+                return EmailKeys.fingerprint("");
+            }
+            return EmailKeys.fingerprint(data, fieldStarts[index], fieldEnds[index]);
+        }
+        
+        /**
+         * @return whether the field is non-blank and contains an {@code @}, the test the
+         *         database applies to every stored email
+         */
+        boolean isEmail(int index) {
+            if (index >= fieldCount) {
+                return false;
+            }
+            for (int i = fieldStarts[index], end = fieldEnds[index]; i < end; i++) {
+                if (data[i] == '@') {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * @return the record as a database entry, or {@code null} if it has no valid email
+         */
+        SelfieDetail toEntry() {
+            if (!isEmail(1)) {
+                return null;
+            }
+            SelfieDetail entry = new SelfieDetail();
+            entry.setName(field(0));
+            entry.setEmail(field(1));
+            entry.setContact(field(2));
+            entry.setDate(field(3));
+            return entry;
+        }
+        
+        private void clear() {
+            length = 0;
+            fieldCount = 0;
+        }
+        
+        private void append(byte b) {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, length * 2);
+            }
+            data[length++] = b;
+        }
+        
+        private void endField(int start, int end) {
+            if (fieldCount == fieldStarts.length) {
+                fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+                fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+            }
+            fieldStarts[fieldCount] = start;
+            fieldEnds[fieldCount] = end;
+            fieldCount++;
+        }
+    }
+    
+    private DatabaseCsvTokenizer() {
+    }
+    
+    /**
+     * Calls the visitor for each record starting in {@code [from, to)} with the record's
+     * byte offset. Unless {@code requireTerminator} is set, a final record without a line
+     * break is visited too.
+     *
+     * @return the offset just past the last record visited
+     */
+    static long scan(Path file, long from, long to, boolean requireTerminator,
+                     RecordVisitor visitor) throws IOException {
+        return scan(file, from, to, requireTerminator, Long.MAX_VALUE, visitor);
+    }
+    
+    /**
+     * Reads the records starting at {@code offsets[0..count)}, which must be ascending,
+     * in one pass from the first of them to the end of the last. Records in between are
+     * split into fields but not decoded.
+     *
+     * @return the entries in the order of the offsets, with {@code null} where there is
+     *         no record or it has no valid email
+     */
+    static SelfieDetail[] readEntries(Path file, long[] offsets, int count) throws IOException {
+        SelfieDetail[] entries = new SelfieDetail[count];
+        if (count == 0) {
+            return entries;
+        }
+        int[] next = {0};
+        scan(file, offsets[0], Long.MAX_VALUE, false, offsets[count - 1], (start, record) -> {
+            while (next[0] < count && offsets[next[0]] < start) {
+                next[0]++; // not the start of a record
+            }
+            if (next[0] < count && offsets[next[0]] == start) {
+                entries[next[0]++] = record.toEntry();
+            }
+        });
+        return entries;
+    }
+    
+    /**
+     * Reads the single record starting at {@code offset}.
+     *
+     * @return the record as a database entry, or {@code null} if there is none or it has
+     *         no valid email
+     */
+    static SelfieDetail readEntry(Path file, long offset) throws IOException {
+        SelfieDetail[] found = new SelfieDetail[1];
+        scan(file, offset, Long.MAX_VALUE, false, offset, (start, record) -> found[0] = record.toEntry());
+        return found[0];
+    }
+    
+    /**
+     * Like the public scan, but stops after the first record starting at or after
+     * {@code lastStart}.
+     */
+    private static long scan(Path file, long from, long to, boolean requireTerminator, long lastStart,
+                             RecordVisitor visitor) throws IOException {
+        if (from >= to) {
+            return from;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            byte[] bytes = chunk.array();
+            Record record = new Record();
+            int state = FIELD_START;
+            int fieldStart = 0;
+            int fieldEnd = 0;
+            boolean done = false;
+            long position = from;
+            long recordStart = from;
+            long end = from;
+            
+            while (position < to && !done) {
+                chunk.clear();
+                if (to - position < chunk.capacity()) {
+                    chunk.limit((int) (to - position));
+                }
+                int read = channel.read(chunk, position);
+                if (read < 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    byte b = bytes[i];
+                    switch (state) {
+                        case FIELD_START:
+                            if (b == '"') {
+                                fieldStart = record.length;
+                                state = QUOTED;
+                            } else if (b == ',') {
+                                record.endField(record.length, record.length);
+                            } else if (b == '\n') {
+                                record.endField(record.length, record.length);
+                                state = RECORD_END;
+                            } else if ((b & 0xFF) > ' ') {
+                                fieldStart = record.length;
+                                record.append(b);
+                                fieldEnd = record.length;
+                                state = UNQUOTED;
+                            }
+                            break;
+                        case UNQUOTED:
+                            if (b == ',' || b == '\n') {
+                                // Trailing whitespace was appended but is not part of the field
+                                record.endField(fieldStart, fieldEnd);
+                                state = b == ',' ? FIELD_START : RECORD_END;
+                            } else {
+                                record.append(b);
+                                if ((b & 0xFF) > ' ') {
+                                    fieldEnd = record.length;
+                                }
+                            }
+                            break;
+                        case QUOTED:
+                            if (b == '"') {
+                                state = QUOTE_IN_QUOTED;
+                            } else {
+                                record.append(b);
+                            }
+                            break;
+                        case QUOTE_IN_QUOTED:
+                            if (b == '"') {
+                                record.append(b);
+                                state = QUOTED;
+                                break;
+                            }
+                            record.endField(fieldStart, record.length);
+                            state = b == ',' ? FIELD_START : b == '\n' ? RECORD_END : AFTER_QUOTED;
+                            break;
+                        default: // AFTER_QUOTED: anything before the next separator is dropped
+                            if (b == ',') {
+                                state = FIELD_START;
+                            } else if (b == '\n') {
+                                state = RECORD_END;
+                            }
+                            break;
+                    }
+                    if (state == RECORD_END) {
+                        visitor.visit(recordStart, record);
+                        record.clear();
+                        state = FIELD_START;
+                        done = recordStart >= lastStart;
+                        recordStart = position + i + 1;
+                        end = recordStart;
+                        if (done) {
+                            break;
+                        }
+                    }
+                }
+                position += read;
+            }
+            
+            if (!requireTerminator && !done && position > recordStart) {
+                // Final record without a line break; an unclosed quote runs to the end
+                if (state == UNQUOTED) {
+                    record.endField(fieldStart, fieldEnd);
+                } else if (state == QUOTED || state == QUOTE_IN_QUOTED) {
+                    record.endField(fieldStart, record.length);
+                } else if (state == FIELD_START) {
+                    record.endField(record.length, record.length);
+                }
+                visitor.visit(recordStart, record);
+                end = position;
+            }
+            return end;
+        } catch (NoSuchFileException e) {
+            return from;
+        }
+    }
+}
@@ -0,0 +1,555 @@
+package com.devdam.memzo_extracter.service;
+
+import com.devdam.memzo_extracter.model.SelfieDetail;
+import com.devdam.memzo_extracter.service.DatabaseCsvTokenizer.RecordVisitor;
+import com.devdam.memzo_extracter.util.EmailKeys;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Storage for the unique email database ({@code db.csv}).
+ *
+ * The database is a CSV snapshot plus an append-only journal next to it
+ * ({@code db.csv.journal}) holding entries added since the last compaction, in the same
+ * row format. Saving appends and fsyncs only the new entries. Once the journal grows past
+ * a fraction of the snapshot it is folded into a new snapshot on a background thread;
+ * the snapshot is written to a temp file, fsynced and atomically renamed over the old
+ * one, so a crash at any point leaves either the old or the new snapshot intact.
+ *
+ * Membership is answered by a memory-mapped {@link EmailIndex} ({@code db.csv.idx})
+ * mapping each email's fingerprint to the byte offset of its first record, so checking an
+ * address neither loads the database nor keeps per-entry objects on the heap. The index
+ * is checked against the data files when it is opened, and rebuilt if it does not match
+ * them; from then on this class keeps it in step with its own appends and compactions,
+ * so lookups touch nothing but the mapping. Full scans and {@link #getStateStamp()}
+ * check the files again, picking up edits made by other programs.
+ */
+public class EmailDatabaseJournal {
+    
+    public static final String DEFAULT_PATH = "db.csv";
+    public static final String HEADER = "Name,Email,Contact,Date Added";
+    
+    /** Journals below this many entries are never compacted. */
+    private static final int MIN_COMPACTION_ENTRIES = 10_000;
+    
+    /** Set on index locations that point into the journal rather than the snapshot. */
+    private static final long JOURNAL_BIT = 1L << 62;
+    
+    /** Rough bytes per database line, used to size a rebuilt index. */
+    private static final int ESTIMATED_LINE_BYTES = 48;
+    
+    // One compaction thread for all databases; daemon so it never blocks shutdown
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "email-db-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final Path indexPath;
+    private final Object lock = new Object();
+    private final Object compactionLock = new Object();
+    private final AtomicBoolean compactionPending = new AtomicBoolean();
+    
+    // Guarded by lock; opened on first use
+    private EmailIndex index;
+    private boolean indexChecked; // whether the index was found to match the data files
+    
+    public EmailDatabaseJournal(Path snapshotPath) {
+        this.snapshotPath = snapshotPath;
+        this.journalPath = sibling(snapshotPath, ".journal");
+        this.indexPath = sibling(snapshotPath, ".idx");
+    }
+    
+    public Path getSnapshotPath() {
+        return snapshotPath;
+    }
+    
+    /**
+     * Constant-time check whether the database holds the email (compared
+     * case-insensitively). Lookups compare 64-bit fingerprints, so a false positive needs
+     * a full hash collision.
+     */
+    public boolean contains(String email) throws IOException {
+        return containsFingerprint(EmailKeys.fingerprint(email));
+    }
+    
+    /**
+     * Like {@link #contains(String)} for a fingerprint from {@link EmailKeys#fingerprint}.
+     */
+    public boolean containsFingerprint(long fingerprint) throws IOException {
+        synchronized (lock) {
+            return ensureIndex().get(fingerprint) != EmailIndex.NOT_FOUND;
+        }
+    }
+    
+    /**
+     * Reads the stored record for an email straight from its indexed offset.
+     *
+     * @return the record, or {@code null} if the email is not in the database
+     */
+    public SelfieDetail find(String email) throws IOException {
+        synchronized (lock) {
+            long location = ensureIndex().get(EmailKeys.fingerprint(email));
+            if (location == EmailIndex.NOT_FOUND) {
+                return null;
+            }
+            boolean inJournal = (location & JOURNAL_BIT) != 0;
+            return DatabaseCsvTokenizer.readEntry(inJournal ? journalPath : snapshotPath, location & ~JOURNAL_BIT);
+        }
+    }
+    
+    /**
+     * Lists the fingerprint of every email in the database in load order, straight from
+     * the index. Appends only add to the end of that order and compactions keep it, so
+     * the list stays a valid prefix of the database while it grows.
+     */
+    public long[] listFingerprints() throws IOException {
+        synchronized (lock) {
+            EmailIndex index = ensureIndex();
+            long snapshotSize = index.getSnapshotSize();
+            return index.listFingerprints(location -> (location & JOURNAL_BIT) != 0
+                    ? snapshotSize + (location & ~JOURNAL_BIT) : location);
+        }
+    }
+    
+    /**
+     * Reads the stored records for {@code fingerprints[from, to)} from their indexed
+     * offsets. Given a slice of {@link #listFingerprints()}, the records lie in one run of
+     * each data file, which is read in a single pass.
+     *
+     * @return the records in the order of the fingerprints, with {@code null} for one no
+     *         longer in the database
+     */
+    public SelfieDetail[] findAll(long[] fingerprints, int from, int to) throws IOException {
+        synchronized (lock) {
+            EmailIndex index = ensureIndex();
+            int count = to - from;
+            SelfieDetail[] found = new SelfieDetail[count];
+            long[] snapshotOffsets = new long[count];
+            int[] snapshotRows = new int[count];
+            int snapshotCount = 0;
+            long[] journalOffsets = new long[count];
+            int[] journalRows = new int[count];
+            int journalCount = 0;
+            for (int row = 0; row < count; row++) {
+                long location = index.get(fingerprints[from + row]);
+                if (location == EmailIndex.NOT_FOUND) {
+                    continue;
+                }
+                if ((location & JOURNAL_BIT) != 0) {
+                    journalOffsets[journalCount] = location & ~JOURNAL_BIT;
+                    journalRows[journalCount++] = row;
+                } else {
+                    snapshotOffsets[snapshotCount] = location;
+                    snapshotRows[snapshotCount++] = row;
+                }
+            }
+            readEntries(snapshotPath, snapshotOffsets, snapshotRows, snapshotCount, found);
+            readEntries(journalPath, journalOffsets, journalRows, journalCount, found);
+            return found;
+        }
+    }
+    
+    public int size() throws IOException {
+        synchronized (lock) {
+            return ensureIndex().size();
+        }
+    }
+    
+    /**
+     * Passes the fingerprint of every email in the database, in no particular order,
+     * without reading the data files.
+     */
+    public void forEachFingerprint(LongConsumer action) throws IOException {
+        synchronized (lock) {
+            ensureIndex().forEachFingerprint(action);
+        }
+    }
+    
+    /**
+     * Identifies the current contents of the data files. The value changes whenever an
+     * entry is appended, the journal is compacted or the snapshot is edited, so anything
+     * derived from the database can store it and later tell whether it is out of date.
+     */
+    public long getStateStamp() throws IOException {
+        synchronized (lock) {
+            EmailIndex index = checkIndex();
+            long stamp = index.getSnapshotSize();
+            stamp = stamp * 31 + index.getSnapshotModified();
+            stamp = stamp * 31 + index.getJournalLength();
+            return stamp * 31 + index.size();
+        }
+    }
+    
+    /**
+     * Reads the snapshot followed by the journal, keeping the first entry for each email
+     * (compared case-insensitively).
+     */
+    public List<SelfieDetail> load() throws IOException {
+        List<SelfieDetail> entries = new ArrayList<>();
+        forEachEntry(entries::add);
+        return entries;
+    }
+    
+    /**
+     * Streams every distinct entry in load order without collecting them. Duplicates are
+     * recognised through the index, so no set of seen emails is kept.
+     */
+    public void forEachEntry(Consumer<? super SelfieDetail> action) throws IOException {
+        synchronized (lock) {
+            EmailIndex index = checkIndex();
+            RecordVisitor emitFirst = (location, record) -> {
+                if (record.isEmail(1) && index.get(record.fingerprint(1)) == location) {
+                    action.accept(record.toEntry());
+                }
+            };
+            if (Files.exists(snapshotPath)) {
+                DatabaseCsvTokenizer.scan(snapshotPath, 0, index.getSnapshotSize(), false, skipHeader(emitFirst));
+            }
+            if (Files.exists(journalPath)) {
+                DatabaseCsvTokenizer.scan(journalPath, 0, index.getJournalLength(), true,
+                        (offset, record) -> emitFirst.visit(offset | JOURNAL_BIT, record));
+            }
+        }
+    }
+    
+    /**
+     * Durably appends entries to the journal and indexes them. The cost is proportional
+     * to the entries written, not to the size of the database.
+     */
+    public void append(Collection<SelfieDetail> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder(entries.size() * 64);
+        int[] lineEnds = new int[entries.size()];
+        int count = 0;
+        for (SelfieDetail entry : entries) {
+            appendLine(lines, entry);
+            lineEnds[count++] = lines.length();
+        }
+        
+        synchronized (lock) {
+            try {
+                EmailIndex index = ensureIndex();
+                long start = index.getJournalLength();
+                byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+                try (FileChannel channel = FileChannel.open(journalPath,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, start + buffer.position());
+                    }
+                    channel.force(false);
+                }
+                
+                // Index each line at its byte offset; the char offsets only match for ASCII
+                int journalEntries = index.getJournalEntries();
+                long offset = start;
+                int lineStart = 0;
+                count = 0;
+                for (SelfieDetail entry : entries) {
+                    int lineEnd = lineEnds[count++];
+                    if (index.putIfAbsent(EmailKeys.fingerprint(entry.getEmail()), offset | JOURNAL_BIT)) {
+                        journalEntries++;
+                    }
+                    offset += utf8Length(lines, lineStart, lineEnd);
+                    lineStart = lineEnd;
+                }
+                index.force();
+                index.setJournal(start + bytes.length, journalEntries);
+                index.force();
+                
+                int snapshotEntries = index.size() - journalEntries;
+                if (journalEntries >= Math.max(MIN_COMPACTION_ENTRIES, snapshotEntries / 4)) {
+                    compactAsync();
+                }
+            } catch (IOException | RuntimeException e) {
+                indexChecked = false; // the journal may hold lines the index lacks
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * Schedules a compaction unless one is already queued.
+     */
+    public CompletableFuture<Void> compactAsync() {
+        if (!compactionPending.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                System.err.println("Error compacting database journal: " + e.getMessage());
+            } finally {
+                compactionPending.set(false);
+            }
+        }, COMPACTOR);
+    }
+    
+    /**
+     * Folds the journal into a new snapshot: the old snapshot followed by the journal's
+     * first occurrences. Existing snapshot offsets stay valid, so the index is patched in
+     * place rather than rebuilt. Appends made while the snapshot is written carry over
+     * into the fresh journal.
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            // Only compaction replaces the snapshot, so its length is stable from here on
+            long snapshotSize;
+            long journalLength;
+            List<SelfieDetail> journalEntries = new ArrayList<>();
+            synchronized (lock) {
+                EmailIndex index = ensureIndex();
+                snapshotSize = index.getSnapshotSize();
+                journalLength = index.getJournalLength();
+                if (journalLength == 0) {
+                    return;
+                }
+                DatabaseCsvTokenizer.scan(journalPath, 0, journalLength, true, (offset, record) -> {
+                    if (record.isEmail(1) && index.get(record.fingerprint(1)) == (offset | JOURNAL_BIT)) {
+                        journalEntries.add(record.toEntry());
+                    }
+                });
+            }
+            
+            Path snapshotTemp = sibling(snapshotPath, ".tmp");
+            long[] newOffsets = new long[journalEntries.size()];
+            try (FileChannel target = FileChannel.open(snapshotTemp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = 0;
+                if (snapshotSize > 0) {
+                    try (FileChannel source = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+                        while (position < snapshotSize) {
+                            position += source.transferTo(position, snapshotSize - position, target);
+                        }
+                    }
+                    if (!endsWithNewline(snapshotPath, snapshotSize)) {
+                        position += write(target, position, "\n");
+                    }
+                } else {
+                    position += write(target, position, HEADER + "\n");
+                }
+                StringBuilder line = new StringBuilder(128);
+                for (int i = 0; i < journalEntries.size(); i++) {
+                    newOffsets[i] = position;
+                    line.setLength(0);
+                    appendLine(line, journalEntries.get(i));
+                    position += write(target, position, line.toString());
+                }
+                target.force(true);
+            }
+            
+            synchronized (lock) {
+                EmailIndex index = ensureIndex();
+                index.markBuilding();
+                indexChecked = false; // until the index is marked clean below
+                
+                // Keep whatever was appended after journalLength was taken
+                Path journalTemp = sibling(journalPath, ".tmp");
+                long journalEnd = index.getJournalLength();
+                try (FileChannel source = FileChannel.open(journalPath, StandardOpenOption.READ);
+                     FileChannel target = FileChannel.open(journalTemp, StandardOpenOption.CREATE,
+                             StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long position = journalLength;
+                    while (position < journalEnd) {
+                        position += source.transferTo(position, journalEnd - position, target);
+                    }
+                    target.force(true);
+                }
+                
+                Files.move(snapshotTemp, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(journalTemp, journalPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                
+                for (int i = 0; i < newOffsets.length; i++) {
+                    index.replace(EmailKeys.fingerprint(journalEntries.get(i).getEmail()), newOffsets[i]);
+                }
+                int[] tailEntries = new int[1];
+                DatabaseCsvTokenizer.scan(journalPath, 0, journalEnd - journalLength, true, (offset, record) -> {
+                    if (record.isEmail(1)) {
+                        long fingerprint = record.fingerprint(1);
+                        if (index.get(fingerprint) == ((offset + journalLength) | JOURNAL_BIT)) {
+                            index.replace(fingerprint, offset | JOURNAL_BIT);
+                            tailEntries[0]++;
+                        }
+                    }
+                });
+                index.setSnapshot(Files.size(snapshotPath), Files.getLastModifiedTime(snapshotPath).toMillis());
+                index.setJournal(journalEnd - journalLength, tailEntries[0]);
+                index.markClean();
+                indexChecked = true;
+            }
+        }
+    }
+    
+    /**
+     * Returns the index, checking it against the data files only the first time and
+     * after a write of this class failed.
+     */
+    private EmailIndex ensureIndex() throws IOException {
+        return index != null && indexChecked ? index : checkIndex();
+    }
+    
+    /**
+     * Opens the index, rebuilding it if it is missing, was left half-written or no longer
+     * matches the snapshot, and indexing any journal lines it has not seen yet.
+     */
+    private EmailIndex checkIndex() throws IOException {
+        indexChecked = false;
+        if (index == null) {
+            index = EmailIndex.open(indexPath);
+        }
+        long snapshotSize = Files.exists(snapshotPath) ? Files.size(snapshotPath) : 0;
+        long snapshotModified = snapshotSize > 0 ? Files.getLastModifiedTime(snapshotPath).toMillis() : 0;
+        long journalSize = Files.exists(journalPath) ? Files.size(journalPath) : 0;
+        
+        boolean stale = !index.isValid()
+                || index.getSnapshotSize() != snapshotSize
+                || index.getSnapshotModified() != snapshotModified
+                || index.getJournalLength() > journalSize;
+        if (stale) {
+            rebuildIndex(snapshotSize, snapshotModified, journalSize);
+        } else if (index.getJournalLength() < journalSize) {
+            indexJournal(index.getJournalLength(), journalSize);
+            index.force();
+        }
+        indexChecked = true;
+        return index;
+    }
+    
+    private void rebuildIndex(long snapshotSize, long snapshotModified, long journalSize) throws IOException {
+        index.reset((int) Math.min(Integer.MAX_VALUE, (snapshotSize + journalSize) / ESTIMATED_LINE_BYTES));
+        if (snapshotSize > 0) {
+            DatabaseCsvTokenizer.scan(snapshotPath, 0, snapshotSize, false, skipHeader((offset, record) -> {
+                if (record.isEmail(1)) {
+                    index.putIfAbsent(record.fingerprint(1), offset);
+                }
+            }));
+        }
+        index.setSnapshot(snapshotSize, snapshotModified);
+        index.setJournal(0, 0);
+        indexJournal(0, journalSize);
+        index.markClean();
+    }
+    
+    /**
+     * Indexes complete journal records in {@code [from, to)}. A record cut short by a
+     * crash during an append has no line break after it; it is truncated away so the next
+     * append starts on a fresh line.
+     */
+    private void indexJournal(long from, long to) throws IOException {
+        int[] entries = {index.getJournalEntries()};
+        long end = DatabaseCsvTokenizer.scan(journalPath, from, to, true, (offset, record) -> {
+            if (record.isEmail(1) && index.putIfAbsent(record.fingerprint(1), offset | JOURNAL_BIT)) {
+                entries[0]++;
+            }
+        });
+        if (end < to) {
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+                channel.force(false);
+            }
+        }
+        index.force();
+        index.setJournal(end, entries[0]);
+    }
+    
+    private static void readEntries(Path file, long[] offsets, int[] rows, int count,
+                                    SelfieDetail[] found) throws IOException {
+        for (int i = 1; i < count; i++) {
+            if (offsets[i] <= offsets[i - 1]) {
+                // Not a slice of the load order; read the records one by one
+                for (int j = 0; j < count; j++) {
+                    found[rows[j]] = DatabaseCsvTokenizer.readEntry(file, offsets[j]);
+                }
+                return;
+            }
+        }
+        SelfieDetail[] entries = DatabaseCsvTokenizer.readEntries(file, offsets, count);
+        for (int i = 0; i < count; i++) {
+            found[rows[i]] = entries[i];
+        }
+    }
+    
+    private static RecordVisitor skipHeader(RecordVisitor visitor) {
+        return (offset, record) -> {
+            if (offset > 0) {
+                visitor.visit(offset, record);
+            }
+        };
+    }
+    
+    private static boolean endsWithNewline(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            return channel.read(last, size - 1) == 1 && last.get(0) == '\n';
+        }
+    }
+    
+    private static int write(FileChannel channel, long position, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        return length;
+    }
+    
+    private static int utf8Length(CharSequence text, int start, int end) {
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+    
+    private static Path sibling(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
+    
+    private static void appendLine(StringBuilder out, SelfieDetail entry) {
+        out.append(escapeCsv(entry.getName())).append(',')
+                .append(escapeCsv(entry.getEmail())).append(',')
+                .append(escapeCsv(entry.getContact())).append(',')
+                .append(escapeCsv(entry.getDate())).append('\n');
+    }
+    
+    private static String escapeCsv(String value) {
+        if (value == null) return "";
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            value = value.replace("\"", "\"\""); // Escape quotes
+            return "\"" + value + "\"";
+        }
+        return value;
+    }
+}
@@ -0,0 +1,81 @@
+package com.devdam.memzo_extracter.service;
+
+import com.devdam.memzo_extracter.model.SelfieDetail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Random access to the first {@code size} records of an {@link EmailDatabaseJournal} in
+ * load order, without holding them on the heap.
+ *
+ * The records are not listed until first asked for: listing takes one
+ * {@link EmailDatabaseJournal#listFingerprints()} pass over the index, which keeps just
+ * a fingerprint per record. Records are then read a page at a time from the offsets the
+ * index stores, and the most recently used pages are kept. Thread-safe.
+ */
+final class EmailDatabasePages {
+    
+    static final int PAGE_SIZE = 256;
+    
+    // Several screens' worth of rows, and a sequential reader never evicts its own page
+    private static final int MAX_CACHED_PAGES = 64;
+    
+    private final EmailDatabaseJournal database;
+    private final int size;
+    private long[] fingerprints; // guarded by this; null until listed
+    private final Map<Integer, SelfieDetail[]> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, SelfieDetail[]> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    
+    EmailDatabasePages(EmailDatabaseJournal database, int size) {
+        this.database = database;
+        this.size = size;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    synchronized boolean isListed() {
+        return fingerprints != null;
+    }
+    
+    /**
+     * Lists the records if not done yet. Later entries of the database were added after
+     * this view was taken and are left out.
+     */
+    synchronized void list() throws IOException {
+        if (fingerprints == null) {
+            long[] listed = database.listFingerprints();
+            fingerprints = listed.length > size ? Arrays.copyOf(listed, size) : listed;
+        }
+    }
+    
+    /**
+     * @return the record, or an empty one if it has left the database since it was
+     *         counted, which only an edit by another program causes
+     */
+    synchronized SelfieDetail get(int index) throws IOException {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + size);
+        }
+        list();
+        int page = index / PAGE_SIZE;
+        SelfieDetail[] records = pages.get(page);
+        if (records == null) {
+            int from = Math.min(fingerprints.length, page * PAGE_SIZE);
+            int to = Math.min(fingerprints.length, from + PAGE_SIZE);
+            records = database.findAll(fingerprints, from, to);
+            pages.put(page, records);
+        }
+        int offset = index - page * PAGE_SIZE;
+        SelfieDetail record = offset < records.length ? records[offset] : null;
+        return record != null ? record : SelfieDetail.builder().name("").email("").contact("").date("").build();
+    }
+}
@@ -0,0 +1,353 @@
+package com.devdam.memzo_extracter.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * On-disk open-addressing hash table from email fingerprints to record locations,
+ * accessed through a memory mapping so opening it costs nothing per entry.
+ *
+ * The file is a 64-byte header followed by power-of-two many 16-byte slots, each a
+ * fingerprint (0 for an empty slot) and a location, probed linearly. The header also
+ * records which snapshot and how much of the journal the table covers, so the owner can
+ * tell when it is stale. Not thread-safe; {@link EmailDatabaseJournal} guards it.
+ */
+final class EmailIndex implements Closeable {
+    
+    static final long NOT_FOUND = -1;
+    
+    private static final long MAGIC = 0x4D454D5A4F494458L; // "MEMZOIDX"
+    private static final int FORMAT = 1;
+    private static final int STATE_BUILDING = 0;
+    private static final int STATE_CLEAN = 1;
+    
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_CAPACITY = 1 << 12;
+    private static final int MAX_CAPACITY = 1 << 26; // keeps the mapping under 2 GB
+    private static final int SLOT_BITS = Integer.numberOfTrailingZeros(MAX_CAPACITY);
+    
+    // Header layout
+    private static final int MAGIC_OFFSET = 0;
+    private static final int FORMAT_OFFSET = 8;
+    private static final int STATE_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int COUNT_OFFSET = 20;
+    private static final int SNAPSHOT_SIZE_OFFSET = 24;
+    private static final int SNAPSHOT_MODIFIED_OFFSET = 32;
+    private static final int JOURNAL_LENGTH_OFFSET = 40;
+    private static final int JOURNAL_ENTRIES_OFFSET = 48;
+    
+    private final Path path;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int mask;
+    private int count;
+    
+    private EmailIndex(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+    
+    /**
+     * Opens the index file, creating it if needed. The table is only mapped if the file
+     * holds a complete, cleanly written index; otherwise {@link #isValid()} is false and
+     * the caller is expected to {@link #reset(int)} it.
+     */
+    static EmailIndex open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        EmailIndex index = new EmailIndex(path, channel);
+        try {
+            index.mapIfValid();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return index;
+    }
+    
+    private void mapIfValid() throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return;
+        }
+        // Read the header through the channel so an invalid file is never mapped and can
+        // still be truncated on platforms that forbid truncating mapped files
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read the whole header
+        }
+        int storedCapacity = header.getInt(CAPACITY_OFFSET);
+        boolean valid = header.getLong(MAGIC_OFFSET) == MAGIC
+                && header.getInt(FORMAT_OFFSET) == FORMAT
+                && header.getInt(STATE_OFFSET) == STATE_CLEAN
+                && storedCapacity >= MIN_CAPACITY && storedCapacity <= MAX_CAPACITY
+                && Integer.bitCount(storedCapacity) == 1
+                && channel.size() == fileSize(storedCapacity);
+        if (valid) {
+            map(storedCapacity);
+            count = buffer.getInt(COUNT_OFFSET);
+        }
+    }
+    
+    boolean isValid() {
+        return buffer != null;
+    }
+    
+    /**
+     * Discards the contents and starts an empty table sized for the expected number of
+     * entries. The index stays in the building state until {@link #markClean()}.
+     */
+    void reset(int expectedEntries) throws IOException {
+        int wanted = capacityFor(expectedEntries);
+        if (buffer != null && capacity >= wanted) {
+            // Clear in place; a mapped file cannot be truncated everywhere
+            for (long position = HEADER_SIZE; position < fileSize(capacity); position += 8) {
+                buffer.putLong((int) position, 0L);
+            }
+        } else {
+            buffer = null;
+            channel.truncate(0);
+            map(wanted);
+        }
+        buffer.putLong(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(FORMAT_OFFSET, FORMAT);
+        buffer.putInt(STATE_OFFSET, STATE_BUILDING);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        count = 0;
+        buffer.putInt(COUNT_OFFSET, 0);
+    }
+    
+    long get(long fingerprint) {
+        int slot = (int) fingerprint & mask;
+        while (true) {
+            long position = slotPosition(slot);
+            long stored = buffer.getLong((int) position);
+            if (stored == 0) {
+                return NOT_FOUND;
+            }
+            if (stored == fingerprint) {
+                return buffer.getLong((int) position + 8);
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    /**
+     * @return {@code true} if the fingerprint was added, {@code false} if it was present
+     */
+    boolean putIfAbsent(long fingerprint, long location) throws IOException {
+        if (count + 1 > capacity - (capacity >> 2)) {
+            grow();
+        }
+        int position = findSlot(buffer, mask, fingerprint);
+        if (buffer.getLong(position) == fingerprint) {
+            return false;
+        }
+        buffer.putLong(position + 8, location);
+        buffer.putLong(position, fingerprint);
+        buffer.putInt(COUNT_OFFSET, ++count);
+        return true;
+    }
+    
+    /**
+     * Points an existing fingerprint at a new location.
+     *
+     * @return {@code false} if the fingerprint is not in the table
+     */
+    boolean replace(long fingerprint, long location) {
+        int position = findSlot(buffer, mask, fingerprint);
+        if (buffer.getLong(position) != fingerprint) {
+            return false;
+        }
+        buffer.putLong(position + 8, location);
+        return true;
+    }
+    
+    int size() {
+        return count;
+    }
+    
+    void forEachFingerprint(LongConsumer action) {
+        for (int slot = 0; slot < capacity; slot++) {
+            long fingerprint = buffer.getLong((int) slotPosition(slot));
+            if (fingerprint != 0) {
+                action.accept(fingerprint);
+            }
+        }
+    }
+    
+    /**
+     * Lists every fingerprint ordered by the position its location maps to, such as the
+     * order of the records in the data files. Sorts one packed {@code long} per entry,
+     * so positions must be below 2^37.
+     */
+    long[] listFingerprints(LongUnaryOperator position) {
+        long[] keys = new long[count];
+        int size = 0;
+        for (int slot = 0; slot < capacity && size < keys.length; slot++) {
+            int offset = (int) slotPosition(slot);
+            if (buffer.getLong(offset) != 0) {
+                long sortPosition = position.applyAsLong(buffer.getLong(offset + 8));
+                if (sortPosition < 0 || sortPosition >= 1L << (63 - SLOT_BITS)) {
+                    throw new IllegalStateException("Email index location out of range: " + sortPosition);
+                }
+                keys[size++] = sortPosition << SLOT_BITS | slot;
+            }
+        }
+        Arrays.parallelSort(keys, 0, size);
+        for (int i = 0; i < size; i++) {
+            keys[i] = buffer.getLong((int) slotPosition((int) (keys[i] & (MAX_CAPACITY - 1))));
+        }
+        return size == keys.length ? keys : Arrays.copyOf(keys, size);
+    }
+    
+    long getSnapshotSize() {
+        return buffer.getLong(SNAPSHOT_SIZE_OFFSET);
+    }
+    
+    long getSnapshotModified() {
+        return buffer.getLong(SNAPSHOT_MODIFIED_OFFSET);
+    }
+    
+    long getJournalLength() {
+        return buffer.getLong(JOURNAL_LENGTH_OFFSET);
+    }
+    
+    int getJournalEntries() {
+        return buffer.getInt(JOURNAL_ENTRIES_OFFSET);
+    }
+    
+    void setSnapshot(long size, long modified) {
+        buffer.putLong(SNAPSHOT_SIZE_OFFSET, size);
+        buffer.putLong(SNAPSHOT_MODIFIED_OFFSET, modified);
+    }
+    
+    void setJournal(long length, int entries) {
+        buffer.putLong(JOURNAL_LENGTH_OFFSET, length);
+        buffer.putInt(JOURNAL_ENTRIES_OFFSET, entries);
+    }
+    
+    /**
+     * Marks the table as being modified in ways that must not survive a crash; until
+     * {@link #markClean()} a reopened index is treated as invalid.
+     */
+    void markBuilding() {
+        buffer.putInt(STATE_OFFSET, STATE_BUILDING);
+        buffer.force();
+    }
+    
+    void markClean() {
+        buffer.force();
+        buffer.putInt(STATE_OFFSET, STATE_CLEAN);
+        buffer.force();
+    }
+    
+    /**
+     * Flushes slot writes before the header that describes them, so a crash never leaves
+     * a header claiming entries that did not reach the disk.
+     */
+    void force() {
+        buffer.force();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        channel.close();
+    }
+    
+    /**
+     * Doubles the table. The larger table is built in a side file and copied over this
+     * one through the channel, which extends the file without truncating a mapped region.
+     */
+    private void grow() throws IOException {
+        int newCapacity = capacity << 1;
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Email index is full (" + count + " entries)");
+        }
+        Path growPath = path.resolveSibling(path.getFileName() + ".grow");
+        try (FileChannel growChannel = FileChannel.open(growPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer grown = growChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(newCapacity));
+            int newMask = newCapacity - 1;
+            for (int slot = 0; slot < capacity; slot++) {
+                int position = (int) slotPosition(slot);
+                long fingerprint = buffer.getLong(position);
+                if (fingerprint != 0) {
+                    int target = findSlot(grown, newMask, fingerprint);
+                    grown.putLong(target + 8, buffer.getLong(position + 8));
+                    grown.putLong(target, fingerprint);
+                }
+            }
+            for (int i = 0; i < HEADER_SIZE; i++) {
+                grown.put(i, buffer.get(i));
+            }
+            grown.putInt(CAPACITY_OFFSET, newCapacity);
+            grown.force();
+            
+            int state = buffer.getInt(STATE_OFFSET);
+            markBuilding();
+            long size = fileSize(newCapacity);
+            long position = 0;
+            while (position < size) {
+                position += channel.transferFrom(growChannel, position, size - position);
+            }
+            map(newCapacity);
+            buffer.putInt(STATE_OFFSET, state);
+            buffer.force();
+        } finally {
+            Files.deleteIfExists(growPath);
+        }
+    }
+    
+    private void map(int newCapacity) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(newCapacity));
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+    }
+    
+    // Position of the slot holding the fingerprint, or of the empty slot ending its probe
+    private static int findSlot(ByteBuffer table, int mask, long fingerprint) {
+        int slot = (int) fingerprint & mask;
+        while (true) {
+            int position = (int) slotPosition(slot);
+            long stored = table.getLong(position);
+            if (stored == 0 || stored == fingerprint) {
+                return position;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    private static long slotPosition(int slot) {
+        return HEADER_SIZE + (long) slot * SLOT_SIZE;
+    }
+    
+    private static long fileSize(int capacity) {
+        return slotPosition(capacity);
+    }
+    
+    private static int capacityFor(int expectedEntries) {
+        // Aim for a load factor of at most one half after a rebuild
+        long wanted = Math.max(MIN_CAPACITY, 2L * expectedEntries);
+        int capacity = MIN_CAPACITY;
+        while (capacity < wanted && capacity < MAX_CAPACITY) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
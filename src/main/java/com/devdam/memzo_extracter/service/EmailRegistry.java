@@ -0,0 +1,518 @@
+package com.devdam.memzo_extracter.service;
+
+import com.devdam.memzo_extracter.model.SelfieDataset;
+import com.devdam.memzo_extracter.model.SelfieDetail;
+import com.devdam.memzo_extracter.util.BloomFilter;
+import com.devdam.memzo_extracter.util.EmailKeys;
+import com.devdam.memzo_extracter.util.LongHashSet;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The unique email database as seen by the UI, shared by every panel that needs it.
+ *
+ * Records added in this run are kept in an append-only array behind the records the
+ * database held at startup, which stay on disk and are read a page at a time when asked
+ * for (see {@link EmailDatabasePages}), so starting up costs nothing per saved email.
+ * {@link #snapshot()} hands out an immutable view of the records present at that moment,
+ * so readers on any thread iterate a consistent state while new emails keep arriving. Merging a dataset notifies
+ * {@link Listener}s with just the records it added. New records are held as pending
+ * until {@link #save()} appends them to the {@link EmailDatabaseJournal}.
+ *
+ * Most emails in a re-upload are already known, and a new one would otherwise cost an
+ * index lookup in the database. A {@link BloomFilter} of every known email answers
+ * "definitely new" from memory; only probable hits go on to the exact lookup. The filter
+ * is saved next to the database ({@code db.csv.bloom}) when the application shuts down,
+ * not on every save, as it is far larger than what a save appends. It is rebuilt from
+ * the database index when it no longer matches, such as after a crash.
+ */
+@Service
+public class EmailRegistry {
+    
+    private static final DateTimeFormatter DATE_ADDED_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    
+    private static final double FILTER_FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_FILTER_CAPACITY = 1 << 16;
+    
+    /**
+     * Receives every merge, including ones that added nothing. Called on the merging
+     * thread; Swing listeners must hop to the EDT themselves.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void registryChanged(Delta delta);
+    }
+    
+    /**
+     * Outcome of one merge: the records added to the registry and the rows of the merged
+     * dataset they came from, in the same order.
+     */
+    public static final class Delta {
+        private final SelfieDataset source;
+        private final int firstRow;
+        private final int[] sourceRows;
+        private final List<SelfieDetail> added;
+        
+        private Delta(SelfieDataset source, int firstRow, int[] sourceRows, List<SelfieDetail> added) {
+            this.source = source;
+            this.firstRow = firstRow;
+            this.sourceRows = sourceRows;
+            this.added = added;
+        }
+        
+        /**
+         * @return the merged dataset, or {@code null} when the merge was a clear
+         */
+        public SelfieDataset getSource() {
+            return source;
+        }
+        
+        /**
+         * @return the first row of the source this merge covered; rows before it were
+         *         merged earlier, and 0 means the whole dataset was merged
+         */
+        public int getFirstRow() {
+            return firstRow;
+        }
+        
+        public int[] getSourceRows() {
+            return sourceRows.clone();
+        }
+        
+        public List<SelfieDetail> getAdded() {
+            return added;
+        }
+        
+        public boolean isEmpty() {
+            return added.isEmpty();
+        }
+    }
+    
+    /**
+     * How well the Bloom filter in front of the database is doing. The observed false
+     * positive rate is the share of unknown emails the filter failed to rule out.
+     */
+    public static final class FilterMetrics {
+        private final long memoryBytes;
+        private final int capacity;
+        private final int entries;
+        private final double expectedFalsePositiveRate;
+        private final long lookups;
+        private final long filteredOut;
+        private final long falsePositives;
+        
+        private FilterMetrics(BloomFilter filter, long lookups, long filteredOut, long falsePositives) {
+            this.memoryBytes = filter != null ? filter.getMemoryBytes() : 0;
+            this.capacity = filter != null ? filter.getCapacity() : 0;
+            this.entries = filter != null ? filter.size() : 0;
+            this.expectedFalsePositiveRate = filter != null ? filter.getExpectedFalsePositiveRate() : 0;
+            this.lookups = lookups;
+            this.filteredOut = filteredOut;
+            this.falsePositives = falsePositives;
+        }
+        
+        public long getMemoryBytes() {
+            return memoryBytes;
+        }
+        
+        public int getCapacity() {
+            return capacity;
+        }
+        
+        public int getEntries() {
+            return entries;
+        }
+        
+        public double getExpectedFalsePositiveRate() {
+            return expectedFalsePositiveRate;
+        }
+        
+        public long getLookups() {
+            return lookups;
+        }
+        
+        /**
+         * @return lookups answered by the filter alone
+         */
+        public long getFilteredOut() {
+            return filteredOut;
+        }
+        
+        public long getFalsePositives() {
+            return falsePositives;
+        }
+        
+        public double getObservedFalsePositiveRate() {
+            long negatives = filteredOut + falsePositives;
+            return negatives > 0 ? (double) falsePositives / negatives : 0;
+        }
+    }
+    
+    private final EmailDatabaseJournal database;
+    private final Path filterPath;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Object lock = new Object();
+    
+    // Guarded by lock; fingerprints of records not yet in the journal, whose index covers the rest
+    private final LongHashSet pendingKeys = new LongHashSet();
+    
+    // The records saved before this run
+    private final EmailDatabasePages saved;
+    
+    // Guarded by lock; the records added in this run, slots below recordCount are never written again
+    private SelfieDetail[] records = new SelfieDetail[1024];
+    private int recordCount;
+    private List<SelfieDetail> pending = new ArrayList<>();
+    private volatile Snapshot current;
+    
+    // Written under lock; null if it could not be built, which sends every lookup to the database
+    private volatile BloomFilter filter;
+    private boolean filterChanged; // guarded by lock; since the filter was last stored
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder filteredOut = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    
+    public EmailRegistry() {
+        this(new EmailDatabaseJournal(Paths.get(EmailDatabaseJournal.DEFAULT_PATH)));
+    }
+    
+    public EmailRegistry(EmailDatabaseJournal database) {
+        this.database = database;
+        Path snapshotPath = database.getSnapshotPath();
+        this.filterPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".bloom");
+        int savedCount = 0;
+        try {
+            savedCount = database.size();
+            filter = loadFilter();
+        } catch (IOException e) {
+            System.err.println("Error loading database file: " + e.getMessage());
+        }
+        this.saved = new EmailDatabasePages(database, savedCount);
+        this.current = new Snapshot(saved, records, 0);
+    }
+    
+    public EmailDatabaseJournal getDatabase() {
+        return database;
+    }
+    
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Immutable view of the records present now, in the order they were added. Reading
+     * a record saved before this run may read the database, failing with an
+     * {@link UncheckedIOException}; the first such read waits for
+     * {@link #prepareSnapshot()}.
+     */
+    public List<SelfieDetail> snapshot() {
+        return current;
+    }
+    
+    /**
+     * Lists the records saved before this run, if not done yet, so that reading them
+     * from a snapshot costs at most a page read. Sorts the whole database index, so call
+     * it off the EDT.
+     */
+    public void prepareSnapshot() throws IOException {
+        saved.list();
+    }
+    
+    public boolean isSnapshotPrepared() {
+        return saved.isListed();
+    }
+    
+    public int size() {
+        return current.size();
+    }
+    
+    /**
+     * @return whether the email (compared case-insensitively) is saved or pending
+     */
+    public boolean contains(String email) {
+        long fingerprint = EmailKeys.fingerprint(email);
+        synchronized (lock) {
+            if (pendingKeys.contains(fingerprint)) {
+                return true;
+            }
+        }
+        return isSaved(fingerprint);
+    }
+    
+    private boolean isSaved(long fingerprint) {
+        BloomFilter filter = this.filter;
+        lookups.increment();
+        if (filter != null && !filter.mightContain(fingerprint)) {
+            filteredOut.increment();
+            return false;
+        }
+        try {
+            boolean found = database.containsFingerprint(fingerprint);
+            if (!found && filter != null) {
+                falsePositives.increment();
+            }
+            return found;
+        } catch (IOException e) {
+            // The journal's index drops a duplicate that slips through here
+            System.err.println("Error reading database index: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Adds every email of the dataset that the registry does not know yet, stamped with
+     * the current time, and notifies listeners. A {@code null} dataset notifies them of
+     * an empty merge.
+     */
+    public Delta merge(SelfieDataset data) {
+        return merge(data, 0);
+    }
+    
+    /**
+     * Like {@link #merge(SelfieDataset)} for the rows from {@code firstRow} on, such as
+     * rows appended to a dataset that was merged before.
+     */
+    public Delta merge(SelfieDataset data, int firstRow) {
+        Delta delta;
+        synchronized (lock) {
+            delta = mergeLocked(data, firstRow);
+        }
+        for (Listener listener : listeners) {
+            listener.registryChanged(delta);
+        }
+        return delta;
+    }
+    
+    private Delta mergeLocked(SelfieDataset data, int firstRow) {
+        if (data == null) {
+            return new Delta(null, 0, new int[0], Collections.emptyList());
+        }
+        
+        String currentDateTime = LocalDateTime.now().format(DATE_ADDED_FORMAT);
+        List<SelfieDetail> added = new ArrayList<>();
+        int[] sourceRows = new int[16];
+        
+        for (int row = firstRow, size = data.size(); row < size; row++) {
+            String email = data.getEmail(row);
+            if (EmailKeys.isBlank(email) || !email.contains("@")) {
+                continue;
+            }
+            long fingerprint = EmailKeys.fingerprint(email);
+            if (!pendingKeys.contains(fingerprint) && !isSaved(fingerprint)) {
+                pendingKeys.add(fingerprint);
+                addToFilter(fingerprint);
+                
+                // Create a copy with current timestamp
+                SelfieDetail dbRecord = new SelfieDetail();
+                dbRecord.setName(data.getName(row));
+                dbRecord.setEmail(email);
+                dbRecord.setContact(data.getContact(row));
+                dbRecord.setDate(currentDateTime);
+                
+                if (added.size() == sourceRows.length) {
+                    sourceRows = Arrays.copyOf(sourceRows, sourceRows.length * 2);
+                }
+                sourceRows[added.size()] = row;
+                added.add(dbRecord);
+            }
+        }
+        
+        pending.addAll(added);
+        publish(added);
+        return new Delta(data, firstRow, Arrays.copyOf(sourceRows, added.size()), Collections.unmodifiableList(added));
+    }
+    
+    private void publish(List<SelfieDetail> added) {
+        int newCount = recordCount + added.size();
+        if (newCount > records.length) {
+            records = Arrays.copyOf(records, Math.max(newCount, records.length * 2));
+        }
+        for (SelfieDetail record : added) {
+            records[recordCount++] = record;
+        }
+        current = new Snapshot(saved, records, recordCount);
+    }
+    
+    /**
+     * Appends the pending records to the database journal. Safe to call from any
+     * thread; on failure the records stay pending for the next save.
+     *
+     * @return the number of records written
+     */
+    public int save() throws IOException {
+        List<SelfieDetail> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        try {
+            database.append(batch);
+        } catch (IOException | RuntimeException e) {
+            synchronized (lock) {
+                batch.addAll(pending);
+                pending = batch;
+            }
+            throw e;
+        }
+        if (!batch.isEmpty()) {
+            synchronized (lock) {
+                // Saved emails are now answered by the database index
+                for (SelfieDetail record : batch) {
+                    pendingKeys.remove(EmailKeys.fingerprint(record.getEmail()));
+                }
+            }
+        }
+        return batch.size();
+    }
+    
+    /**
+     * Stores the Bloom filter if emails were added since it was last stored, so the next
+     * start can skip rebuilding it. Called when the application shuts down.
+     */
+    @PreDestroy
+    public void storeFilter() {
+        synchronized (lock) {
+            if (filterChanged) {
+                storeFilter(filter);
+            }
+        }
+    }
+    
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+    
+    public FilterMetrics getFilterMetrics() {
+        return new FilterMetrics(filter, lookups.sum(), filteredOut.sum(), falsePositives.sum());
+    }
+    
+    // Called under lock
+    private void addToFilter(long fingerprint) {
+        BloomFilter filter = this.filter;
+        if (filter == null) {
+            return;
+        }
+        filter.add(fingerprint);
+        filterChanged = true;
+        if (filter.isOverCapacity()) {
+            try {
+                this.filter = buildFilter(filter.size());
+            } catch (IOException e) {
+                // The full filter still has no false negatives, only more false positives
+                System.err.println("Error resizing email filter: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Reads the saved filter if it was saved against the database as it is now, and
+     * otherwise builds and saves a new one.
+     */
+    private BloomFilter loadFilter() throws IOException {
+        long stamp = database.getStateStamp();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(filterPath)))) {
+            if (in.readLong() == stamp) {
+                BloomFilter saved = BloomFilter.readFrom(in);
+                if (!saved.isOverCapacity()) {
+                    return saved;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // First run
+        } catch (IOException e) {
+            System.err.println("Rebuilding email filter: " + e.getMessage());
+        }
+        BloomFilter built = buildFilter(database.size());
+        storeFilter(built);
+        return built;
+    }
+    
+    private BloomFilter buildFilter(int entries) throws IOException {
+        BloomFilter built = BloomFilter.forCapacity(
+                (int) Math.min(Integer.MAX_VALUE / 2, Math.max(MIN_FILTER_CAPACITY, 2L * entries)),
+                FILTER_FALSE_POSITIVE_RATE);
+        // Pending keys first: a key saved in between is then already in the database
+        pendingKeys.forEach(built::add);
+        database.forEachFingerprint(built::add);
+        return built;
+    }
+    
+    // Called under lock once the filter is shared
+    private void storeFilter(BloomFilter filter) {
+        if (filter == null) {
+            return;
+        }
+        filterChanged = false;
+        Path temp = filterPath.resolveSibling(filterPath.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeLong(database.getStateStamp());
+                filter.writeTo(out);
+            }
+            Files.move(temp, filterPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // Only costs a rebuild on the next start
+            System.err.println("Error saving email filter: " + e.getMessage());
+        }
+    }
+    
+    private static final class Snapshot extends AbstractList<SelfieDetail> implements RandomAccess {
+        private final EmailDatabasePages saved;
+        private final SelfieDetail[] added;
+        private final int size;
+        
+        Snapshot(EmailDatabasePages saved, SelfieDetail[] added, int addedCount) {
+            this.saved = saved;
+            this.added = added;
+            this.size = saved.size() + addedCount;
+        }
+        
+        @Override
+        public SelfieDetail get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Record " + index + " of " + size);
+            }
+            if (index >= saved.size()) {
+                return added[index - saved.size()];
+            }
+            try {
+                return saved.get(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.devdam.memzo_extracter.service;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Parses a CSV file in parallel by memory-mapping it and splitting it into byte ranges
+ * that start on record boundaries.
+ *
+ * Finding a record boundary from an arbitrary offset needs the quoting state at that
+ * offset, which depends on everything before it. Each range is therefore scanned on a
+ * fork-join worker for every possible entry state of a small lexer automaton, giving a
+ * per-range state transition table. Composing the tables in order yields the exact entry
+ * state of each range, and from there its first newline outside quotes. The resulting
+ * chunks are parsed concurrently with the same CSV format as the sequential path, each
+ * into a container of its own, and handed over in file order as soon as they and every
+ * chunk before them are done. A short first chunk is cut and parsed before the rest of
+ * the file is scanned, so the start of a file is available long before its end.
+ *
+ * @param <T> a parsed row
+ * @param <A> what the rows of one chunk are collected in
+ */
+class ParallelCsvReader<T, A> {
+    
+    // Lexer states, mirroring how commons-csv treats the default format
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTED_QUOTE = 3; // a quote seen inside a quoted field
+    private static final int STATES = 4;
+    
+    private static final int NO_BOUNDARY = -1;
+    
+    // Parsed ahead of the rest; a few thousand rows, more than a screenful
+    private static final long FIRST_RANGE_SIZE = 256 * 1024;
+    
+    private final CSVFormat format;
+    private final Function<Map<String, Integer>, Function<CSVRecord, T>> rowMapperFactory;
+    private final Supplier<A> chunkFactory;
+    private final BiConsumer<A, T> accumulator;
+    private final long targetRangeSize;
+    
+    /**
+     * @param rowMapperFactory builds the row mapper for a file's header map; it is invoked
+     *                         once per file and the mapper is shared by all chunks
+     * @param chunkFactory     creates the container for the rows of one chunk
+     * @param accumulator      adds a row to its chunk's container
+     */
+    ParallelCsvReader(CSVFormat format, Function<Map<String, Integer>, Function<CSVRecord, T>> rowMapperFactory,
+                      Supplier<A> chunkFactory, BiConsumer<A, T> accumulator, long targetRangeSize) {
+        this.format = format;
+        this.rowMapperFactory = rowMapperFactory;
+        this.chunkFactory = chunkFactory;
+        this.accumulator = accumulator;
+        this.targetRangeSize = targetRangeSize;
+    }
+    
+    /**
+     * @param chunks    given the rows of each chunk in file order, from whichever thread
+     *                  finished the chunk that completed the sequence; calls are never
+     *                  concurrent, and may throw to stop the read
+     * @param bytesRead told the bytes up to the end of each chunk, header included, right
+     *                  after the chunk is handed over, under the same rules
+     * @return {@code false} if the file has no record boundary after its header and should
+     *         be parsed sequentially instead; nothing is handed over then
+     */
+    boolean read(File file, Consumer<? super A> chunks, LongConsumer bytesRead) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            
+            long headerEnd = findHeaderEnd(channel, size);
+            if (headerEnd == NO_BOUNDARY || headerEnd >= size) {
+                return false;
+            }
+            
+            CSVParser headerParser = readHeader(channel, headerEnd);
+            String[] header = headerParser.getHeaderNames().toArray(new String[0]);
+            Function<CSVRecord, T> rowMapper = rowMapperFactory.apply(headerParser.getHeaderMap());
+            CSVFormat chunkFormat = format.withHeader(header);
+            
+            // The first range starts in a known state, so it is cut and parsed right away and
+            // its rows are handed over before the rest of the file has been scanned
+            long firstRangeEnd = headerEnd + Math.min(targetRangeSize, FIRST_RANGE_SIZE);
+            long bodyStart = lastRecordEnd(channel, headerEnd, Math.min(size, firstRangeEnd));
+            if (bodyStart > headerEnd) {
+                try {
+                    chunks.accept(parseChunk(channel, chunkFormat, rowMapper, headerEnd, bodyStart));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                bytesRead.accept(bodyStart);
+            }
+            if (bodyStart == size) {
+                return true;
+            }
+            
+            long[] chunkStarts = findChunkStarts(channel, bodyStart, size);
+            ChunkSequence sequence = new ChunkSequence(chunkStarts, chunks, bytesRead);
+            // Chunks are claimed in file order, so the earliest ones finish first
+            AtomicInteger nextChunk = new AtomicInteger();
+            int workers = Math.min(chunkStarts.length - 1, ForkJoinPool.getCommonPoolParallelism() + 1);
+            try {
+                IntStream.range(0, workers)
+                        .parallel()
+                        .forEach(worker -> {
+                            for (int i; (i = nextChunk.getAndIncrement()) < chunkStarts.length - 1; ) {
+                                sequence.done(i, parseChunk(channel, chunkFormat, rowMapper, chunkStarts[i], chunkStarts[i + 1]));
+                            }
+                        });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Holds chunks that finish ahead of an earlier one and hands chunks over in order.
+     */
+    private final class ChunkSequence {
+        private final long[] chunkStarts;
+        private final Consumer<? super A> chunks;
+        private final LongConsumer bytesRead;
+        private final List<A> waiting; // guarded by this, indexed by chunk
+        private int next; // guarded by this
+        private boolean failed; // guarded by this; nothing more is handed over once set
+        
+        ChunkSequence(long[] chunkStarts, Consumer<? super A> chunks, LongConsumer bytesRead) {
+            this.chunkStarts = chunkStarts;
+            this.chunks = chunks;
+            this.bytesRead = bytesRead;
+            this.waiting = new ArrayList<>(Collections.nCopies(chunkStarts.length - 1, null));
+        }
+        
+        synchronized void done(int index, A chunk) {
+            if (failed) {
+                return;
+            }
+            waiting.set(index, chunk);
+            try {
+                while (next < waiting.size() && waiting.get(next) != null) {
+                    A ready = waiting.set(next, null);
+                    next++;
+                    chunks.accept(ready);
+                    bytesRead.accept(chunkStarts[next]);
+                }
+            } catch (RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+        }
+    }
+    
+    private long findHeaderEnd(FileChannel channel, long size) throws IOException {
+        // The header record is small; scan forward in modest windows until it ends
+        long window = Math.min(size, 1 << 16);
+        int state = FIELD_START;
+        long position = 0;
+        while (position < size) {
+            long length = Math.min(window, size - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (int i = 0; i < length; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' && state != QUOTED) {
+                    return position + i + 1;
+                }
+                state = next(state, b);
+            }
+            position += length;
+        }
+        return NO_BOUNDARY;
+    }
+    
+    private CSVParser readHeader(FileChannel channel, long headerEnd) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerEnd);
+        // Only the header map is needed; the parser reads the header eagerly and holds no file handle
+        return format.withFirstRecordAsHeader().parse(newReader(buffer));
+    }
+    
+    private long[] findChunkStarts(FileChannel channel, long bodyStart, long size) throws IOException {
+        long bodySize = size - bodyStart;
+        int rangeCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 1L,
+                (bodySize + targetRangeSize - 1) / targetRangeSize));
+        long[] rangeStarts = new long[rangeCount + 1];
+        for (int i = 0; i < rangeCount; i++) {
+            rangeStarts[i] = bodyStart + bodySize * i / rangeCount;
+        }
+        rangeStarts[rangeCount] = size;
+        
+        // Pass 1: per-range transition tables for every possible entry state
+        int[][] transitions = mapRanges(rangeCount, i ->
+                transitionTable(channel, rangeStarts[i], rangeStarts[i + 1]));
+        
+        // Sequential composition gives the true entry state of each range
+        int[] entryStates = new int[rangeCount];
+        entryStates[0] = FIELD_START;
+        for (int i = 1; i < rangeCount; i++) {
+            entryStates[i] = transitions[i - 1][entryStates[i - 1]];
+        }
+        
+        // Pass 2: the first record boundary inside each range
+        long[] boundaries = IntStream.range(0, rangeCount)
+                .parallel()
+                .mapToLong(i -> i == 0 ? bodyStart
+                        : firstBoundary(channel, rangeStarts[i], rangeStarts[i + 1], entryStates[i]))
+                .toArray();
+        
+        List<Long> starts = new ArrayList<>();
+        for (long boundary : boundaries) {
+            if (boundary != NO_BOUNDARY && boundary < size) {
+                starts.add(boundary);
+            }
+        }
+        starts.add(size);
+        return starts.stream().mapToLong(Long::longValue).toArray();
+    }
+    
+    private int[][] mapRanges(int rangeCount, RangeScan scan) throws IOException {
+        try {
+            return IntStream.range(0, rangeCount)
+                    .parallel()
+                    .mapToObj(i -> {
+                        try {
+                            return scan.apply(i);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .toArray(int[][]::new);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /**
+     * Runs the lexer over a range from all entry states in lock-step. The runs usually
+     * converge within the first record, after which a single run finishes the range.
+     */
+    private int[] transitionTable(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = map(channel, start, end);
+        int length = buffer.limit();
+        int[] states = {FIELD_START, UNQUOTED, QUOTED, QUOTED_QUOTE};
+        int i = 0;
+        
+        while (i < length && !converged(states)) {
+            byte b = buffer.get(i++);
+            for (int s = 0; s < STATES; s++) {
+                states[s] = next(states[s], b);
+            }
+        }
+        
+        int state = states[0];
+        while (i < length) {
+            state = next(state, buffer.get(i++));
+        }
+        
+        if (converged(states)) {
+            return new int[]{state, state, state, state};
+        }
+        return states;
+    }
+    
+    private long firstBoundary(FileChannel channel, long start, long end, int entryState) {
+        try {
+            ByteBuffer buffer = map(channel, start, end);
+            int length = buffer.limit();
+            int state = entryState;
+            for (int i = 0; i < length; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' && state != QUOTED) {
+                    return start + i + 1;
+                }
+                state = next(state, b);
+            }
+            return NO_BOUNDARY;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Finds where the last complete record in {@code [start, end)} ends, for a range that
+     * starts on a record boundary, such as a file that is still being written.
+     *
+     * @return the offset just past the last line break outside quotes, or {@code start}
+     *         if there is none
+     */
+    static long lastRecordEnd(FileChannel channel, long start, long end) throws IOException {
+        long window = 1 << 26;
+        int state = FIELD_START;
+        long last = start;
+        for (long position = start; position < end; position += window) {
+            ByteBuffer buffer = map(channel, position, Math.min(end, position + window));
+            int length = buffer.limit();
+            for (int i = 0; i < length; i++) {
+                byte b = buffer.get(i);
+                if ((b == '\n' || b == '\r') && state != QUOTED) {
+                    last = position + i + 1;
+                }
+                state = next(state, b);
+            }
+        }
+        return last;
+    }
+    
+    private A parseChunk(FileChannel channel, CSVFormat chunkFormat, Function<CSVRecord, T> rowMapper,
+                         long start, long end) {
+        A rows = chunkFactory.get();
+        try (CSVParser parser = chunkFormat.parse(newReader(map(channel, start, end)))) {
+            for (CSVRecord record : parser) {
+                accumulator.accept(rows, rowMapper.apply(record));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return rows;
+    }
+    
+    private static ByteBuffer map(FileChannel channel, long start, long end) throws IOException {
+        long length = end - start;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("CSV chunk too large to map: " + length + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+    }
+    
+    private static Reader newReader(ByteBuffer buffer) {
+        // Chunks start and end on newlines, so they never split a UTF-8 sequence
+        return new BufferedReader(new InputStreamReader(new ByteBufferInputStream(buffer), StandardCharsets.UTF_8), 1 << 16);
+    }
+    
+    private static boolean converged(int[] states) {
+        return states[0] == states[1] && states[1] == states[2] && states[2] == states[3];
+    }
+    
+    private static int next(int state, byte b) {
+        switch (state) {
+            case FIELD_START:
+                if (b == '"') return QUOTED;
+                return (b == ',' || b == '\n' || b == '\r') ? FIELD_START : UNQUOTED;
+            case UNQUOTED:
+                return (b == ',' || b == '\n' || b == '\r') ? FIELD_START : UNQUOTED;
+            case QUOTED:
+                return b == '"' ? QUOTED_QUOTE : QUOTED;
+            default: // QUOTED_QUOTE
+                if (b == '"') return QUOTED; // escaped quote
+                return (b == ',' || b == '\n' || b == '\r') ? FIELD_START : UNQUOTED;
+        }
+    }
+    
+    @FunctionalInterface
+    private interface RangeScan {
+        int[] apply(int range) throws IOException;
+    }
+    
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+        
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.devdam.memzo_extracter.ui;
 
 import com.devdam.memzo_extracter.service.CsvService;
+import com.devdam.memzo_extracter.service.EmailRegistry;
 import com.formdev.flatlaf.FlatLightLaf;
 
 import javax.swing.*;
@@ -20,7 +21,8 @@ public class ApplicationLauncher {
                 
                 // Create and show the application
                 CsvService csvService = new CsvService();
-                MainWindow mainWindow = new MainWindow(csvService);
+                EmailRegistry emailRegistry = new EmailRegistry();
+                MainWindow mainWindow = new MainWindow(csvService, emailRegistry);
                 mainWindow.showWindow();
                 
             } catch (Exception e) {
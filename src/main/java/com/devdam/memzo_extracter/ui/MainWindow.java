@@ -1,12 +1,14 @@
 package com.devdam.memzo_extracter.ui;
 
-import com.devdam.memzo_extracter.model.SelfieDetail;
+import com.devdam.memzo_extracter.model.SelfieDataset;
 import com.devdam.memzo_extracter.service.CsvService;
+import com.devdam.memzo_extracter.service.EmailRegistry;
 import com.devdam.memzo_extracter.ui.panel.DataPanel;
 import com.devdam.memzo_extracter.ui.panel.EmailRecordsPanel;
 import com.devdam.memzo_extracter.ui.panel.NewEmailsPanel;
 import com.devdam.memzo_extracter.ui.panel.StatsPanel;
 import com.devdam.memzo_extracter.ui.panel.UniqueEmailsPanel;
+import com.devdam.memzo_extracter.ui.util.DatasetChangeBus;
 import com.formdev.flatlaf.FlatDarkLaf;
 import com.formdev.flatlaf.FlatLightLaf;
 
@@ -14,7 +16,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class MainWindow extends JFrame {
     
@@ -23,19 +25,27 @@ public class MainWindow extends JFrame {
     private final EmailRecordsPanel emailRecordsPanel;
     private final UniqueEmailsPanel uniqueEmailsPanel;
     private final NewEmailsPanel newEmailsPanel;
+    private final EmailRegistry emailRegistry;
+    private final DatasetChangeBus datasetBus = new DatasetChangeBus();
+    private CompletableFuture<Void> registryMerges = CompletableFuture.completedFuture(null);
     private JTabbedPane tabbedPane;
     private boolean isDarkTheme = false;
     
-    public MainWindow(CsvService csvService) {
+    public MainWindow(CsvService csvService, EmailRegistry emailRegistry) {
+        this.emailRegistry = emailRegistry;
+        
         // Initialize panels
-        dataPanel = new DataPanel(csvService, this::updateAllPanels);
+        dataPanel = new DataPanel(csvService, this::updateAllPanels, this::appendToAllPanels);
         statsPanel = new StatsPanel(csvService);
         emailRecordsPanel = new EmailRecordsPanel(csvService);
-        uniqueEmailsPanel = new UniqueEmailsPanel(csvService);
-        newEmailsPanel = new NewEmailsPanel();
+        uniqueEmailsPanel = new UniqueEmailsPanel(csvService, emailRegistry);
+        newEmailsPanel = new NewEmailsPanel(emailRegistry, datasetBus.getExecutor());
+        
+        // Panels derive their views from each loaded dataset off the EDT, once shown
+        statsPanel.subscribe(datasetBus);
+        emailRecordsPanel.subscribe(datasetBus);
         
         initializeUI();
-        setupEventListeners();
     }
     
     private void initializeUI() {
@@ -154,15 +164,6 @@ public class MainWindow extends JFrame {
         return statusBar;
     }
     
-    private void setupEventListeners() {
-        // Listen for tab changes to refresh statistics
-        tabbedPane.addChangeListener(e -> {
-            if (tabbedPane.getSelectedIndex() == 1) { // Statistics tab
-                refreshStatistics();
-            }
-        });
-    }
-    
     private void toggleTheme(ActionEvent e) {
         try {
             if (isDarkTheme) {
@@ -235,11 +236,31 @@ public class MainWindow extends JFrame {
         return image;
     }
     
-    public void updateAllPanels(List<SelfieDetail> data) {
-        statsPanel.updateStats(data);
-        emailRecordsPanel.updateData(data);
-        uniqueEmailsPanel.updateFromMainData(data);
-        newEmailsPanel.updateNewEmails(data);
+    public void updateAllPanels(SelfieDataset data) {
+        datasetBus.publish(data);
+        mergeIntoRegistry(data, 0);
+    }
+    
+    /**
+     * Passes on rows appended to the current dataset from {@code firstRow} on, as records
+     * arrive in a followed file. The statistics count just the new rows, and only those
+     * are merged into the unique database and checked for new emails.
+     */
+    public void appendToAllPanels(SelfieDataset data, int firstRow) {
+        datasetBus.publish(data);
+        mergeIntoRegistry(data, firstRow);
+    }
+    
+    private void mergeIntoRegistry(SelfieDataset data, int firstRow) {
+        // The unique-email panels follow the registry's delta for this dataset. Merging
+        // looks emails up in the database, so it runs in the background, one upload at a
+        // time and whether or not those panels are showing
+        registryMerges = registryMerges
+                .thenRunAsync(() -> emailRegistry.merge(data, firstRow), datasetBus.getExecutor())
+                .exceptionally(ex -> {
+                    System.err.println("Error merging emails: " + ex.getMessage());
+                    return null;
+                });
     }
     
     public void showWindow() {
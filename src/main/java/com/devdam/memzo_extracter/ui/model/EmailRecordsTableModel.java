@@ -1,11 +1,11 @@
 package com.devdam.memzo_extracter.ui.model;
 
+import com.devdam.memzo_extracter.model.MemzoDates;
+import com.devdam.memzo_extracter.model.SelfieDataset;
 import com.devdam.memzo_extracter.model.SelfieDetail;
 
 import javax.swing.table.AbstractTableModel;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 public class EmailRecordsTableModel extends AbstractTableModel {
     
@@ -13,11 +13,21 @@ public class EmailRecordsTableModel extends AbstractTableModel {
         "ID", "Email", "Phone", "Date", "Name", "Photos"
     };
     
-    private List<SelfieDetail> data = new ArrayList<>();
+    private static final int[] NO_ROWS = new int[0];
+    
+    // Rows whose formatted cells are kept; several screens' worth
+    private static final int CACHED_ROWS = 4096;
+    
+    // The table shows a subset of the dataset's rows, identified by row id; only the
+    // first rowCount slots are used so batches can be appended without copying every time
+    private SelfieDataset dataset = new SelfieDataset(1);
+    private int[] rows = NO_ROWS;
+    private int rowCount;
+    private final RowDisplayCache displayCache = new RowDisplayCache(COLUMN_NAMES.length, CACHED_ROWS, this::computeValue);
     
     @Override
     public int getRowCount() {
-        return data.size();
+        return rowCount;
     }
     
     @Override
@@ -44,46 +54,77 @@ public class EmailRecordsTableModel extends AbstractTableModel {
     
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        if (rowIndex < 0 || rowIndex >= data.size()) {
+        if (rowIndex < 0 || rowIndex >= rowCount) {
             return null;
         }
-        
-        SelfieDetail record = data.get(rowIndex);
+        return displayCache.get(rowIndex, columnIndex);
+    }
+    
+    private Object computeValue(int rowIndex, int columnIndex) {
+        int row = rows[rowIndex];
         
         switch (columnIndex) {
             case 0: // ID (using row index + 1 as ID)
                 return rowIndex + 1;
             case 1: // Email
-                return record.getEmail();
+                return dataset.getEmail(row);
             case 2: // Phone/Contact
-                return record.getContact();
+                return dataset.getContact(row);
             case 3: // Date
-                if (record.getParsedDate() != null) {
-                    return record.getParsedDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+                long minutes = dataset.getDateMinutes(row);
+                if (minutes != SelfieDataset.NO_DATE) {
+                    return MemzoDates.formatIso(minutes);
                 }
-                return record.getDate();
+                return dataset.getDate(row);
             case 4: // Name
-                return record.getName();
+                return dataset.getName(row);
             case 5: // Photos
-                return record.getPhotos();
+                return dataset.getPhotos(row);
             default:
                 return null;
         }
     }
     
-    public void updateData(List<SelfieDetail> newData) {
-        this.data = newData != null ? new ArrayList<>(newData) : new ArrayList<>();
+    /**
+     * Shows the given dataset rows, in order. The array is owned by the model afterwards.
+     */
+    public void updateData(SelfieDataset newDataset, int[] newRows) {
+        if (newDataset == null || newRows == null) {
+            this.dataset = new SelfieDataset(1);
+            this.rows = NO_ROWS;
+        } else {
+            this.dataset = newDataset;
+            this.rows = newRows;
+        }
+        this.rowCount = rows.length;
+        displayCache.clear();
         fireTableDataChanged();
     }
     
-    public List<SelfieDetail> getData() {
-        return new ArrayList<>(data);
+    /**
+     * Shows more rows of the current dataset after the ones already shown.
+     */
+    public void appendRows(int[] newRows, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (rowCount + count > rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(rowCount + count, rows.length * 2));
+        }
+        System.arraycopy(newRows, 0, rows, rowCount, count);
+        int first = rowCount;
+        rowCount += count;
+        fireTableRowsInserted(first, rowCount - 1);
+    }
+    
+    public int[] getRows() {
+        return Arrays.copyOf(rows, rowCount);
     }
     
     public SelfieDetail getRecordAt(int rowIndex) {
-        if (rowIndex < 0 || rowIndex >= data.size()) {
+        if (rowIndex < 0 || rowIndex >= rowCount) {
             return null;
         }
-        return data.get(rowIndex);
+        return dataset.getRow(rows[rowIndex]);
     }
 }
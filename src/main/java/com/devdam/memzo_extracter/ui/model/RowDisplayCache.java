@@ -0,0 +1,72 @@
+package com.devdam.memzo_extracter.ui.model;
+
+import java.util.Arrays;
+
+/**
+ * Display values of recently painted table rows, so repainting a row does not decode,
+ * format or box its cells again.
+ *
+ * Direct-mapped: row {@code r} can only live in slot {@code r % capacity}, which makes
+ * a lookup one comparison and keeps the cache bounded without any bookkeeping. A
+ * viewport of consecutive rows never evicts itself. Cells are computed on first use,
+ * so a sorter reading one column does not pay for the others, and an evicted slot's
+ * array is reused by the row that replaces it. The values must be immutable.
+ *
+ * Not thread-safe; table models use it on the EDT only.
+ */
+public final class RowDisplayCache {
+    
+    /**
+     * Computes the display value of one cell.
+     */
+    @FunctionalInterface
+    public interface CellSource {
+        Object compute(int rowIndex, int column);
+    }
+    
+    private static final Object UNSET = new Object();
+    
+    private final int columnCount;
+    private final CellSource source;
+    private final int mask;
+    private final int[] keys; // row index + 1 held by each slot; 0 when empty
+    private final Object[][] values;
+    
+    /**
+     * @param capacity rows kept at once, rounded up to a power of two
+     */
+    public RowDisplayCache(int columnCount, int capacity, CellSource source) {
+        int slots = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.columnCount = columnCount;
+        this.source = source;
+        this.mask = slots - 1;
+        this.keys = new int[slots];
+        this.values = new Object[slots][];
+    }
+    
+    public Object get(int rowIndex, int column) {
+        int slot = rowIndex & mask;
+        Object[] row = values[slot];
+        if (keys[slot] != rowIndex + 1) {
+            if (row == null) {
+                row = new Object[columnCount];
+                values[slot] = row;
+            }
+            Arrays.fill(row, UNSET);
+            keys[slot] = rowIndex + 1;
+        }
+        Object value = row[column];
+        if (value == UNSET) {
+            value = source.compute(rowIndex, column);
+            row[column] = value;
+        }
+        return value;
+    }
+    
+    /**
+     * Forgets every row, for when row indexes start to mean different records.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+    }
+}
@@ -1,49 +1,70 @@
 package com.devdam.memzo_extracter.ui.model;
 
+import com.devdam.memzo_extracter.model.SelfieDataset;
 import com.devdam.memzo_extracter.model.SelfieDetail;
 
 import javax.swing.table.AbstractTableModel;
-import java.util.ArrayList;
-import java.util.List;
 
 public class SelfieDetailsTableModel extends AbstractTableModel {
     
     private final String[] columnNames = {
         "Image URL", "Name", "Email", "Contact", "Download Requests", 
-        "Photos", "Photos Shared", "Photos Download", "Date"
+        "Photos", "Photos Shared", "Photos Download", "Date", "Source File"
     };
     
-    private List<SelfieDetail> data = new ArrayList<>();
+    // Rows whose cells are kept decoded; several screens' worth
+    private static final int CACHED_ROWS = 4096;
     
-    public void setData(List<SelfieDetail> data) {
-        this.data = data != null ? data : new ArrayList<>();
+    private SelfieDataset data = new SelfieDataset();
+    private int rowCount; // rows shown; trails data.size() while a load is still appending
+    private final RowDisplayCache displayCache = new RowDisplayCache(columnNames.length, CACHED_ROWS, this::computeValue);
+    
+    public void setData(SelfieDataset data) {
+        this.data = data != null ? data : new SelfieDataset();
+        this.rowCount = this.data.size();
+        displayCache.clear();
         fireTableDataChanged();
     }
     
+    /**
+     * Shows rows appended to the current dataset since it was set, for a dataset that
+     * another thread is still loading. Rows past {@code rowCount} stay hidden until a
+     * later call.
+     */
+    public void showAppendedRows(int rowCount) {
+        if (rowCount > this.rowCount) {
+            int firstRow = this.rowCount;
+            this.rowCount = rowCount;
+            fireTableRowsInserted(firstRow, rowCount - 1);
+        }
+    }
+    
     public void addData(SelfieDetail detail) {
         this.data.add(detail);
-        fireTableRowsInserted(data.size() - 1, data.size() - 1);
+        showAppendedRows(data.size());
     }
     
     public void clearData() {
-        this.data.clear();
+        this.data = new SelfieDataset();
+        this.rowCount = 0;
+        displayCache.clear();
         fireTableDataChanged();
     }
     
-    public List<SelfieDetail> getData() {
-        return new ArrayList<>(data);
+    public SelfieDataset getData() {
+        return data;
     }
     
     public SelfieDetail getRowData(int row) {
-        if (row >= 0 && row < data.size()) {
-            return data.get(row);
+        if (row >= 0 && row < rowCount) {
+            return data.getRow(row);
         }
         return null;
     }
     
     @Override
     public int getRowCount() {
-        return data.size();
+        return rowCount;
     }
     
     @Override
@@ -58,22 +79,24 @@ public class SelfieDetailsTableModel extends AbstractTableModel {
     
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        if (rowIndex >= data.size()) {
+        if (rowIndex >= rowCount) {
             return null;
         }
-        
-        SelfieDetail detail = data.get(rowIndex);
-        
+        return displayCache.get(rowIndex, columnIndex);
+    }
+    
+    private Object computeValue(int rowIndex, int columnIndex) {
         return switch (columnIndex) {
-            case 0 -> detail.getImage();
-            case 1 -> detail.getName();
-            case 2 -> detail.getEmail();
-            case 3 -> detail.getContact();
-            case 4 -> detail.getDownloadRequests();
-            case 5 -> detail.getPhotos();
-            case 6 -> detail.getPhotosShared();
-            case 7 -> detail.getPhotosDownload();
-            case 8 -> detail.getDate();
+            case 0 -> data.getImage(rowIndex);
+            case 1 -> data.getName(rowIndex);
+            case 2 -> data.getEmail(rowIndex);
+            case 3 -> data.getContact(rowIndex);
+            case 4 -> data.getDownloadRequests(rowIndex);
+            case 5 -> data.getPhotos(rowIndex);
+            case 6 -> data.getPhotosShared(rowIndex);
+            case 7 -> data.getPhotosDownload(rowIndex);
+            case 8 -> data.getDate(rowIndex);
+            case 9 -> data.getSourceFile(rowIndex);
             default -> null;
         };
     }
@@ -0,0 +1,141 @@
+package com.devdam.memzo_extracter.ui.model;
+
+import com.devdam.memzo_extracter.model.MemzoDates;
+import com.devdam.memzo_extracter.model.SelfieDetail;
+
+import javax.swing.table.AbstractTableModel;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shows a snapshot of the unique email registry. Cells are formatted from the records
+ * as they are painted, so a table over millions of saved emails holds only the rows in
+ * view; the snapshot reads saved records from the database a page at a time.
+ */
+public class UniqueEmailsTableModel extends AbstractTableModel {
+    
+    private static final String[] COLUMN_NAMES = {
+        "Name", "Email", "Contact", "Date Added", "Source"
+    };
+    
+    private static final DateTimeFormatter DATE_ADDED_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    
+    // Rows whose formatted cells are kept; several screens' worth
+    private static final int CACHED_ROWS = 4096;
+    
+    // Replaced on the EDT; volatile for the background readers of getRecords()
+    private volatile List<SelfieDetail> records = Collections.emptyList();
+    private final RowDisplayCache displayCache = new RowDisplayCache(COLUMN_NAMES.length, CACHED_ROWS, this::computeValue);
+    
+    @Override
+    public int getRowCount() {
+        return records.size();
+    }
+    
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+    
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+    
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        if (rowIndex < 0 || rowIndex >= records.size()) {
+            return null;
+        }
+        return displayCache.get(rowIndex, columnIndex);
+    }
+    
+    private Object computeValue(int rowIndex, int columnIndex) {
+        try {
+            return valueOf(records.get(rowIndex), columnIndex);
+        } catch (UncheckedIOException e) {
+            System.err.println("Error reading database record " + rowIndex + ": " + e.getCause().getMessage());
+            return "";
+        }
+    }
+    
+    /**
+     * The display value of one cell of a record, for readers that cannot go through the
+     * model, such as a search index built in the background.
+     */
+    public static String valueOf(SelfieDetail record, int column) {
+        switch (column) {
+            case 0: // Name
+                return toTitleCase(record.getName());
+            case 1: // Email
+                return record.getEmail().toLowerCase();
+            case 2: // Contact
+                return record.getContact() != null ? record.getContact() : "";
+            case 3: // Date Added
+                return record.getDate() != null ? record.getDate()
+                        : LocalDateTime.now().format(DATE_ADDED_FORMAT);
+            case 4: // Source
+                return "Database";
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * The Date Added of a record as epoch minutes, for sorting by the date shown.
+     */
+    public static long dateAddedMinutes(SelfieDetail record) {
+        return record.getDate() != null ? MemzoDates.parseIsoEpochMinutes(record.getDate())
+                : MemzoDates.toEpochMinutes(LocalDateTime.now());
+    }
+    
+    public static String toTitleCase(String input) {
+        if (input == null || input.trim().isEmpty()) {
+            return input;
+        }
+        
+        String[] words = input.trim().toLowerCase().split("\\s+");
+        StringBuilder titleCase = new StringBuilder();
+        
+        for (int i = 0; i < words.length; i++) {
+            if (i > 0) {
+                titleCase.append(" ");
+            }
+            if (words[i].length() > 0) {
+                titleCase.append(Character.toUpperCase(words[i].charAt(0)));
+                if (words[i].length() > 1) {
+                    titleCase.append(words[i].substring(1));
+                }
+            }
+        }
+        
+        return titleCase.toString();
+    }
+    
+    /**
+     * Shows a new snapshot in place of the current one.
+     */
+    public void setRecords(List<SelfieDetail> snapshot) {
+        records = snapshot;
+        displayCache.clear();
+        fireTableDataChanged();
+    }
+    
+    /**
+     * Shows a later snapshot of the same registry, whose first rows are the ones shown.
+     */
+    public void appendRecords(List<SelfieDetail> snapshot) {
+        int first = records.size();
+        records = snapshot;
+        if (snapshot.size() > first) {
+            fireTableRowsInserted(first, snapshot.size() - 1);
+        }
+    }
+    
+    public List<SelfieDetail> getRecords() {
+        return records;
+    }
+}
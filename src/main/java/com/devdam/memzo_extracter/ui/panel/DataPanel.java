@@ -1,28 +1,43 @@
 package com.devdam.memzo_extracter.ui.panel;
 
+import com.devdam.memzo_extracter.model.SelfieDataset;
 import com.devdam.memzo_extracter.model.SelfieDetail;
+import com.devdam.memzo_extracter.search.SearchResultCache;
+import com.devdam.memzo_extracter.search.TrigramIndex;
+import com.devdam.memzo_extracter.service.CsvBatchImporter;
+import com.devdam.memzo_extracter.service.CsvFileFollower;
 import com.devdam.memzo_extracter.service.CsvService;
+import com.devdam.memzo_extracter.service.CsvSnapshotCache;
+import com.devdam.memzo_extracter.service.CsvTail;
 import com.devdam.memzo_extracter.ui.model.SelfieDetailsTableModel;
 import com.devdam.memzo_extracter.ui.util.BlurredModalOverlay;
+import com.devdam.memzo_extracter.ui.util.PermutationRowSorter;
+import com.devdam.memzo_extracter.util.EmailKeys;
+import com.devdam.memzo_extracter.util.LongHashSet;
+import com.devdam.memzo_extracter.util.SortPermutations;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.text.Collator;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 // import java.util.*;
 import java.util.List;
-import java.util.Set;
-import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CancellationException;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
 
 // iText imports for PDF generation
 import com.itextpdf.text.Document;
@@ -38,22 +53,47 @@ import com.itextpdf.text.pdf.PdfWriter;
 
 public class DataPanel extends JPanel {
     
+    // Parsed rows handed to the table at a time while a file loads
+    private static final int LOAD_CHUNK_ROWS = 4096;
+    private static final int PROGRESS_STEPS = 1000;
+    
     private final CsvService csvService;
     private final SelfieDetailsTableModel tableModel;
     private final JTable table;
     private JLabel statusLabel;
+    private JButton uploadButton;
+    private JCheckBox followCheckBox;
+    private JProgressBar loadProgressBar;
+    private JPanel loadPanel;
     private JTextField searchField;
-    private TableRowSorter<SelfieDetailsTableModel> sorter;
-    private Consumer<List<SelfieDetail>> dataUpdateCallback;
+    private PermutationRowSorter<SelfieDetailsTableModel> sorter;
+    private Consumer<SelfieDataset> dataUpdateCallback;
+    private ObjIntConsumer<SelfieDataset> rowsAppendedCallback;
+    private SearchResultCache searchResults; // over name, email and contact of the loaded rows
+    private SelfieDataset loadedData; // last file loaded completely; the table runs ahead of it while loading
+    private SwingWorker<?, ?> loadWorker; // a LoadWorker or BatchLoadWorker
+    private CsvFileFollower follower; // created when a file is first followed
+    private File followedFile;
     
     public DataPanel(CsvService csvService) {
         this(csvService, null);
     }
     
-    public DataPanel(CsvService csvService, Consumer<List<SelfieDetail>> dataUpdateCallback) {
+    public DataPanel(CsvService csvService, Consumer<SelfieDataset> dataUpdateCallback) {
+        this(csvService, dataUpdateCallback, null);
+    }
+    
+    /**
+     * @param rowsAppendedCallback told about records appended to a followed file once
+     *                             they are in the loaded dataset, with the first new row
+     */
+    public DataPanel(CsvService csvService, Consumer<SelfieDataset> dataUpdateCallback,
+                     ObjIntConsumer<SelfieDataset> rowsAppendedCallback) {
         this.csvService = csvService;
         this.tableModel = new SelfieDetailsTableModel();
+        this.loadedData = tableModel.getData();
         this.dataUpdateCallback = dataUpdateCallback;
+        this.rowsAppendedCallback = rowsAppendedCallback;
         
         setLayout(new BorderLayout(10, 10));
         setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
@@ -72,8 +112,13 @@ public class DataPanel extends JPanel {
         JPanel bottomPanel = createBottomPanel();
         add(bottomPanel, BorderLayout.SOUTH);
         
-        // Initialize sorter for search functionality
-        sorter = new TableRowSorter<>(tableModel);
+        // Initialize sorter for search functionality; column orders are computed off the EDT
+        Collator collator = Collator.getInstance();
+        sorter = new PermutationRowSorter<>(tableModel, column -> {
+            SelfieDataset data = tableModel.getData();
+            int rows = tableModel.getRowCount(); // a loading dataset may hold more
+            return () -> ascendingOrder(data, rows, column, collator);
+        });
         table.setRowSorter(sorter);
     }
     
@@ -81,11 +126,23 @@ public class DataPanel extends JPanel {
         JPanel panel = new JPanel(new BorderLayout(10, 10));
         
         // Left side - Upload button
-        JButton uploadButton = new JButton("📁 Upload CSV File");
+        uploadButton = new JButton("📁 Upload CSV File");
         uploadButton.setFont(new java.awt.Font(java.awt.Font.SANS_SERIF, java.awt.Font.BOLD, 14));
         uploadButton.setPreferredSize(new Dimension(160, 40));
         uploadButton.addActionListener(this::uploadCsvFile);
         
+        followCheckBox = new JCheckBox("Follow file");
+        followCheckBox.setToolTipText("Keep adding records appended to the file after it is loaded; applies from the next upload");
+        followCheckBox.addActionListener(e -> {
+            if (!followCheckBox.isSelected()) {
+                stopFollowing();
+            }
+        });
+        
+        JPanel uploadPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        uploadPanel.add(uploadButton);
+        uploadPanel.add(followCheckBox);
+        
         // Center - Export buttons
         JPanel exportPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         
@@ -117,7 +174,7 @@ public class DataPanel extends JPanel {
         JButton clearButton = new JButton("Clear");
         clearButton.addActionListener(e -> {
             searchField.setText("");
-            sorter.setRowFilter(null);
+            sorter.setMatchingRows(null);
         });
         
         searchPanel.add(searchLabel);
@@ -125,7 +182,7 @@ public class DataPanel extends JPanel {
         searchPanel.add(searchButton);
         searchPanel.add(clearButton);
         
-        panel.add(uploadButton, BorderLayout.WEST);
+        panel.add(uploadPanel, BorderLayout.WEST);
         panel.add(exportPanel, BorderLayout.CENTER);
         panel.add(searchPanel, BorderLayout.EAST);
         
@@ -158,6 +215,7 @@ public class DataPanel extends JPanel {
         table.getColumnModel().getColumn(6).setPreferredWidth(100); // Photos Shared
         table.getColumnModel().getColumn(7).setPreferredWidth(100); // Photos Download
         table.getColumnModel().getColumn(8).setPreferredWidth(120); // Date
+        table.getColumnModel().getColumn(9).setPreferredWidth(120); // Source File
         
         // Custom cell renderer for better appearance
         DefaultTableCellRenderer centerRenderer = new DefaultTableCellRenderer();
@@ -193,7 +251,23 @@ public class DataPanel extends JPanel {
         statusLabel.setFont(new Font(Font.SANS_SERIF, Font.ITALIC, 12));
         statusLabel.setBorder(BorderFactory.createEmptyBorder(10, 0, 0, 0));
         
+        loadProgressBar = new JProgressBar(0, PROGRESS_STEPS);
+        loadProgressBar.setPreferredSize(new Dimension(200, 16));
+        
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> {
+            if (loadWorker != null) {
+                loadWorker.cancel(false);
+            }
+        });
+        
+        loadPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        loadPanel.add(loadProgressBar);
+        loadPanel.add(cancelButton);
+        loadPanel.setVisible(false);
+        
         panel.add(statusLabel, BorderLayout.WEST);
+        panel.add(loadPanel, BorderLayout.EAST);
         
         return panel;
     }
@@ -202,63 +276,494 @@ public class DataPanel extends JPanel {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setFileFilter(new FileNameExtensionFilter("CSV Files", "csv"));
         fileChooser.setAcceptAllFileFilterUsed(false);
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        fileChooser.setMultiSelectionEnabled(true);
         
         int result = BlurredModalOverlay.showFileChooserWithBlurredOverlay(this, fileChooser, true);
-        if (result == JFileChooser.APPROVE_OPTION) {
-            File selectedFile = fileChooser.getSelectedFile();
-            loadCsvFile(selectedFile);
+        if (result != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File[] selected = fileChooser.getSelectedFiles();
+        if (selected.length == 0 && fileChooser.getSelectedFile() != null) {
+            selected = new File[] {fileChooser.getSelectedFile()};
+        }
+        if (selected.length == 1 && selected[0].isFile()) {
+            loadCsvFile(selected[0]);
+            return;
         }
+        
+        List<File> files = csvFilesIn(selected);
+        if (files.isEmpty()) {
+            BlurredModalOverlay.showMessageDialogWithBlurredOverlay(this,
+                    "No CSV files found in the selection.",
+                    "Upload Error", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        loadCsvFiles(files);
+    }
+    
+    // Selected files in order, each selected folder replaced by the CSV files directly in it, by name
+    private static List<File> csvFilesIn(File[] selected) {
+        List<File> files = new ArrayList<>();
+        for (File file : selected) {
+            if (file.isDirectory()) {
+                File[] children = file.listFiles((dir, name) -> name.toLowerCase().endsWith(".csv"));
+                if (children != null) {
+                    Arrays.sort(children, Comparator.comparing(File::getName));
+                    for (File child : children) {
+                        if (child.isFile()) {
+                            files.add(child);
+                        }
+                    }
+                }
+            } else if (file.isFile()) {
+                files.add(file);
+            }
+        }
+        return files;
     }
     
+    /**
+     * Starts loading a file into a new dataset. Rows appear in the table as they are
+     * parsed; the previously loaded data stays current for exports and the other panels
+     * until the whole file is in, and comes back if the load fails or is cancelled.
+     */
     private void loadCsvFile(File file) {
-        SwingWorker<List<SelfieDetail>, Void> worker = new SwingWorker<>() {
-            @Override
-            protected List<SelfieDetail> doInBackground() throws Exception {
-                statusLabel.setText("Loading CSV file...");
-                return csvService.parseCsvFile(file);
+        if (loadWorker != null) {
+            return;
+        }
+        stopFollowing();
+        SelfieDataset data = new SelfieDataset();
+        loadWorker = new LoadWorker(file, data, searchResults, followCheckBox.isSelected());
+        searchResults = null; // describes the previous rows
+        tableModel.setData(data);
+        filterTable();
+        
+        loadProgressBar.setValue(0);
+        loadPanel.setVisible(true);
+        uploadButton.setEnabled(false);
+        statusLabel.setText("Loading " + file.getName() + "...");
+        loadWorker.execute();
+    }
+    
+    /**
+     * Starts importing several files into one dataset, see {@link CsvBatchImporter}. The
+     * table keeps the previous data until the import is complete; like a single file, it
+     * comes back if the import fails or is cancelled.
+     */
+    private void loadCsvFiles(List<File> files) {
+        if (loadWorker != null) {
+            return;
+        }
+        stopFollowing();
+        loadWorker = new BatchLoadWorker(files);
+        
+        loadProgressBar.setValue(0);
+        loadPanel.setVisible(true);
+        uploadButton.setEnabled(false);
+        statusLabel.setText("Loading " + files.size() + " files...");
+        loadWorker.execute();
+    }
+    
+    private void finishLoading() {
+        loadWorker = null;
+        loadPanel.setVisible(false);
+        uploadButton.setEnabled(true);
+    }
+    
+    /**
+     * Follows the loaded file from its tail, adding the records appended to it.
+     */
+    private void startFollowing(CsvTail tail, SelfieDataset data) {
+        File file = tail.getFile();
+        try {
+            if (follower == null) {
+                follower = new CsvFileFollower(csvService);
+            }
+            follower.follow(tail, new CsvFileFollower.Listener() {
+                @Override
+                public void recordsAppended(List<SelfieDetail> records) {
+                    SwingUtilities.invokeLater(() -> appendFollowedRecords(file, data, records));
+                }
+                
+                @Override
+                public void followingStopped(IOException reason) {
+                    SwingUtilities.invokeLater(() -> {
+                        if (file.equals(followedFile)) {
+                            followedFile = null;
+                            statusLabel.setText("Stopped following " + file.getName() + ": " + reason.getMessage());
+                        }
+                    });
+                }
+            });
+            followedFile = file;
+        } catch (IOException e) {
+            statusLabel.setText("Cannot follow " + file.getName() + ": " + e.getMessage());
+        }
+    }
+    
+    private void stopFollowing() {
+        if (followedFile != null) {
+            follower.unfollow(followedFile);
+            followedFile = null;
+        }
+    }
+    
+    /**
+     * Adds records appended to the followed file to the loaded dataset, and passes just
+     * those rows on to the other panels.
+     */
+    private void appendFollowedRecords(File file, SelfieDataset data, List<SelfieDetail> records) {
+        if (!file.equals(followedFile) || data != loadedData) {
+            return; // no longer followed
+        }
+        int firstRow = data.size();
+        TrigramIndex index = searchResults.getIndex();
+        for (SelfieDetail record : records) {
+            data.add(record);
+            index.add();
+        }
+        tableModel.showAppendedRows(data.size());
+        filterTable();
+        statusLabel.setText(String.format("Following %s: %d records, %d new",
+                file.getName(), data.size(), records.size()));
+        
+        if (rowsAppendedCallback != null) {
+            rowsAppendedCallback.accept(data, firstRow);
+        }
+    }
+    
+    private static final class LoadProgress {
+        final SelfieDataset data;
+        final int rows;
+        final long bytesRead;
+        
+        LoadProgress(SelfieDataset data, int rows, long bytesRead) {
+            this.data = data;
+            this.rows = rows;
+            this.bytesRead = bytesRead;
+        }
+    }
+    
+    /**
+     * Parses a file off the EDT, publishing the row count every {@link #LOAD_CHUNK_ROWS}
+     * rows so the table can show them while the rest is read. The search index is built
+     * alongside and handed over once the file is complete. A file that is unchanged since
+     * it was last loaded comes from its snapshot instead, shown in one go while its search
+     * index is built. A file large enough to be parsed in parallel grows a range at a
+     * time rather than a row at a time, still starting with its first rows. A file to be
+     * followed is always parsed, up to its last complete record, so that following can
+     * carry on from there.
+     */
+    private final class LoadWorker extends SwingWorker<SelfieDataset, LoadProgress> {
+        private final File file;
+        private final SelfieDataset data;
+        private final SearchResultCache previousSearchResults;
+        private final long fileLength;
+        private final boolean follow;
+        private final long startNanos = System.nanoTime();
+        private TrigramIndex index;
+        private CsvTail tail; // set when following
+        
+        LoadWorker(File file, SelfieDataset data, SearchResultCache previousSearchResults, boolean follow) {
+            this.file = file;
+            this.data = data;
+            this.previousSearchResults = previousSearchResults;
+            this.fileLength = file.length();
+            this.follow = follow;
+        }
+        
+        @Override
+        protected SelfieDataset doInBackground() throws Exception {
+            TrigramIndex searchIndex = new TrigramIndex(3, searchFields(data));
+            Consumer<SelfieDetail> addRow = row -> {
+                if (isCancelled()) {
+                    throw new CancellationException();
+                }
+                data.add(row);
+                searchIndex.add();
+            };
+            LongConsumer progress = bytesRead -> {
+                if (data.size() % LOAD_CHUNK_ROWS == 0) {
+                    publish(new LoadProgress(data, data.size(), bytesRead));
+                }
+            };
+            if (follow) {
+                tail = csvService.parseCompleteRecords(file, addRow, progress);
+                index = searchIndex;
+                return data;
             }
             
-            @Override
-            protected void done() {
-                try {
-                    List<SelfieDetail> data = get();
-                    tableModel.setData(data);
-                    statusLabel.setText(String.format("Loaded %d records from %s", 
-                            data.size(), file.getName()));
-                    
-                    // Notify other panels of data update
-                    if (dataUpdateCallback != null) {
-                        dataUpdateCallback.accept(data);
+            CsvSnapshotCache snapshotCache = csvService.getSnapshotCache();
+            CsvSnapshotCache.SourceFile source = snapshotCache.describe(file);
+            SelfieDataset cached = snapshotCache.load(source);
+            if (cached != null) {
+                if (isCancelled()) {
+                    throw new CancellationException();
+                }
+                publish(new LoadProgress(cached, cached.size(), fileLength));
+                index = TrigramIndex.build(cached.size(), 3, searchFields(cached));
+                return cached;
+            }
+            
+            if (csvService.isParsedInParallel(file)) {
+                // Called once the rows of each range are in, on the thread that appended them
+                csvService.parseCsvFileParallel(file, data, bytesRead -> {
+                    if (isCancelled()) {
+                        throw new CancellationException();
                     }
-                    
-                    // Show success message
-                    BlurredModalOverlay.showMessageDialogWithBlurredOverlay(DataPanel.this, 
-                            String.format("Successfully loaded %d records!", data.size()),
-                            "Success", JOptionPane.INFORMATION_MESSAGE);
-                            
-                } catch (Exception ex) {
-                    statusLabel.setText("Error loading CSV file");
-                    BlurredModalOverlay.showMessageDialogWithBlurredOverlay(DataPanel.this, 
-                            "Error loading CSV file: " + ex.getMessage(),
-                            "Error", JOptionPane.ERROR_MESSAGE);
+                    searchIndex.addAll(data.size() - searchIndex.size());
+                    publish(new LoadProgress(data, data.size(), bytesRead));
+                });
+            } else {
+                csvService.parseCsvFile(file, addRow, progress);
+            }
+            snapshotCache.store(source, data);
+            index = searchIndex;
+            return data;
+        }
+        
+        @Override
+        protected void process(List<LoadProgress> chunks) {
+            if (isCancelled()) return;
+            
+            LoadProgress progress = chunks.get(chunks.size() - 1);
+            if (progress.data != tableModel.getData()) {
+                tableModel.setData(progress.data);
+            }
+            tableModel.showAppendedRows(progress.rows);
+            
+            double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+            double fraction = fileLength > 0 ? Math.min(1.0, (double) progress.bytesRead / fileLength) : 0;
+            loadProgressBar.setValue((int) (fraction * PROGRESS_STEPS));
+            String remaining = fraction > 0
+                    ? formatDuration(seconds * (1 - fraction) / fraction) + " left"
+                    : "estimating time left";
+            statusLabel.setText(String.format("Loading %s: %s of %s (%d%%), %,d records at %,d records/s, %s",
+                    file.getName(), formatMegabytes(progress.bytesRead), formatMegabytes(fileLength),
+                    (int) (fraction * 100), progress.rows, (long) (progress.rows / seconds), remaining));
+        }
+        
+        @Override
+        protected void done() {
+            finishLoading();
+            if (isCancelled()) {
+                restorePreviousData();
+                statusLabel.setText("Loading " + file.getName() + " cancelled");
+                return;
+            }
+            
+            try {
+                SelfieDataset data = get();
+                if (data != tableModel.getData()) {
+                    tableModel.setData(data);
+                }
+                tableModel.showAppendedRows(data.size());
+                loadedData = data;
+                searchResults = new SearchResultCache(index);
+                filterTable();
+                statusLabel.setText(String.format("Loaded %d records from %s", 
+                        data.size(), file.getName()));
+                if (tail != null) {
+                    startFollowing(tail, data);
+                }
+                
+                // Notify other panels of data update
+                if (dataUpdateCallback != null) {
+                    dataUpdateCallback.accept(data);
                 }
+                
+                // Show success message
+                BlurredModalOverlay.showMessageDialogWithBlurredOverlay(DataPanel.this, 
+                        String.format("Successfully loaded %d records!", data.size()),
+                        "Success", JOptionPane.INFORMATION_MESSAGE);
+                        
+            } catch (Exception ex) {
+                restorePreviousData();
+                statusLabel.setText("Error loading CSV file");
+                BlurredModalOverlay.showMessageDialogWithBlurredOverlay(DataPanel.this, 
+                        "Error loading CSV file: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
             }
-        };
+        }
+        
+        private void restorePreviousData() {
+            tableModel.setData(loadedData);
+            searchResults = previousSearchResults;
+            filterTable();
+        }
+    }
+    
+    private static final class BatchProgress {
+        final long bytesRead;
+        final int filesMerged;
+        final int rowsMerged;
+        
+        BatchProgress(long bytesRead, int filesMerged, int rowsMerged) {
+            this.bytesRead = bytesRead;
+            this.filesMerged = filesMerged;
+            this.rowsMerged = rowsMerged;
+        }
+    }
+    
+    /**
+     * Imports several files off the EDT with a {@link CsvBatchImporter}, publishing the
+     * bytes read over all files and how many files and rows have been merged, then builds
+     * the search index of the merged dataset.
+     */
+    private final class BatchLoadWorker extends SwingWorker<CsvBatchImporter.Result, BatchProgress> {
+        private final List<File> files;
+        private final long totalLength;
+        private final long startNanos = System.nanoTime();
+        private TrigramIndex index;
+        
+        BatchLoadWorker(List<File> files) {
+            this.files = files;
+            this.totalLength = files.stream().mapToLong(File::length).sum();
+        }
+        
+        @Override
+        protected CsvBatchImporter.Result doInBackground() throws Exception {
+            CsvBatchImporter.Result result = new CsvBatchImporter(csvService).importFiles(files,
+                    new CsvBatchImporter.Monitor() {
+                        @Override
+                        public void progress(long bytesRead, int filesMerged, int rowsMerged) {
+                            publish(new BatchProgress(bytesRead, filesMerged, rowsMerged));
+                        }
+                        
+                        @Override
+                        public boolean isCancelled() {
+                            return BatchLoadWorker.this.isCancelled();
+                        }
+                    });
+            SelfieDataset data = result.getData();
+            index = TrigramIndex.build(data.size(), 3, searchFields(data));
+            return result;
+        }
+        
+        @Override
+        protected void process(List<BatchProgress> chunks) {
+            if (isCancelled()) return;
+            
+            BatchProgress progress = chunks.get(chunks.size() - 1);
+            double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+            double fraction = totalLength > 0 ? Math.min(1.0, (double) progress.bytesRead / totalLength) : 0;
+            loadProgressBar.setValue((int) (fraction * PROGRESS_STEPS));
+            String remaining = fraction > 0
+                    ? formatDuration(seconds * (1 - fraction) / fraction) + " left"
+                    : "estimating time left";
+            statusLabel.setText(String.format("Loading %d files: %s of %s (%d%%), %d merged with %,d records, %s",
+                    files.size(), formatMegabytes(progress.bytesRead), formatMegabytes(totalLength),
+                    (int) (fraction * 100), progress.filesMerged, progress.rowsMerged, remaining));
+        }
         
-        worker.execute();
+        @Override
+        protected void done() {
+            finishLoading();
+            if (isCancelled()) {
+                statusLabel.setText("Loading " + files.size() + " files cancelled");
+                return;
+            }
+            
+            try {
+                CsvBatchImporter.Result result = get();
+                SelfieDataset data = result.getData();
+                tableModel.setData(data);
+                loadedData = data;
+                searchResults = new SearchResultCache(index);
+                filterTable();
+                statusLabel.setText(String.format("Loaded %d records from %d files, %d duplicate emails skipped",
+                        data.size(), files.size(), result.getDuplicates()));
+                
+                // Notify other panels of data update
+                if (dataUpdateCallback != null) {
+                    dataUpdateCallback.accept(data);
+                }
+                
+                BlurredModalOverlay.showMessageDialogWithBlurredOverlay(DataPanel.this,
+                        String.format("Successfully loaded %d records from %d files!", data.size(), files.size()),
+                        "Success", JOptionPane.INFORMATION_MESSAGE);
+                        
+            } catch (Exception ex) {
+                statusLabel.setText("Error loading CSV files");
+                BlurredModalOverlay.showMessageDialogWithBlurredOverlay(DataPanel.this,
+                        "Error loading CSV files: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+    
+    private static String formatMegabytes(long bytes) {
+        return String.format("%,.1f MB", bytes / (1024.0 * 1024.0));
+    }
+    
+    private static String formatDuration(double seconds) {
+        long total = Math.round(seconds);
+        return total < 60 ? total + " s" : String.format("%d min %02d s", total / 60, total % 60);
     }
     
     private void filterTable() {
         String searchText = searchField.getText().trim();
-        if (searchText.isEmpty()) {
-            sorter.setRowFilter(null);
+        if (searchText.isEmpty() || searchResults == null) {
+            sorter.setMatchingRows(null);
         } else {
-            sorter.setRowFilter(RowFilter.regexFilter("(?i)" + searchText));
+            sorter.setMatchingRows(searchResults.search(searchText));
         }
     }
     
+    /**
+     * Sort order of a table column, read straight from the dataset's columns. Photos and
+     * dates sort as numbers; dates by time rather than by their text.
+     */
+    private static int[] ascendingOrder(SelfieDataset data, int rows, int column, Collator collator) {
+        if (column == 5) {
+            int[] photos = new int[rows];
+            for (int row = 0; row < rows; row++) {
+                photos[row] = data.getPhotos(row);
+            }
+            return SortPermutations.byInt(photos);
+        }
+        if (column == 8) {
+            long[] minutes = new long[rows];
+            for (int row = 0; row < rows; row++) {
+                minutes[row] = data.getDateMinutes(row);
+            }
+            return SortPermutations.byLong(minutes);
+        }
+        
+        IntFunction<String> values = switch (column) {
+            case 0 -> data::getImage;
+            case 1 -> data::getName;
+            case 2 -> data::getEmail;
+            case 3 -> data::getContact;
+            case 4 -> data::getDownloadRequests;
+            case 6 -> data::getPhotosShared;
+            case 7 -> data::getPhotosDownload;
+            default -> data::getSourceFile;
+        };
+        String[] text = new String[rows];
+        for (int row = 0; row < rows; row++) {
+            text[row] = values.apply(row);
+        }
+        return SortPermutations.byText(text, collator);
+    }
+    
+    private static TrigramIndex.FieldReader searchFields(SelfieDataset data) {
+        return (row, field) -> switch (field) {
+            case 0 -> data.getName(row);
+            case 1 -> data.getEmail(row);
+            default -> data.getContact(row);
+        };
+    }
+    
     private void exportToCsv(ActionEvent e) {
-        List<SelfieDetail> data = tableModel.getData();
+        if (loadWorker != null) {
+            BlurredModalOverlay.showMessageDialogWithBlurredOverlay(this, 
+                "Please wait until the CSV file has finished loading.", 
+                "Export Error", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        SelfieDataset data = tableModel.getData();
         if (data == null || data.isEmpty()) {
             BlurredModalOverlay.showMessageDialogWithBlurredOverlay(this, 
                 "No data to export. Please load a CSV file first.", 
@@ -291,7 +796,13 @@ public class DataPanel extends JPanel {
     }
     
     private void exportToPdf(ActionEvent e) {
-        List<SelfieDetail> data = tableModel.getData();
+        if (loadWorker != null) {
+            BlurredModalOverlay.showMessageDialogWithBlurredOverlay(this, 
+                "Please wait until the CSV file has finished loading.", 
+                "Export Error", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        SelfieDataset data = tableModel.getData();
         if (data == null || data.isEmpty()) {
             BlurredModalOverlay.showMessageDialogWithBlurredOverlay(this, 
                 "No data to export. Please load a CSV file first.", 
@@ -348,25 +859,24 @@ public class DataPanel extends JPanel {
     }
     
     // Utility method to remove duplicate records by email
-    private List<SelfieDetail> removeDuplicatesByEmail(List<SelfieDetail> data) {
-        Set<String> seenEmails = new HashSet<>();
+    private List<SelfieDetail> removeDuplicatesByEmail(SelfieDataset data) {
+        LongHashSet seenEmails = new LongHashSet(data.size());
         List<SelfieDetail> uniqueData = new ArrayList<>();
         
-        for (SelfieDetail record : data) {
-            String email = record.getEmail();
-            if (email != null && !email.trim().isEmpty() && !seenEmails.contains(email.toLowerCase())) {
-                seenEmails.add(email.toLowerCase());
-                uniqueData.add(record);
-            } else if (email == null || email.trim().isEmpty()) {
+        for (int row = 0, size = data.size(); row < size; row++) {
+            String email = data.getEmail(row);
+            if (EmailKeys.isBlank(email)) {
                 // Keep records without email as they're not duplicates
-                uniqueData.add(record);
+                uniqueData.add(data.getRow(row));
+            } else if (seenEmails.add(EmailKeys.fingerprint(email))) {
+                uniqueData.add(data.getRow(row));
             }
         }
         
         return uniqueData;
     }
-
-    private void exportToCsvFile(File file, List<SelfieDetail> data) throws IOException {
+    
+    private void exportToCsvFile(File file, SelfieDataset data) throws IOException {
         // Remove duplicates by email and keep unique records
         List<SelfieDetail> uniqueData = removeDuplicatesByEmail(data);
         
@@ -391,7 +901,7 @@ public class DataPanel extends JPanel {
         }
     }
     
-    private void exportToPdfFile(File file, List<SelfieDetail> data) throws Exception {
+    private void exportToPdfFile(File file, SelfieDataset data) throws Exception {
         // Remove duplicates by email and keep unique records
         List<SelfieDetail> uniqueData = removeDuplicatesByEmail(data);
         
@@ -464,7 +974,7 @@ public class DataPanel extends JPanel {
         document.close();
     }
     
-    public List<SelfieDetail> getCurrentData() {
-        return tableModel.getData();
+    public SelfieDataset getCurrentData() {
+        return loadedData;
     }
 }
\ No newline at end of file
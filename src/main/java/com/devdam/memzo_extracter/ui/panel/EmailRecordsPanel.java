@@ -1,12 +1,22 @@
 package com.devdam.memzo_extracter.ui.panel;
 
+import com.devdam.memzo_extracter.model.DateIndex;
+import com.devdam.memzo_extracter.model.MemzoDates;
+import com.devdam.memzo_extracter.model.SelfieDataset;
 import com.devdam.memzo_extracter.model.SelfieDetail;
+import com.devdam.memzo_extracter.search.RecordQuery;
+import com.devdam.memzo_extracter.search.SearchResultCache;
+import com.devdam.memzo_extracter.search.TrigramIndex;
 import com.devdam.memzo_extracter.service.CsvService;
 import com.devdam.memzo_extracter.ui.model.EmailRecordsTableModel;
 import com.devdam.memzo_extracter.ui.util.BlurredModalOverlay;
+import com.devdam.memzo_extracter.ui.util.DatasetChangeBus;
+import com.devdam.memzo_extracter.util.EmailKeys;
+import com.devdam.memzo_extracter.util.LongHashSet;
 import com.github.lgooddatepicker.components.DatePicker;
 
 import javax.swing.*;
+import javax.swing.Timer;
 import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -14,10 +24,10 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.util.*;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
 
 import com.itextpdf.text.Element;
 import com.itextpdf.text.Phrase;
@@ -27,6 +37,14 @@ import com.itextpdf.text.pdf.PdfWriter;
 
 public class EmailRecordsPanel extends JPanel {
     
+    // Quiet period after the last keystroke or date change before a search starts
+    private static final int FILTER_DELAY_MS = 250;
+    
+    // Rows checked between cancellation checks and published to the table at once
+    private static final int FILTER_BATCH_SIZE = 1 << 15;
+    
+    private static final RecordQuery WITH_EMAIL = RecordQuery.parse("has:email");
+    
     private final CsvService csvService;
     private final EmailRecordsTableModel tableModel;
     private final JTable table;
@@ -35,7 +53,15 @@ public class EmailRecordsPanel extends JPanel {
     private final DatePicker dateFromPicker;
     private final DatePicker dateToPicker;
     private final JLabel recordCountLabel;
-    private List<SelfieDetail> currentData;
+    private final Timer filterTimer;
+    private SelfieDataset dataset;
+    private int[] currentRows; // dataset rows that have an email
+    private int rowLimit; // dataset size when currentRows was taken
+    private CompletableFuture<DateIndex> dateIndex;
+    private CompletableFuture<SearchResultCache> textIndex;
+    private FilterWorker filterWorker; // the query whose results the table shows, if still running
+    private boolean filtered; // whether the table shows query results rather than every row
+    private PreparedData prepared; // last derived; only touched by prepareData
     
     public EmailRecordsPanel(CsvService csvService) {
         this.csvService = csvService;
@@ -43,12 +69,17 @@ public class EmailRecordsPanel extends JPanel {
         this.table = new JTable(tableModel);
         this.sorter = new TableRowSorter<>(tableModel);
         this.searchField = new JTextField(20);
+        this.searchField.setToolTipText("<html>Free text, plus any of: photos&gt;=3, date:2026-09, "
+            + "domain:gmail.com,<br>has:contact, name:/email:/contact:text. "
+            + "Prefix a term with - to exclude it.</html>");
         
         // Initialize date pickers
         this.dateFromPicker = new DatePicker();
         this.dateToPicker = new DatePicker();
         this.dateToPicker.setDate(LocalDate.now()); // Set default to today's date
         this.recordCountLabel = new JLabel("Records: 0");
+        this.filterTimer = new Timer(FILTER_DELAY_MS, e -> startFiltering());
+        this.filterTimer.setRepeats(false);
         
         initializeUI();
         setupTableProperties();
@@ -125,7 +156,8 @@ public class EmailRecordsPanel extends JPanel {
         panel.add(recordCountLabel);
         
         // Add date picker hint
-        JLabel hintLabel = new JLabel("Use date pickers to filter by date range");
+        JLabel hintLabel = new JLabel("Use date pickers to filter by date range, or search with terms "
+            + "like photos>=3 domain:gmail.com date:2026-09 has:contact");
         hintLabel.setFont(hintLabel.getFont().deriveFont(Font.ITALIC, 11f));
         hintLabel.setForeground(Color.GRAY);
         panel.add(Box.createHorizontalStrut(20));
@@ -151,67 +183,153 @@ public class EmailRecordsPanel extends JPanel {
     
     private void setupFiltering() {
         searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
-            public void changedUpdate(javax.swing.event.DocumentEvent e) { applyFilters(null); }
-            public void removeUpdate(javax.swing.event.DocumentEvent e) { applyFilters(null); }
-            public void insertUpdate(javax.swing.event.DocumentEvent e) { applyFilters(null); }
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { filterTimer.restart(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { filterTimer.restart(); }
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { filterTimer.restart(); }
         });
+        dateFromPicker.addDateChangeListener(e -> filterTimer.restart());
+        dateToPicker.addDateChangeListener(e -> filterTimer.restart());
     }
     
     private void applyFilters(ActionEvent e) {
-        if (currentData == null) return;
-        
-        List<SelfieDetail> filteredData = getFilteredData();
-        tableModel.updateData(filteredData);
-        recordCountLabel.setText("Records: " + filteredData.size());
+        startFiltering();
     }
     
-    private List<SelfieDetail> getFilteredData() {
-        if (currentData == null) return List.of();
-        
-        String searchText = searchField.getText().toLowerCase().trim();
-        
-        // Get dates from date pickers
+    /**
+     * Starts a background query with the current filter settings, replacing any query
+     * still running. The table keeps its rows until the first batch of results arrives.
+     */
+    private void startFiltering() {
+        filterTimer.stop();
+        cancelFiltering();
+        if (currentRows == null) return;
+        
+        RecordQuery query;
+        try {
+            query = currentQuery();
+        } catch (IllegalArgumentException ex) {
+            recordCountLabel.setText("Records: " + tableModel.getRowCount() + " (" + ex.getMessage() + ")");
+            return;
+        }
+        filterWorker = new FilterWorker(dataset, rowLimit, query, dateIndex.getNow(null), textIndex.getNow(null));
+        filtered = true;
+        filterWorker.execute();
+    }
+    
+    private void cancelFiltering() {
+        filterTimer.stop();
+        if (filterWorker != null) {
+            filterWorker.cancel(false);
+            filterWorker = null;
+        }
+    }
+    
+    /**
+     * @throws IllegalArgumentException if the search text is not a valid query
+     */
+    private int[] getFilteredRows() {
+        if (currentRows == null) return new int[0];
+        
+        return currentQuery()
+            .compile(dataset, rowLimit, dateIndex.getNow(null), textIndex.getNow(null))
+            .matchingRows();
+    }
+    
+    /**
+     * Reads the filter controls into one query; must run on the EDT. Only rows with an
+     * email are listed, and rows without a valid date are excluded while either date
+     * picker is set.
+     */
+    private RecordQuery currentQuery() {
+        RecordQuery query = RecordQuery.parse(searchField.getText()).and(WITH_EMAIL);
+        
+        // Date bounds as epoch minutes: [start of dateFrom, start of the day after dateTo)
         LocalDate dateFrom = dateFromPicker.getDate();
         LocalDate dateTo = dateToPicker.getDate();
+        if (dateFrom != null || dateTo != null) {
+            query = query.and(RecordQuery.dateRange(
+                dateFrom != null ? MemzoDates.toEpochMinutes(dateFrom) : Long.MIN_VALUE,
+                dateTo != null ? MemzoDates.toEpochMinutes(dateTo.plusDays(1)) : Long.MAX_VALUE));
+        }
+        return query;
+    }
+    
+    /**
+     * Runs one query off the EDT and streams matching rows into the table in batches.
+     * A superseded worker is cancelled and its pending batches are dropped.
+     */
+    private final class FilterWorker extends SwingWorker<Void, int[]> {
+        private final SelfieDataset data;
+        private final int limit;
+        private final RecordQuery query;
+        private final DateIndex dates;
+        private final SearchResultCache text;
+        private boolean replaced; // EDT only; whether the table shows this query's rows yet
+        
+        FilterWorker(SelfieDataset data, int limit, RecordQuery query, DateIndex dates, SearchResultCache text) {
+            this.data = data;
+            this.limit = limit;
+            this.query = query;
+            this.dates = dates;
+            this.text = text;
+        }
         
-        return currentData.stream()
-            .filter(record -> {
-                // Search filter
-                if (!searchText.isEmpty()) {
-                    String searchableText = (
-                        (record.getEmail() != null ? record.getEmail() : "") + " " +
-                        (record.getContact() != null ? record.getContact() : "") + " " +
-                        (record.getName() != null ? record.getName() : "")
-                    ).toLowerCase();
-                    if (!searchableText.contains(searchText)) {
-                        return false;
+        @Override
+        protected Void doInBackground() {
+            // Indexes that are still being built are simply not used
+            RecordQuery.Plan plan = query.compile(data, limit, dates, text);
+            int candidates = plan.getCandidateCount();
+            int[] batch = new int[FILTER_BATCH_SIZE];
+            for (int start = 0; start < candidates && !isCancelled(); start += FILTER_BATCH_SIZE) {
+                int end = Math.min(candidates, start + FILTER_BATCH_SIZE);
+                int count = 0;
+                for (int i = start; i < end; i++) {
+                    int row = plan.getCandidate(i);
+                    if (plan.matches(row)) {
+                        batch[count++] = row;
                     }
                 }
-                
-                // Date filter - only apply if at least one date is selected
-                if (dateFrom != null || dateTo != null) {
-                    LocalDateTime recordDateTime = record.getParsedDate();
-                    if (recordDateTime != null) {
-                        LocalDate recordDate = recordDateTime.toLocalDate();
-                        if (dateFrom != null) {
-                            if (recordDate.isBefore(dateFrom)) {
-                                return false;
-                            }
-                        }
-                        if (dateTo != null) {
-                            if (recordDate.isAfter(dateTo)) {
-                                return false;
-                            }
-                        }
-                    } else {
-                        // If record has no valid date but date filters are active, exclude it
-                        return false;
-                    }
+                if (count > 0) {
+                    publish(Arrays.copyOf(batch, count));
                 }
-                
-                return true;
-            })
-            .collect(Collectors.toList());
+            }
+            return null;
+        }
+        
+        @Override
+        protected void process(List<int[]> batches) {
+            if (filterWorker != this) return;
+            
+            int total = 0;
+            for (int[] batch : batches) {
+                total += batch.length;
+            }
+            int[] merged = new int[total];
+            int position = 0;
+            for (int[] batch : batches) {
+                System.arraycopy(batch, 0, merged, position, batch.length);
+                position += batch.length;
+            }
+            
+            if (!replaced) {
+                tableModel.updateData(data, merged);
+                replaced = true;
+            } else {
+                tableModel.appendRows(merged, merged.length);
+            }
+            recordCountLabel.setText("Records: " + tableModel.getRowCount() + " (filtering...)");
+        }
+        
+        @Override
+        protected void done() {
+            if (filterWorker != this) return;
+            filterWorker = null;
+            
+            if (!replaced) {
+                tableModel.updateData(data, new int[0]);
+            }
+            updateRecordCount(tableModel.getRowCount());
+        }
     }
     
     private void clearFilters(ActionEvent e) {
@@ -219,14 +337,18 @@ public class EmailRecordsPanel extends JPanel {
         dateFromPicker.setDate(null);
         dateToPicker.setDate(null);
         
-        if (currentData != null) {
-            tableModel.updateData(currentData);
-            updateRecordCount(currentData.size());
+        // No query needed to show every row
+        cancelFiltering();
+        filtered = false;
+        
+        if (currentRows != null) {
+            tableModel.updateData(dataset, currentRows.clone());
+            updateRecordCount(currentRows.length);
         }
     }
     
     private void showExportDialog(ActionEvent e) {
-        if (currentData == null || currentData.isEmpty()) {
+        if (currentRows == null || currentRows.length == 0) {
             BlurredModalOverlay.showMessageDialogWithBlurredOverlay(this, 
                 "No data to export. Please load a CSV file first.", 
                 "Export Error", JOptionPane.WARNING_MESSAGE);
@@ -234,7 +356,15 @@ public class EmailRecordsPanel extends JPanel {
         }
         
         // Apply the same filtering logic as the table display
-        List<SelfieDetail> filteredData = getFilteredData();
+        List<SelfieDetail> filteredData;
+        try {
+            filteredData = dataset.asList(getFilteredRows());
+        } catch (IllegalArgumentException ex) {
+            BlurredModalOverlay.showMessageDialogWithBlurredOverlay(this, 
+                "Invalid search: " + ex.getMessage(), 
+                "Export Error", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
         if (filteredData.isEmpty()) {
             BlurredModalOverlay.showMessageDialogWithBlurredOverlay(this, 
                 "No records match the current filters.", 
@@ -252,22 +382,129 @@ public class EmailRecordsPanel extends JPanel {
         recordCountLabel.setText("Records: " + count);
     }
     
-    public void updateData(List<SelfieDetail> allData) {
+    /**
+     * Follows the datasets published on the bus. The rows with an email are found off
+     * the EDT, and only while this panel is showing. When the dataset shown is published
+     * again after rows were appended to it, only the new rows are looked at.
+     */
+    public void subscribe(DatasetChangeBus bus) {
+        bus.subscribe(this, this::prepareData, this::showData);
+    }
+    
+    /**
+     * What the panel needs of one dataset, prepared off the EDT.
+     */
+    private static final class PreparedData {
+        final SelfieDataset dataset;
+        final int firstRow; // rows before it were prepared earlier for the same dataset
+        final int rowLimit;
+        final int[] rows;
+        final CompletableFuture<DateIndex> dateIndex;
+        final CompletableFuture<SearchResultCache> textIndex;
+        
+        PreparedData(SelfieDataset dataset, int firstRow, int rowLimit, int[] rows,
+                CompletableFuture<DateIndex> dateIndex, CompletableFuture<SearchResultCache> textIndex) {
+            this.dataset = dataset;
+            this.firstRow = firstRow;
+            this.rowLimit = rowLimit;
+            this.rows = rows;
+            this.dateIndex = dateIndex;
+            this.textIndex = textIndex;
+        }
+    }
+    
+    // Off the EDT, but never while showData runs
+    private PreparedData prepareData(SelfieDataset allData) {
         if (allData == null) {
-            currentData = null;
-            tableModel.updateData(null);
+            prepared = null;
+        } else if (prepared != null && prepared.dataset == allData) {
+            prepared = extendData(prepared);
+        } else {
+            prepared = buildData(allData);
+        }
+        return prepared;
+    }
+    
+    private static PreparedData buildData(SelfieDataset allData) {
+        // Filter to only include records with valid email addresses
+        int rowLimit = allData.size();
+        int[] rows = IntStream.range(0, rowLimit)
+            .filter(allData::hasEmail)
+            .toArray();
+        
+        // Date and text indexes for narrowing queries, ready a moment after the table;
+        // text results are cached so a query being typed narrows the previous one
+        CompletableFuture<DateIndex> dateIndex = CompletableFuture.supplyAsync(() -> DateIndex.build(allData));
+        CompletableFuture<SearchResultCache> textIndex = CompletableFuture.supplyAsync(() -> new SearchResultCache(TrigramIndex.build(rowLimit, 3,
+            (row, field) -> field == 0 ? allData.getEmail(row) : field == 1 ? allData.getContact(row) : allData.getName(row))));
+        return new PreparedData(allData, 0, rowLimit, rows, dateIndex, textIndex);
+    }
+    
+    /**
+     * Adds the rows appended since {@code previous} was prepared: their emails to the
+     * rows shown, and the rows themselves to the indexes once those are built.
+     */
+    private static PreparedData extendData(PreparedData previous) {
+        SelfieDataset allData = previous.dataset;
+        int firstRow = previous.rowLimit;
+        int rowLimit = allData.size();
+        int[] added = IntStream.range(firstRow, rowLimit)
+            .filter(allData::hasEmail)
+            .toArray();
+        int[] rows = Arrays.copyOf(previous.rows, previous.rows.length + added.length);
+        System.arraycopy(added, 0, rows, previous.rows.length, added.length);
+        
+        CompletableFuture<DateIndex> dateIndex = previous.dateIndex.thenApplyAsync(index -> index.extend(allData, rowLimit));
+        CompletableFuture<SearchResultCache> textIndex = previous.textIndex.thenApplyAsync(cache -> {
+            cache.addDocuments(rowLimit - cache.getIndex().size());
+            return cache;
+        });
+        return new PreparedData(allData, firstRow, rowLimit, rows, dateIndex, textIndex);
+    }
+    
+    private void showData(PreparedData prepared) {
+        if (prepared != null && prepared.dataset == dataset && prepared.firstRow == rowLimit) {
+            showAppendedRows(prepared);
+            return;
+        }
+        
+        cancelFiltering();
+        filtered = false;
+        if (prepared == null) {
+            dataset = null;
+            currentRows = null;
+            rowLimit = 0;
+            dateIndex = null;
+            textIndex = null;
+            tableModel.updateData(null, null);
             updateRecordCount(0);
             return;
         }
         
-        // Filter to only include records with valid email addresses
-        currentData = allData.stream()
-            .filter(record -> record.getEmail() != null && 
-                            !record.getEmail().trim().isEmpty())
-            .collect(Collectors.toList());
+        dataset = prepared.dataset;
+        rowLimit = prepared.rowLimit;
+        currentRows = prepared.rows;
+        dateIndex = prepared.dateIndex;
+        textIndex = prepared.textIndex;
         
-        tableModel.updateData(currentData);
-        updateRecordCount(currentData.size());
+        tableModel.updateData(dataset, currentRows.clone());
+        updateRecordCount(currentRows.length);
+    }
+    
+    // A table showing every row lists the new ones after them; query results are run again
+    private void showAppendedRows(PreparedData prepared) {
+        int shown = currentRows.length;
+        rowLimit = prepared.rowLimit;
+        currentRows = prepared.rows;
+        dateIndex = prepared.dateIndex;
+        textIndex = prepared.textIndex;
+        
+        if (filtered) {
+            startFiltering();
+        } else {
+            tableModel.appendRows(Arrays.copyOfRange(currentRows, shown, currentRows.length), currentRows.length - shown);
+            updateRecordCount(tableModel.getRowCount());
+        }
     }
     
     // Inner class for export dialog
@@ -282,7 +519,7 @@ public class EmailRecordsPanel extends JPanel {
         // Dialog size constants
         private static final int DIALOG_WIDTH = 600;
         private static final int DIALOG_HEIGHT = 500;
-
+        
         public ExportFieldsDialog(Window parent, List<SelfieDetail> data) {
             super(parent, "Select Fields to Export", ModalityType.APPLICATION_MODAL);
             this.dataToExport = removeDuplicatesByEmail(data);
@@ -515,17 +752,13 @@ public class EmailRecordsPanel extends JPanel {
         private List<SelfieDetail> removeDuplicatesByEmail(List<SelfieDetail> data) {
             if (data == null) return null;
             
-            Set<String> seenEmails = new HashSet<>();
+            LongHashSet seenEmails = new LongHashSet(data.size());
             List<SelfieDetail> uniqueRecords = new ArrayList<>();
             
             for (SelfieDetail record : data) {
                 String email = record.getEmail();
-                if (email != null && !email.trim().isEmpty()) {
-                    String normalizedEmail = email.trim().toLowerCase();
-                    if (!seenEmails.contains(normalizedEmail)) {
-                        seenEmails.add(normalizedEmail);
-                        uniqueRecords.add(record);
-                    }
+                if (!EmailKeys.isBlank(email) && seenEmails.add(EmailKeys.fingerprint(email))) {
+                    uniqueRecords.add(record);
                 }
             }
             
@@ -1,19 +1,30 @@
 package com.devdam.memzo_extracter.ui.panel;
 
+import com.devdam.memzo_extracter.model.SelfieDataset;
 import com.devdam.memzo_extracter.model.SelfieDetail;
+import com.devdam.memzo_extracter.search.SearchResultCache;
+import com.devdam.memzo_extracter.search.TrigramIndex;
+import com.devdam.memzo_extracter.service.EmailRegistry;
+import com.devdam.memzo_extracter.ui.util.DeferredView;
+import com.devdam.memzo_extracter.ui.util.PermutationRowSorter;
+import com.devdam.memzo_extracter.util.EmailKeys;
+import com.devdam.memzo_extracter.util.LongHashSet;
+import com.devdam.memzo_extracter.util.SortPermutations;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
-import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.*;
+import java.text.Collator;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 // iText imports for PDF generation
 import com.itextpdf.text.Document;
@@ -32,22 +43,27 @@ public class NewEmailsPanel extends JPanel {
     private JTable table;
     private JLabel statusLabel;
     private JTextField searchField;
-    private TableRowSorter<DefaultTableModel> sorter;
+    private PermutationRowSorter<DefaultTableModel> sorter;
+    private SearchResultCache searchResults;
     
     // Storage for new emails (emails in CSV but not in unique database)
     private List<SelfieDetail> newEmails = new ArrayList<>();
-    private Set<String> uniqueDatabaseEmails = new LinkedHashSet<>();
+    private NewEmailRows shownRows; // what the table shows, with its sort columns
+    private NewEmailSource newEmailSource = NewEmailSource.NONE; // updated on the EDT
     
-    // File path for db.csv (same as UniqueEmailsPanel)
-    private static final String DB_FILE_PATH = "db.csv";
+    public NewEmailsPanel(EmailRegistry registry) {
+        this(registry, ForkJoinPool.commonPool());
+    }
     
-    public NewEmailsPanel() {
+    /**
+     * @param executor where the table rows for a registry change are prepared; they are
+     *                 only prepared while this panel is showing
+     */
+    public NewEmailsPanel(EmailRegistry registry, Executor executor) {
+        
         setLayout(new BorderLayout(10, 10));
         setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
         
-        // Load existing unique emails from db.csv
-        loadUniqueDatabase();
-        
         // Create UI components
         createTopPanel();
         createTablePanel();
@@ -55,6 +71,11 @@ public class NewEmailsPanel extends JPanel {
         
         // Initialize table
         refreshTable();
+        DeferredView<NewEmailSource, NewEmailRows> view = new DeferredView<>(this, executor, this::prepareRows, this::showRows);
+        registry.addListener(delta -> SwingUtilities.invokeLater(() -> {
+            newEmailSource = newEmailSource.with(delta);
+            view.update(newEmailSource);
+        }));
     }
     
     private void createTopPanel() {
@@ -81,7 +102,7 @@ public class NewEmailsPanel extends JPanel {
         JButton clearButton = new JButton("Clear");
         clearButton.addActionListener(e -> {
             searchField.setText("");
-            sorter.setRowFilter(null);
+            sorter.setMatchingRows(null);
         });
         
         searchPanel.add(searchLabel);
@@ -106,8 +127,7 @@ public class NewEmailsPanel extends JPanel {
         refreshButton.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
         refreshButton.setPreferredSize(new Dimension(100, 30));
         refreshButton.addActionListener(e -> {
-            loadUniqueDatabase();
-            // Data will be updated when CSV is uploaded through the updateNewEmails method
+            // Data is updated through registry deltas when a CSV is uploaded
             refreshTable();
         });
         
@@ -174,8 +194,13 @@ public class NewEmailsPanel extends JPanel {
             }
         });
         
-        // Initialize sorter for search functionality
-        sorter = new TableRowSorter<>(tableModel);
+        // Initialize sorter for search functionality; column orders are computed off the EDT
+        // from the columns prepared with the rows
+        Collator collator = Collator.getInstance();
+        sorter = new PermutationRowSorter<>(tableModel, column -> {
+            NewEmailRows rows = shownRows;
+            return () -> rows.ascendingOrder(column, collator);
+        });
         table.setRowSorter(sorter);
         
         JScrollPane scrollPane = new JScrollPane(table);
@@ -206,60 +231,105 @@ public class NewEmailsPanel extends JPanel {
         add(bottomPanel, BorderLayout.SOUTH);
     }
     
-    private void loadUniqueDatabase() {
-        uniqueDatabaseEmails.clear();
-        
-        File dbFile = new File(DB_FILE_PATH);
-        if (!dbFile.exists()) {
-            return; // No existing database file
+    private String escapeCsv(String value) {
+        if (value == null) return "";
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            value = value.replace("\"", "\"\""); // Escape quotes
+            return "\"" + value + "\"";
+        }
+        return value;
+    }
+    
+    private void refreshTable() {
+        showRows(shownRows != null ? shownRows : rowsOf(newEmails, new long[0]));
+    }
+    
+    /**
+     * Table rows, search index and records for one set of new emails, built off the EDT.
+     * The date and number columns are also kept as longs for sorting.
+     */
+    private static final class NewEmailRows {
+        final List<SelfieDetail> records;
+        final List<Vector<Object>> rows;
+        final TrigramIndex searchIndex;
+        final long[] dateMinutes;
+        final long[] photos;
+        final long[] downloads;
+        
+        NewEmailRows(List<SelfieDetail> records, List<Vector<Object>> rows, TrigramIndex searchIndex,
+                     long[] dateMinutes, long[] photos, long[] downloads) {
+            this.records = records;
+            this.rows = rows;
+            this.searchIndex = searchIndex;
+            this.dateMinutes = dateMinutes;
+            this.photos = photos;
+            this.downloads = downloads;
         }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(dbFile))) {
-            String line;
-            boolean isHeader = true;
-            
-            while ((line = reader.readLine()) != null) {
-                if (isHeader) {
-                    isHeader = false;
-                    continue; // Skip header
-                }
-                
-                String[] parts = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)"); // CSV parsing with quoted fields
-                if (parts.length >= 2) {
-                    String email = unescapeCsv(parts[1]);
-                    if (email != null && !email.trim().isEmpty() && email.contains("@")) {
-                        uniqueDatabaseEmails.add(email.toLowerCase());
+        // Runs in the background; the rows are never changed once prepared
+        int[] ascendingOrder(int column, Collator collator) {
+            switch (column) {
+                case 3: // Date
+                    return SortPermutations.byLong(dateMinutes);
+                case 4: // Photos
+                    return SortPermutations.byLong(photos);
+                case 5: // Downloads
+                    return SortPermutations.byLong(downloads);
+                default:
+                    String[] text = new String[rows.size()];
+                    for (int row = 0; row < text.length; row++) {
+                        text[row] = (String) rows.get(row).get(column);
                     }
-                }
+                    return SortPermutations.byText(text, collator);
             }
-        } catch (IOException e) {
-            System.err.println("Error loading unique database file: " + e.getMessage());
         }
     }
     
-    private String unescapeCsv(String value) {
-        if (value == null) return "";
-        value = value.trim();
-        if (value.startsWith("\"") && value.endsWith("\"")) {
-            value = value.substring(1, value.length() - 1);
-            value = value.replace("\"\"", "\""); // Unescape quotes
+    /**
+     * The rows of the last merged dataset whose emails were not in the unique database
+     * before they were merged, which are exactly the rows the registry added for it. Rows
+     * appended to the dataset and merged later add to them.
+     */
+    private static final class NewEmailSource {
+        static final NewEmailSource NONE = new NewEmailSource(null, new int[0]);
+        
+        final SelfieDataset dataset;
+        final int[] rows;
+        
+        NewEmailSource(SelfieDataset dataset, int[] rows) {
+            this.dataset = dataset;
+            this.rows = rows;
+        }
+        
+        NewEmailSource with(EmailRegistry.Delta delta) {
+            int[] added = delta.getSourceRows();
+            if (delta.getFirstRow() == 0 || delta.getSource() != dataset) {
+                return new NewEmailSource(delta.getSource(), added);
+            }
+            int[] all = Arrays.copyOf(rows, rows.length + added.length);
+            System.arraycopy(added, 0, all, rows.length, added.length);
+            return new NewEmailSource(dataset, all);
         }
-        return value;
     }
     
-    private String escapeCsv(String value) {
-        if (value == null) return "";
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            value = value.replace("\"", "\"\""); // Escape quotes
-            return "\"" + value + "\"";
+    private NewEmailRows prepareRows(NewEmailSource source) {
+        List<SelfieDetail> records = new ArrayList<>();
+        long[] dateMinutes = new long[source.dataset != null ? source.rows.length : 0];
+        if (source.dataset != null) {
+            for (int row : source.rows) {
+                dateMinutes[records.size()] = source.dataset.getDateMinutes(row);
+                records.add(source.dataset.getRow(row));
+            }
         }
-        return value;
+        return rowsOf(records, dateMinutes);
     }
     
-    private void refreshTable() {
-        tableModel.setRowCount(0); // Clear existing rows
-        
-        for (SelfieDetail record : newEmails) {
+    // The dates come from the dataset, which parsed them at ingest
+    private NewEmailRows rowsOf(List<SelfieDetail> records, long[] dateMinutes) {
+        List<Vector<Object>> rows = new ArrayList<>(records.size());
+        long[] photoCounts = new long[records.size()];
+        long[] downloadCounts = new long[records.size()];
+        for (SelfieDetail record : records) {
             String name = toTitleCase(record.getName());
             String email = record.getEmail();
             String contact = record.getContact() != null ? record.getContact() : "";
@@ -267,9 +337,39 @@ public class NewEmailsPanel extends JPanel {
             String photos = record.getPhotos() != null ? record.getPhotos().toString() : "0";
             String downloads = record.getDownloadRequests() != null ? record.getDownloadRequests() : "0";
             
-            tableModel.addRow(new Object[]{name, email, contact, date, photos, downloads});
+            photoCounts[rows.size()] = record.getPhotos() != null ? record.getPhotos() : 0;
+            downloadCounts[rows.size()] = parseCount(downloads);
+            rows.add(new Vector<>(Arrays.asList(name, email, contact, date, photos, downloads)));
         }
         
+        // Searches the name, email and contact columns as shown in the table
+        TrigramIndex searchIndex = TrigramIndex.build(rows.size(), 3,
+                (row, column) -> (String) rows.get(row).get(column));
+        return new NewEmailRows(records, rows, searchIndex, dateMinutes, photoCounts, downloadCounts);
+    }
+    
+    // Counts that are not whole numbers sort first
+    private static long parseCount(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+    
+    // Swaps the prepared rows into the table in one change
+    private void showRows(NewEmailRows prepared) {
+        newEmails = prepared.records;
+        shownRows = prepared;
+        
+        @SuppressWarnings("rawtypes")
+        Vector<Vector> data = tableModel.getDataVector();
+        data.clear();
+        data.addAll(prepared.rows);
+        tableModel.fireTableDataChanged();
+        searchResults = new SearchResultCache(prepared.searchIndex);
+        filterTable();
+        
         statusLabel.setText("Ready - " + newEmails.size() + " new emails found");
     }
     
@@ -297,38 +397,12 @@ public class NewEmailsPanel extends JPanel {
     private void filterTable() {
         String searchText = searchField.getText().trim();
         if (searchText.isEmpty()) {
-            sorter.setRowFilter(null);
+            sorter.setMatchingRows(null);
         } else {
-            sorter.setRowFilter(RowFilter.regexFilter("(?i)" + searchText));
+            sorter.setMatchingRows(searchResults.search(searchText));
         }
     }
     
-    public void updateNewEmails(List<SelfieDetail> csvData) {
-        newEmails.clear();
-        
-        if (csvData == null || csvData.isEmpty()) {
-            refreshTable();
-            return;
-        }
-        
-        Set<String> processedEmails = new HashSet<>(); // To avoid duplicates in new emails list
-        
-        for (SelfieDetail record : csvData) {
-            String email = record.getEmail();
-            if (email != null && !email.trim().isEmpty() && email.contains("@")) {
-                String emailKey = email.toLowerCase();
-                
-                // Check if this email is NOT in the unique database and hasn't been processed yet
-                if (!uniqueDatabaseEmails.contains(emailKey) && !processedEmails.contains(emailKey)) {
-                    newEmails.add(record);
-                    processedEmails.add(emailKey);
-                }
-            }
-        }
-        
-        refreshTable();
-    }
-    
     private void exportToCsv(ActionEvent e) {
         if (newEmails.isEmpty()) {
             JOptionPane.showMessageDialog(this, 
@@ -383,13 +457,11 @@ public class NewEmailsPanel extends JPanel {
             writer.println("Name,Email,Contact,Date,Photos,Downloads");
             
             // Write data - ensure name is first, emails are unique, and names are in title case
-            Set<String> exportedEmails = new HashSet<>();
+            LongHashSet exportedEmails = new LongHashSet(newEmails.size());
             
             for (SelfieDetail record : newEmails) {
                 String email = record.getEmail();
-                if (email != null && !email.trim().isEmpty() && !exportedEmails.contains(email.toLowerCase())) {
-                    exportedEmails.add(email.toLowerCase());
-                    
+                if (!EmailKeys.isBlank(email) && exportedEmails.add(EmailKeys.fingerprint(email))) {
                     String name = toTitleCase(record.getName());
                     String contact = record.getContact() != null ? record.getContact() : "";
                     String date = record.getDate() != null ? record.getDate() : "";
@@ -454,13 +526,11 @@ public class NewEmailsPanel extends JPanel {
             }
             
             // Add data - ensure name is first, emails are unique, and names are in title case
-            Set<String> exportedEmails = new HashSet<>();
+            LongHashSet exportedEmails = new LongHashSet(newEmails.size());
             
             for (SelfieDetail record : newEmails) {
                 String email = record.getEmail();
-                if (email != null && !email.trim().isEmpty() && !exportedEmails.contains(email.toLowerCase())) {
-                    exportedEmails.add(email.toLowerCase());
-                    
+                if (!EmailKeys.isBlank(email) && exportedEmails.add(EmailKeys.fingerprint(email))) {
                     String name = toTitleCase(record.getName());
                     String contact = record.getContact() != null ? record.getContact() : "";
                     String date = record.getDate() != null ? record.getDate() : "";
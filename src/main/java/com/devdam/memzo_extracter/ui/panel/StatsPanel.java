@@ -1,7 +1,10 @@
 package com.devdam.memzo_extracter.ui.panel;
 
-import com.devdam.memzo_extracter.model.SelfieDetail;
+import com.devdam.memzo_extracter.model.DatasetStatistics;
+import com.devdam.memzo_extracter.model.SelfieDataset;
 import com.devdam.memzo_extracter.service.CsvService;
+import com.devdam.memzo_extracter.ui.util.DatasetChangeBus;
+import com.devdam.memzo_extracter.ui.util.DeferredView;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
@@ -12,10 +15,12 @@ import org.jfree.data.general.DefaultPieDataset;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.List;
 
 public class StatsPanel extends JPanel {
     
+    private static final String EMPTY_CARD = "empty";
+    private static final String CHARTS_CARD = "charts";
+    
     private final CsvService csvService;
     private final JLabel totalRecordsLabel;
     private final JLabel completeRegistrationsLabel;
@@ -24,6 +29,17 @@ public class StatsPanel extends JPanel {
     private final JLabel averagePhotosLabel;
     private final JLabel completionRateLabel;
     private final JPanel chartsPanel;
+    private final CardLayout chartsLayout = new CardLayout();
+    
+    // Charts are built once and refreshed by updating their datasets in place
+    private final DefaultPieDataset<String> completenessDataset = new DefaultPieDataset<>();
+    private final DefaultCategoryDataset photosDataset = new DefaultCategoryDataset();
+    
+    // Statistics of the dataset last shown, valid for statsVersion
+    private SelfieDataset statsSource;
+    private long statsVersion;
+    private DatasetStatistics stats;
+    private DeferredView<SelfieDataset, DatasetStatistics> view; // null until subscribed to a bus
     
     public StatsPanel(CsvService csvService) {
         this.csvService = csvService;
@@ -36,10 +52,12 @@ public class StatsPanel extends JPanel {
         add(statsCardsPanel, BorderLayout.NORTH);
         
         // Create charts panel
-        chartsPanel = new JPanel(new GridLayout(1, 2, 10, 10));
+        chartsPanel = new JPanel(chartsLayout);
         chartsPanel.setBorder(BorderFactory.createTitledBorder(
                 BorderFactory.createEtchedBorder(), "Data Visualization", 
                 0, 0, new Font(Font.SANS_SERIF, Font.BOLD, 14)));
+        chartsPanel.add(createEmptyChartsCard(), EMPTY_CARD);
+        chartsPanel.add(createChartsCard(), CHARTS_CARD);
         add(chartsPanel, BorderLayout.CENTER);
         
         // Initialize labels
@@ -117,8 +135,54 @@ public class StatsPanel extends JPanel {
         return card;
     }
     
-    public void updateStats(List<SelfieDetail> data) {
+    /**
+     * Follows the datasets published on the bus. Statistics are then computed off the
+     * EDT, and only while this panel is showing.
+     */
+    public void subscribe(DatasetChangeBus bus) {
+        view = bus.subscribe(this, this::computeStatistics, this::showStatistics);
+    }
+    
+    /**
+     * Shows statistics for the given dataset; once subscribed they are computed in the
+     * background. Figures are cached against the dataset's version, so calling this again
+     * for unchanged data costs nothing and rows appended since the last call are counted
+     * incrementally.
+     */
+    public void updateStats(SelfieDataset data) {
+        if (view != null) {
+            view.update(data);
+        } else {
+            showStatistics(computeStatistics(data));
+        }
+    }
+    
+    // Off the EDT once subscribed, but never while showStatistics runs
+    private DatasetStatistics computeStatistics(SelfieDataset data) {
         if (data == null || data.isEmpty()) {
+            statsSource = null;
+            stats = null;
+            return null;
+        }
+        
+        long version = data.getVersion();
+        if (data == statsSource && version == statsVersion) {
+            return stats;
+        }
+        
+        // Calculate statistics; datasets only grow, so the same one just needs its new rows
+        if (data == statsSource) {
+            stats.acceptRows(data, stats.getTotalRecords(), data.size());
+        } else {
+            stats = csvService.getStatistics(data);
+        }
+        statsSource = data;
+        statsVersion = version;
+        return stats;
+    }
+    
+    private void showStatistics(DatasetStatistics stats) {
+        if (stats == null) {
             // Reset all stats to zero
             totalRecordsLabel.setText("0");
             completeRegistrationsLabel.setText("0");
@@ -128,64 +192,60 @@ public class StatsPanel extends JPanel {
             completionRateLabel.setText("0%");
             
             // Clear charts
-            chartsPanel.removeAll();
-            chartsPanel.add(createEmptyChartPanel("No data available"));
-            chartsPanel.add(createEmptyChartPanel("Load CSV to see charts"));
-            chartsPanel.revalidate();
-            chartsPanel.repaint();
+            chartsLayout.show(chartsPanel, EMPTY_CARD);
             return;
         }
         
-        // Calculate statistics
-        int totalRecords = csvService.getTotalRecords(data);
-        int completeRegistrations = csvService.getCompleteRegistrations(data);
-        int emailRecords = csvService.getRecordsWithEmail(data);
-        int photosRecords = csvService.getRecordsWithPhotos(data);
-        double averagePhotos = csvService.getAveragePhotos(data);
-        double completionRate = totalRecords > 0 ? (double) completeRegistrations / totalRecords * 100 : 0;
-        
         // Update labels
-        totalRecordsLabel.setText(String.valueOf(totalRecords));
-        completeRegistrationsLabel.setText(String.valueOf(completeRegistrations));
-        emailRecordsLabel.setText(String.valueOf(emailRecords));
-        photosRecordsLabel.setText(String.valueOf(photosRecords));
-        averagePhotosLabel.setText(String.format("%.1f", averagePhotos));
-        completionRateLabel.setText(String.format("%.1f%%", completionRate));
+        totalRecordsLabel.setText(String.valueOf(stats.getTotalRecords()));
+        completeRegistrationsLabel.setText(String.valueOf(stats.getCompleteRegistrations()));
+        emailRecordsLabel.setText(String.valueOf(stats.getRecordsWithEmail()));
+        photosRecordsLabel.setText(String.valueOf(stats.getRecordsWithPhotos()));
+        averagePhotosLabel.setText(String.format("%.1f", stats.getAveragePhotos()));
+        completionRateLabel.setText(String.format("%.1f%%", stats.getCompletionRate()));
         
         // Update charts
-        updateCharts(data, totalRecords, completeRegistrations, emailRecords, photosRecords);
+        updateCharts(stats);
+        chartsLayout.show(chartsPanel, CHARTS_CARD);
+    }
+    
+    private void updateCharts(DatasetStatistics stats) {
+        completenessDataset.setValue("Complete Registration", stats.getCompleteRegistrations());
+        completenessDataset.setValue("With Email Only", stats.getRecordsWithEmail() - stats.getCompleteRegistrations());
+        completenessDataset.setValue("Incomplete", stats.getTotalRecords() - stats.getRecordsWithEmail());
+        
+        photosDataset.setValue(stats.getZeroPhotos(), "Records", "0 Photos");
+        photosDataset.setValue(stats.getOnePhoto(), "Records", "1 Photo");
+        photosDataset.setValue(stats.getMultiplePhotos(), "Records", "2+ Photos");
+    }
+    
+    private JPanel createEmptyChartsCard() {
+        JPanel card = new JPanel(new GridLayout(1, 2, 10, 10));
+        card.add(createEmptyChartPanel("No data available"));
+        card.add(createEmptyChartPanel("Load CSV to see charts"));
+        return card;
     }
     
-    private void updateCharts(List<SelfieDetail> data, int totalRecords, int completeRegistrations, 
-                            int emailRecords, int photosRecords) {
-        chartsPanel.removeAll();
+    private JPanel createChartsCard() {
+        JPanel card = new JPanel(new GridLayout(1, 2, 10, 10));
         
         // Create pie chart for data completeness
-        JFreeChart pieChart = createDataCompletenessChart(totalRecords, completeRegistrations, emailRecords);
-        ChartPanel pieChartPanel = new ChartPanel(pieChart);
+        ChartPanel pieChartPanel = new ChartPanel(createDataCompletenessChart());
         pieChartPanel.setPreferredSize(new Dimension(400, 300));
         
         // Create bar chart for photos distribution
-        JFreeChart barChart = createPhotosDistributionChart(data);
-        ChartPanel barChartPanel = new ChartPanel(barChart);
+        ChartPanel barChartPanel = new ChartPanel(createPhotosDistributionChart());
         barChartPanel.setPreferredSize(new Dimension(400, 300));
         
-        chartsPanel.add(pieChartPanel);
-        chartsPanel.add(barChartPanel);
-        chartsPanel.revalidate();
-        chartsPanel.repaint();
+        card.add(pieChartPanel);
+        card.add(barChartPanel);
+        return card;
     }
     
-    private JFreeChart createDataCompletenessChart(int totalRecords, int completeRegistrations, int emailRecords) {
-        DefaultPieDataset<String> dataset = new DefaultPieDataset<>();
-        
-        dataset.setValue("Complete Registration", completeRegistrations);
-        dataset.setValue("With Email Only", emailRecords - completeRegistrations);
-        dataset.setValue("Incomplete", totalRecords - emailRecords);
-        
+    private JFreeChart createDataCompletenessChart() {
         JFreeChart chart = ChartFactory.createPieChart(
                 "Data Completeness",
-                dataset,
+                completenessDataset,
                 true,
                 true,
                 false
@@ -203,34 +263,12 @@ public class StatsPanel extends JPanel {
         return chart;
     }
     
-    private JFreeChart createPhotosDistributionChart(List<SelfieDetail> data) {
-        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
-        
-        // Count photos distribution
-        int zeroPhotos = 0;
-        int onePhoto = 0;
-        int multiplePhotos = 0;
-        
-        for (SelfieDetail detail : data) {
-            Integer photos = detail.getPhotos();
-            if (photos == null || photos == 0) {
-                zeroPhotos++;
-            } else if (photos == 1) {
-                onePhoto++;
-            } else {
-                multiplePhotos++;
-            }
-        }
-        
-        dataset.addValue(zeroPhotos, "Records", "0 Photos");
-        dataset.addValue(onePhoto, "Records", "1 Photo");
-        dataset.addValue(multiplePhotos, "Records", "2+ Photos");
-        
+    private JFreeChart createPhotosDistributionChart() {
         JFreeChart chart = ChartFactory.createBarChart(
                 "Photos Distribution",
                 "Photo Count",
                 "Number of Records",
-                dataset,
+                photosDataset,
                 PlotOrientation.VERTICAL,
                 true,
                 true,
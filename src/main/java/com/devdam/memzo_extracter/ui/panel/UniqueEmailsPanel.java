@@ -2,22 +2,28 @@ package com.devdam.memzo_extracter.ui.panel;
 
 import com.devdam.memzo_extracter.model.SelfieDetail;
 import com.devdam.memzo_extracter.service.CsvService;
+import com.devdam.memzo_extracter.search.SearchResultCache;
+import com.devdam.memzo_extracter.search.TrigramIndex;
+import com.devdam.memzo_extracter.service.EmailRegistry;
+import com.devdam.memzo_extracter.ui.model.UniqueEmailsTableModel;
 import com.devdam.memzo_extracter.ui.util.BlurredModalOverlay;
+import com.devdam.memzo_extracter.ui.util.PermutationRowSorter;
+import com.devdam.memzo_extracter.util.SortPermutations;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
-import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.*;
+import java.text.Collator;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 // iText imports for PDF generation
 import com.itextpdf.text.Document;
@@ -33,37 +39,35 @@ import com.itextpdf.text.pdf.PdfWriter;
 public class UniqueEmailsPanel extends JPanel {
     
     private final CsvService csvService;
-    private DefaultTableModel tableModel;
+    private UniqueEmailsTableModel tableModel;
     private JTable table;
     private JLabel statusLabel;
     private JTextField searchField;
-    private TableRowSorter<DefaultTableModel> sorter;
+    private PermutationRowSorter<UniqueEmailsTableModel> sorter;
+    private SearchResultCache searchResults; // built on the first search; forgets its results when the index grows
+    private boolean indexing; // whether the search index is being built
+    private boolean loaded; // whether the table shows the registry; until then it is empty
     private JButton saveButton;
     private JLabel lastSavedLabel;
     
-    // In-memory storage for unique emails
-    private Set<String> uniqueEmails = new LinkedHashSet<>();
-    private Map<String, SelfieDetail> emailToRecordMap = new HashMap<>();
+    // Shared unique email database; the table follows it through change deltas
+    private final EmailRegistry registry;
     
-    // File path for db.csv
-    private static final String DB_FILE_PATH = "db.csv";
-    
-    public UniqueEmailsPanel(CsvService csvService) {
+    public UniqueEmailsPanel(CsvService csvService, EmailRegistry registry) {
         this.csvService = csvService;
+        this.registry = registry;
         
         setLayout(new BorderLayout(10, 10));
         setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
         
-        // Load existing data from db.csv on startup
-        loadDatabaseFile();
-        
         // Create UI components
         createTopPanel();
         createTablePanel();
         createBottomPanel();
         
         // Initialize table with current data
-        refreshTable();
+        loadRecords();
+        registry.addListener(delta -> SwingUtilities.invokeLater(() -> onRegistryChanged(delta)));
     }
     
     private void createTopPanel() {
@@ -90,7 +94,7 @@ public class UniqueEmailsPanel extends JPanel {
         JButton clearButton = new JButton("Clear");
         clearButton.addActionListener(e -> {
             searchField.setText("");
-            sorter.setRowFilter(null);
+            sorter.setMatchingRows(null);
         });
         
         searchPanel.add(searchLabel);
@@ -131,17 +135,8 @@ public class UniqueEmailsPanel extends JPanel {
     }
     
     private void createTablePanel() {
-        // Create table model
-        tableModel = new DefaultTableModel() {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false; // Make table read-only
-            }
-        };
-        
-        tableModel.setColumnIdentifiers(new String[]{
-            "Name", "Email", "Contact", "Date Added", "Source"
-        });
+        // Create table model; read-only, with cells formatted as they are painted
+        tableModel = new UniqueEmailsTableModel();
         
         // Create table
         table = new JTable(tableModel);
@@ -180,8 +175,12 @@ public class UniqueEmailsPanel extends JPanel {
             }
         });
         
-        // Initialize sorter for search functionality
-        sorter = new TableRowSorter<>(tableModel);
+        // Initialize sorter for search functionality; column orders are computed off the EDT
+        Collator collator = Collator.getInstance();
+        sorter = new PermutationRowSorter<>(tableModel, column -> {
+            List<SelfieDetail> records = tableModel.getRecords();
+            return () -> ascendingOrder(records, column, collator);
+        });
         table.setRowSorter(sorter);
         
         JScrollPane scrollPane = new JScrollPane(table);
@@ -195,7 +194,7 @@ public class UniqueEmailsPanel extends JPanel {
         // Status and info panel
         JPanel infoPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         
-        statusLabel = new JLabel("Ready - " + uniqueEmails.size() + " unique emails loaded");
+        statusLabel = new JLabel("Loading " + registry.size() + " unique emails...");
         statusLabel.setFont(new Font(Font.SANS_SERIF, Font.ITALIC, 12));
         
         lastSavedLabel = new JLabel("");
@@ -212,58 +211,6 @@ public class UniqueEmailsPanel extends JPanel {
         add(bottomPanel, BorderLayout.SOUTH);
     }
     
-    private void loadDatabaseFile() {
-        File dbFile = new File(DB_FILE_PATH);
-        if (!dbFile.exists()) {
-            return; // No existing database file
-        }
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(dbFile))) {
-            String line;
-            boolean isHeader = true;
-            
-            while ((line = reader.readLine()) != null) {
-                if (isHeader) {
-                    isHeader = false;
-                    continue; // Skip header
-                }
-                
-                String[] parts = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)"); // CSV parsing with quoted fields
-                if (parts.length >= 2) {
-                    String name = unescapeCsv(parts[0]);
-                    String email = unescapeCsv(parts[1]);
-                    String contact = parts.length > 2 ? unescapeCsv(parts[2]) : "";
-                    String dateAdded = parts.length > 3 ? unescapeCsv(parts[3]) : "";
-                    
-                    if (email != null && !email.trim().isEmpty() && email.contains("@")) {
-                        uniqueEmails.add(email.toLowerCase());
-                        
-                        // Create a record for this email
-                        SelfieDetail record = new SelfieDetail();
-                        record.setName(name);
-                        record.setEmail(email);
-                        record.setContact(contact);
-                        record.setDate(dateAdded);
-                        
-                        emailToRecordMap.put(email.toLowerCase(), record);
-                    }
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error loading database file: " + e.getMessage());
-        }
-    }
-    
-    private String unescapeCsv(String value) {
-        if (value == null) return "";
-        value = value.trim();
-        if (value.startsWith("\"") && value.endsWith("\"")) {
-            value = value.substring(1, value.length() - 1);
-            value = value.replace("\"\"", "\""); // Unescape quotes
-        }
-        return value;
-    }
-    
     private String escapeCsv(String value) {
         if (value == null) return "";
         if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
@@ -273,114 +220,151 @@ public class UniqueEmailsPanel extends JPanel {
         return value;
     }
     
-    private void refreshTable() {
-        tableModel.setRowCount(0); // Clear existing rows
-        
-        for (String email : uniqueEmails) {
-            SelfieDetail record = emailToRecordMap.get(email);
-            if (record != null) {
-                String name = toTitleCase(record.getName());
-                String contact = record.getContact() != null ? record.getContact() : "";
-                String dateAdded = record.getDate() != null ? record.getDate() : 
-                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
-                String source = "Database";
-                
-                tableModel.addRow(new Object[]{name, email, contact, dateAdded, source});
+    // Lists the saved records off the EDT, then shows the registry; the table stays empty until then
+    private void loadRecords() {
+        CompletableFuture.runAsync(() -> {
+            try {
+                registry.prepareSnapshot();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-        }
-        
-        statusLabel.setText("Ready - " + uniqueEmails.size() + " unique emails loaded");
+        }).whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                System.err.println("Error loading database file: " + cause.getMessage());
+                statusLabel.setText("Error loading database: " + cause.getMessage());
+                return;
+            }
+            tableModel.setRecords(registry.snapshot());
+            loaded = true;
+            filterTable();
+            
+            statusLabel.setText("Ready - " + tableModel.getRowCount() + " unique emails loaded");
+            updateFilterMetrics();
+        }));
     }
     
-    private String toTitleCase(String input) {
-        if (input == null || input.trim().isEmpty()) {
-            return input;
-        }
-        
-        String[] words = input.trim().toLowerCase().split("\\s+");
-        StringBuilder titleCase = new StringBuilder();
-        
-        for (int i = 0; i < words.length; i++) {
-            if (i > 0) {
-                titleCase.append(" ");
-            }
-            if (words[i].length() > 0) {
-                titleCase.append(Character.toUpperCase(words[i].charAt(0)));
-                if (words[i].length() > 1) {
-                    titleCase.append(words[i].substring(1));
-                }
+    private void updateFilterMetrics() {
+        EmailRegistry.FilterMetrics metrics = registry.getFilterMetrics();
+        statusLabel.setToolTipText(String.format(
+                "<html>Email filter: %,d KB for %,d of %,d emails<br>"
+                + "Expected false positives: %.2f%%<br>"
+                + "Observed false positives: %.2f%% (%,d of %,d lookups answered from memory)</html>",
+                metrics.getMemoryBytes() / 1024, metrics.getEntries(), metrics.getCapacity(),
+                metrics.getExpectedFalsePositiveRate() * 100,
+                metrics.getObservedFalsePositiveRate() * 100, metrics.getFilteredOut(), metrics.getLookups()));
+    }
+    
+    // Runs in the background, reading the records a page at a time
+    private static int[] ascendingOrder(List<SelfieDetail> records, int column, Collator collator) {
+        if (column == 3) {
+            long[] minutes = new long[records.size()];
+            for (int row = 0; row < minutes.length; row++) {
+                minutes[row] = UniqueEmailsTableModel.dateAddedMinutes(records.get(row));
             }
+            return SortPermutations.byLong(minutes);
         }
         
-        return titleCase.toString();
+        String[] text = new String[records.size()];
+        for (int row = 0; row < text.length; row++) {
+            text[row] = UniqueEmailsTableModel.valueOf(records.get(row), column);
+        }
+        return SortPermutations.byText(text, collator);
+    }
+    
+    private static String toTitleCase(String input) {
+        return UniqueEmailsTableModel.toTitleCase(input);
     }
     
     private void filterTable() {
         String searchText = searchField.getText().trim();
         if (searchText.isEmpty()) {
-            sorter.setRowFilter(null);
+            sorter.setMatchingRows(null);
+        } else if (searchResults == null) {
+            buildSearchIndex(); // searches again once the index is built
         } else {
-            sorter.setRowFilter(RowFilter.regexFilter("(?i)" + searchText));
+            sorter.setMatchingRows(searchResults.search(searchText));
         }
     }
     
-    public void updateFromMainData(List<SelfieDetail> newData) {
-        if (newData == null || newData.isEmpty()) {
+    /**
+     * Indexes the name, email and contact columns as shown in the table, on a background
+     * thread. Building it reads every record, so it waits for the first search rather
+     * than slowing down startup.
+     */
+    private void buildSearchIndex() {
+        if (indexing || !loaded) {
+            return;
+        }
+        indexing = true;
+        int rows = tableModel.getRowCount();
+        statusLabel.setText("Indexing " + rows + " unique emails for search...");
+        // Reads the model's current snapshot, so rows appended later can be added to the index
+        CompletableFuture.supplyAsync(() -> TrigramIndex.build(rows, 3,
+                (row, column) -> UniqueEmailsTableModel.valueOf(tableModel.getRecords().get(row), column)))
+                .whenComplete((index, error) -> SwingUtilities.invokeLater(() -> {
+                    indexing = false;
+                    if (error != null) {
+                        System.err.println("Error indexing unique emails: " + error.getMessage());
+                        statusLabel.setText("Error indexing unique emails: " + error.getMessage());
+                        return;
+                    }
+                    searchResults = new SearchResultCache(index);
+                    searchResults.addDocuments(tableModel.getRowCount() - index.size());
+                    statusLabel.setText("Ready - " + tableModel.getRowCount() + " unique emails loaded");
+                    filterTable();
+                }));
+    }
+    
+    private void onRegistryChanged(EmailRegistry.Delta delta) {
+        if (delta.isEmpty()) {
             return;
         }
         
-        int newEmailsAdded = 0;
-        String currentDateTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
-        
-        for (SelfieDetail record : newData) {
-            String email = record.getEmail();
-            if (email != null && !email.trim().isEmpty() && email.contains("@")) {
-                String emailKey = email.toLowerCase();
-                if (!uniqueEmails.contains(emailKey)) {
-                    uniqueEmails.add(emailKey);
-                    
-                    // Create a copy with current timestamp
-                    SelfieDetail dbRecord = new SelfieDetail();
-                    dbRecord.setName(record.getName());
-                    dbRecord.setEmail(email);
-                    dbRecord.setContact(record.getContact());
-                    dbRecord.setDate(currentDateTime);
-                    
-                    emailToRecordMap.put(emailKey, dbRecord);
-                    newEmailsAdded++;
-                }
+        // Only the added records are new rows; the rest of the table is unchanged. Before
+        // the table is loaded they arrive with the rest of the registry.
+        if (loaded) {
+            tableModel.appendRecords(registry.snapshot());
+            if (searchResults != null) {
+                searchResults.addDocuments(tableModel.getRowCount() - searchResults.getIndex().size());
+            }
+            if (!searchField.getText().trim().isEmpty()) {
+                filterTable();
             }
         }
         
-        if (newEmailsAdded > 0) {
-            refreshTable();
-            
-            // Auto-save new emails in background
-            final int emailsAdded = newEmailsAdded; // Make effectively final for lambda
-            SwingUtilities.invokeLater(() -> {
-                statusLabel.setText("Added " + emailsAdded + " new unique emails - Auto-saving...");
-                saveToDatabaseAsync(null);
-            });
-        }
+        // Auto-save new emails in background
+        statusLabel.setText("Added " + delta.getAdded().size() + " new unique emails - Auto-saving...");
+        updateFilterMetrics();
+        saveToDatabaseAsync(null);
     }
     
+    /**
+     * Saves pending emails in the background. Auto-saves ({@code e == null}), which follow
+     * every merge and so come every few seconds while a file is followed, only report in
+     * the status bar; saves from the button also confirm in a dialog.
+     */
     private void saveToDatabaseAsync(ActionEvent e) {
+        boolean autoSave = e == null;
         saveButton.setEnabled(false);
         statusLabel.setText("Saving to database...");
         
         CompletableFuture.runAsync(() -> {
             try {
-                saveDatabaseFile();
+                registry.save();
                 
                 SwingUtilities.invokeLater(() -> {
                     String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("MMM dd, yyyy HH:mm:ss"));
                     lastSavedLabel.setText("Last saved: " + timestamp);
-                    statusLabel.setText("Database saved successfully - " + uniqueEmails.size() + " unique emails");
+                    statusLabel.setText("Database saved successfully - " + registry.size() + " unique emails");
                     saveButton.setEnabled(true);
+                    if (autoSave) {
+                        return;
+                    }
                     
                     // Show success notification
                     BlurredModalOverlay.showMessageDialogWithBlurredOverlay(this, 
-                        "Database saved successfully!\n" + uniqueEmails.size() + " unique emails saved to " + DB_FILE_PATH,
+                        "Database saved successfully!\n" + registry.size() + " unique emails saved to " + registry.getDatabase().getSnapshotPath(),
                         "Save Success", JOptionPane.INFORMATION_MESSAGE);
                 });
                 
@@ -388,6 +372,11 @@ public class UniqueEmailsPanel extends JPanel {
                 SwingUtilities.invokeLater(() -> {
                     statusLabel.setText("Error saving database: " + ex.getMessage());
                     saveButton.setEnabled(true);
+                    if (autoSave) {
+                        // The emails stay pending for the next save
+                        System.err.println("Error auto-saving database: " + ex.getMessage());
+                        return;
+                    }
                     
                     BlurredModalOverlay.showMessageDialogWithBlurredOverlay(this, 
                         "Error saving database: " + ex.getMessage(),
@@ -397,30 +386,8 @@ public class UniqueEmailsPanel extends JPanel {
         });
     }
     
-    private void saveDatabaseFile() throws IOException {
-        File dbFile = new File(DB_FILE_PATH);
-        
-        try (FileWriter writer = new FileWriter(dbFile)) {
-            // Write header
-            writer.write("Name,Email,Contact,Date Added\n");
-            
-            // Write data
-            for (String email : uniqueEmails) {
-                SelfieDetail record = emailToRecordMap.get(email);
-                if (record != null) {
-                    writer.write(String.format("%s,%s,%s,%s\n",
-                        escapeCsv(record.getName()),
-                        escapeCsv(record.getEmail()),
-                        escapeCsv(record.getContact()),
-                        escapeCsv(record.getDate())
-                    ));
-                }
-            }
-        }
-    }
-    
     private void exportToCsv(ActionEvent e) {
-        if (uniqueEmails.isEmpty()) {
+        if (registry.size() == 0) {
             BlurredModalOverlay.showMessageDialogWithBlurredOverlay(this, 
                 "No unique emails to export. Please load some data first.", 
                 "Export Error", JOptionPane.WARNING_MESSAGE);
@@ -452,7 +419,7 @@ public class UniqueEmailsPanel extends JPanel {
     }
     
     private void exportToPdf(ActionEvent e) {
-        if (uniqueEmails.isEmpty()) {
+        if (registry.size() == 0) {
             BlurredModalOverlay.showMessageDialogWithBlurredOverlay(this, 
                 "No unique emails to export. Please load some data first.", 
                 "Export Error", JOptionPane.WARNING_MESSAGE);
@@ -489,20 +456,18 @@ public class UniqueEmailsPanel extends JPanel {
             writer.write("Name,Email,Contact\n");
             
             // Write data
-            for (String email : uniqueEmails) {
-                SelfieDetail record = emailToRecordMap.get(email);
-                if (record != null) {
-                    writer.write(String.format("%s,%s,%s\n",
-                        escapeCsv(toTitleCase(record.getName())),
-                        escapeCsv(record.getEmail()),
-                        escapeCsv(record.getContact())
-                    ));
-                }
+            for (SelfieDetail record : registry.snapshot()) {
+                writer.write(String.format("%s,%s,%s\n",
+                    escapeCsv(toTitleCase(record.getName())),
+                    escapeCsv(record.getEmail()),
+                    escapeCsv(record.getContact())
+                ));
             }
         }
     }
     
     private void exportToPdfFile(File file) throws Exception {
+        List<SelfieDetail> records = registry.snapshot();
         Document document = new Document(PageSize.A4); // Portrait for 3 columns
         PdfWriter.getInstance(document, new FileOutputStream(file));
         document.open();
@@ -522,7 +487,7 @@ public class UniqueEmailsPanel extends JPanel {
         document.add(dateInfo);
         
         // Add summary
-        Paragraph summary = new Paragraph("Total Unique Email Records: " + uniqueEmails.size(), dateFont);
+        Paragraph summary = new Paragraph("Total Unique Email Records: " + records.size(), dateFont);
         summary.setSpacingAfter(15);
         document.add(summary);
         
@@ -549,13 +514,10 @@ public class UniqueEmailsPanel extends JPanel {
         
         // Add data rows
         com.itextpdf.text.Font cellFont = new com.itextpdf.text.Font(com.itextpdf.text.Font.FontFamily.HELVETICA, 10);
-        for (String email : uniqueEmails) {
-            SelfieDetail record = emailToRecordMap.get(email);
-            if (record != null) {
-                table.addCell(new PdfPCell(new Phrase(toTitleCase(record.getName()) != null ? toTitleCase(record.getName()) : "", cellFont)));
-                table.addCell(new PdfPCell(new Phrase(record.getEmail() != null ? record.getEmail() : "", cellFont)));
-                table.addCell(new PdfPCell(new Phrase(record.getContact() != null ? record.getContact() : "", cellFont)));
-            }
+        for (SelfieDetail record : records) {
+            table.addCell(new PdfPCell(new Phrase(toTitleCase(record.getName()) != null ? toTitleCase(record.getName()) : "", cellFont)));
+            table.addCell(new PdfPCell(new Phrase(record.getEmail() != null ? record.getEmail() : "", cellFont)));
+            table.addCell(new PdfPCell(new Phrase(record.getContact() != null ? record.getContact() : "", cellFont)));
         }
         
         document.add(table);
@@ -570,10 +532,14 @@ public class UniqueEmailsPanel extends JPanel {
     }
     
     public int getUniqueEmailCount() {
-        return uniqueEmails.size();
+        return registry.size();
     }
     
     public Set<String> getUniqueEmails() {
-        return new HashSet<>(uniqueEmails);
+        Set<String> emails = new HashSet<>();
+        for (SelfieDetail record : registry.snapshot()) {
+            emails.add(record.getEmail().toLowerCase());
+        }
+        return emails;
     }
 }
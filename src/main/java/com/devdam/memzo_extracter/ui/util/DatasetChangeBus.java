@@ -0,0 +1,72 @@
+package com.devdam.memzo_extracter.ui.util;
+
+import com.devdam.memzo_extracter.model.SelfieDataset;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Hands a newly loaded dataset to every panel that shows something derived from it.
+ *
+ * Each subscriber is a {@link DeferredView}, so panels derive their views in parallel
+ * on the bus's executor, hidden panels wait until they are shown and only the final
+ * model swap runs on the EDT. Publishing and subscribing happen on the EDT.
+ */
+public final class DatasetChangeBus {
+    
+    private final Executor executor;
+    private final List<DeferredView<SelfieDataset, ?>> views = new ArrayList<>();
+    private SelfieDataset current;
+    
+    public DatasetChangeBus() {
+        this(createExecutor());
+    }
+    
+    public DatasetChangeBus(Executor executor) {
+        this.executor = executor;
+    }
+    
+    /**
+     * @return the executor views are derived on, for other work that should run beside them
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+    
+    /**
+     * Follows the published datasets with {@code derive} off the EDT and {@code apply} on
+     * it. A subscriber added after a publish starts from the current dataset.
+     */
+    public <V> DeferredView<SelfieDataset, V> subscribe(JComponent component,
+            Function<SelfieDataset, V> derive, Consumer<V> apply) {
+        DeferredView<SelfieDataset, V> view = new DeferredView<>(component, executor, derive, apply);
+        views.add(view);
+        if (current != null) {
+            view.update(current);
+        }
+        return view;
+    }
+    
+    public void publish(SelfieDataset data) {
+        current = data;
+        for (DeferredView<SelfieDataset, ?> view : views) {
+            view.update(data);
+        }
+    }
+    
+    // Daemon threads, so a view still being derived never keeps the application running
+    private static Executor createExecutor() {
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), task -> {
+            Thread thread = new Thread(task, "dataset-view-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,76 @@
+package com.devdam.memzo_extracter.ui.util;
+
+import javax.swing.*;
+import java.awt.event.HierarchyEvent;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Keeps what a component shows in step with its latest input, deriving the view on a
+ * background executor and only swapping it in on the EDT.
+ *
+ * Nothing is derived while the component is not showing, such as a panel on a hidden
+ * tab; it catches up with the latest input when it is first shown again. Inputs that
+ * arrive while a derivation runs replace one another, and only the newest is derived
+ * once the running one has been applied. Deriving and applying one view never overlap,
+ * so a component may keep state between the two, like statistics it extends as rows
+ * arrive.
+ */
+public final class DeferredView<T, V> {
+    
+    private final JComponent component;
+    private final Executor executor;
+    private final Function<? super T, ? extends V> derive;
+    private final Consumer<? super V> apply;
+    private T input;
+    private boolean stale; // input has not been derived yet
+    private boolean running;
+    
+    /**
+     * @param derive turns an input into a view; runs on the executor
+     * @param apply  shows a derived view; runs on the EDT
+     */
+    public DeferredView(JComponent component, Executor executor,
+            Function<? super T, ? extends V> derive, Consumer<? super V> apply) {
+        this.component = component;
+        this.executor = executor;
+        this.derive = derive;
+        this.apply = apply;
+        component.addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+                start();
+            }
+        });
+    }
+    
+    /**
+     * Makes {@code input} the one to show. Must be called on the EDT.
+     */
+    public void update(T input) {
+        this.input = input;
+        this.stale = true;
+        start();
+    }
+    
+    private void start() {
+        if (!stale || running || !component.isShowing()) {
+            return;
+        }
+        T next = input;
+        stale = false;
+        running = true;
+        CompletableFuture.supplyAsync(() -> derive.apply(next), executor)
+                .whenComplete((view, error) -> SwingUtilities.invokeLater(() -> {
+                    running = false;
+                    if (error != null) {
+                        System.err.println("Error updating " + component.getClass().getSimpleName()
+                                + ": " + error.getMessage());
+                    } else {
+                        apply.accept(view);
+                    }
+                    start();
+                }));
+    }
+}
@@ -0,0 +1,311 @@
+package com.devdam.memzo_extracter.ui.util;
+
+import javax.swing.*;
+import javax.swing.table.TableModel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Row sorter that sorts by one column using precomputed permutations instead of
+ * comparing cells on the EDT.
+ *
+ * The first click on a column asks its {@link ColumnOrder} for the ascending order of
+ * all model rows, which is computed on a background thread while the table keeps its
+ * current order; the header shows the new sort key straight away. Orders are kept per
+ * column until the model changes, so switching back to a column or between ascending
+ * and descending is a single pass over the permutation. Filtering is by a set of model
+ * rows, as produced by a search, rather than a {@link RowFilter}.
+ *
+ * Model changes while sorted leave existing rows where they are, append new rows at
+ * the end and then re-sort in the background once the burst of changes is over. While
+ * rows keep arriving, as during a load, there is at most one sort per column running
+ * and each one covers every row present when it started.
+ */
+public class PermutationRowSorter<M extends TableModel> extends RowSorter<M> {
+    
+    /**
+     * Supplies the ascending order of a column. Called on the EDT, where it only captures
+     * the data to sort, such as columns extracted when the rows were prepared, rather than
+     * copying cells; the returned supplier runs on a background thread.
+     */
+    @FunctionalInterface
+    public interface ColumnOrder {
+        Supplier<int[]> ascending(int column);
+    }
+    
+    private final M model;
+    private final ColumnOrder columnOrder;
+    private final Map<Integer, int[]> ascendingOrders = new HashMap<>(); // valid for this generation only
+    private List<SortKey> sortKeys = Collections.emptyList();
+    private BitSet matchingRows; // null to show every row
+    private int modelRowCount;
+    private int[] viewToModel; // null while the view is the model, unsorted and unfiltered
+    private int viewRowCount;
+    private int[] modelToView; // built on demand from viewToModel
+    private int generation; // bumped on every model change
+    private int pendingColumn = -1;
+    private int pendingGeneration;
+    private boolean resortScheduled;
+    
+    public PermutationRowSorter(M model, ColumnOrder columnOrder) {
+        this.model = model;
+        this.columnOrder = columnOrder;
+        this.modelRowCount = model.getRowCount();
+    }
+    
+    /**
+     * Shows only the given model rows, or every row for {@code null}. The set is read
+     * on later changes too, so it must not be modified afterwards.
+     */
+    public void setMatchingRows(BitSet rows) {
+        matchingRows = rows;
+        sort(true);
+    }
+    
+    @Override
+    public M getModel() {
+        return model;
+    }
+    
+    @Override
+    public void toggleSortOrder(int column) {
+        SortOrder order = SortOrder.ASCENDING;
+        SortKey current = primaryKey();
+        if (current != null && current.getColumn() == column && current.getSortOrder() == SortOrder.ASCENDING) {
+            order = SortOrder.DESCENDING;
+        }
+        setSortKeys(List.of(new SortKey(column, order)));
+    }
+    
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        List<SortKey> newKeys = keys == null || keys.isEmpty()
+                ? Collections.emptyList() : List.of(keys.get(0));
+        if (newKeys.equals(sortKeys)) {
+            return;
+        }
+        sortKeys = newKeys;
+        fireSortOrderChanged();
+        sort(false);
+    }
+    
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return sortKeys;
+    }
+    
+    @Override
+    public int convertRowIndexToModel(int index) {
+        if (index < 0 || index >= getViewRowCount()) {
+            throw new IndexOutOfBoundsException("Invalid index");
+        }
+        return viewToModel == null ? index : viewToModel[index];
+    }
+    
+    @Override
+    public int convertRowIndexToView(int index) {
+        if (index < 0 || index >= modelRowCount) {
+            throw new IndexOutOfBoundsException("Invalid index");
+        }
+        if (viewToModel == null) {
+            return index;
+        }
+        if (modelToView == null) {
+            modelToView = new int[modelRowCount];
+            Arrays.fill(modelToView, -1);
+            for (int view = 0; view < viewRowCount; view++) {
+                modelToView[viewToModel[view]] = view;
+            }
+        }
+        return modelToView[index];
+    }
+    
+    @Override
+    public int getViewRowCount() {
+        return viewToModel == null ? modelRowCount : viewRowCount;
+    }
+    
+    @Override
+    public int getModelRowCount() {
+        return modelRowCount;
+    }
+    
+    @Override
+    public void modelStructureChanged() {
+        sortKeys = Collections.emptyList();
+        allRowsChanged();
+    }
+    
+    @Override
+    public void allRowsChanged() {
+        modelChanged();
+        applyOrder(null, false, false);
+        scheduleResort();
+    }
+    
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        int previousCount = modelRowCount;
+        modelChanged();
+        if (viewToModel == null) {
+            scheduleResort();
+            return;
+        }
+        if (firstRow != previousCount) {
+            applyOrder(null, false, false);
+        } else {
+            // Appended rows go to the end of the view until the re-sort
+            for (int row = firstRow; row <= endRow; row++) {
+                if (matchingRows == null || matchingRows.get(row)) {
+                    if (viewRowCount == viewToModel.length) {
+                        viewToModel = Arrays.copyOf(viewToModel, Math.max(16, viewRowCount * 2));
+                    }
+                    viewToModel[viewRowCount++] = row;
+                }
+            }
+            modelToView = null;
+        }
+        scheduleResort();
+    }
+    
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        modelChanged();
+        applyOrder(null, false, false);
+        scheduleResort();
+    }
+    
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        modelChanged();
+        scheduleResort();
+    }
+    
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        rowsUpdated(firstRow, endRow);
+    }
+    
+    private SortKey primaryKey() {
+        return sortKeys.isEmpty() || sortKeys.get(0).getSortOrder() == SortOrder.UNSORTED
+                ? null : sortKeys.get(0);
+    }
+    
+    private void modelChanged() {
+        modelRowCount = model.getRowCount();
+        generation++;
+        ascendingOrders.clear();
+        modelToView = null;
+    }
+    
+    // Re-sorts after the current burst of model events, once
+    private void scheduleResort() {
+        if (primaryKey() == null || resortScheduled) {
+            return;
+        }
+        resortScheduled = true;
+        SwingUtilities.invokeLater(() -> {
+            resortScheduled = false;
+            sort(false);
+        });
+    }
+    
+    /**
+     * Shows the current sort order, or starts computing it. Until it is ready the view
+     * keeps its order, except that {@code refilter} applies a new row set right away.
+     */
+    private void sort(boolean refilter) {
+        SortKey key = primaryKey();
+        if (key == null) {
+            applyOrder(null, false, true);
+            return;
+        }
+        int column = key.getColumn();
+        int[] ascending = ascendingOrders.get(column);
+        if (ascending != null) {
+            applyOrder(ascending, key.getSortOrder() == SortOrder.DESCENDING, true);
+            return;
+        }
+        if (refilter) {
+            // Filter now; the order follows when it is ready
+            applyOrder(null, false, true);
+        }
+        if (pendingColumn == column) {
+            return; // one sort per column at a time; it starts over if the model moved on
+        }
+        
+        int requested = generation;
+        pendingColumn = column;
+        pendingGeneration = requested;
+        Supplier<int[]> task = columnOrder.ascending(column);
+        CompletableFuture.supplyAsync(task).whenComplete((order, error) -> SwingUtilities.invokeLater(() -> {
+            if (pendingColumn == column && pendingGeneration == requested) {
+                pendingColumn = -1;
+            }
+            if (error != null) {
+                System.err.println("Error sorting column " + column + ": " + error.getMessage());
+                return;
+            }
+            if (requested == generation) {
+                if (order.length != modelRowCount) {
+                    return; // the column order did not cover the model
+                }
+                ascendingOrders.put(column, order);
+            }
+            SortKey current = primaryKey();
+            if (current != null && current.getColumn() == column) {
+                sort(false); // shows the order, or sorts again if rows changed meanwhile
+            }
+        }));
+    }
+    
+    /**
+     * Rebuilds the view from an ascending order, or from model order for {@code null},
+     * keeping only matching rows.
+     */
+    private void applyOrder(int[] ascending, boolean descending, boolean notify) {
+        int[] previous = notify ? currentViewToModel() : null;
+        int count = modelRowCount;
+        if (ascending == null && matchingRows == null) {
+            viewToModel = null;
+            viewRowCount = count;
+        } else {
+            int[] rows = new int[ascending == null ? matchingRows.cardinality() : count];
+            int size = 0;
+            if (ascending == null) {
+                for (int row = matchingRows.nextSetBit(0); row >= 0 && row < count; row = matchingRows.nextSetBit(row + 1)) {
+                    rows[size++] = row;
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    int row = ascending[descending ? count - 1 - i : i];
+                    if (matchingRows == null || matchingRows.get(row)) {
+                        rows[size++] = row;
+                    }
+                }
+            }
+            viewToModel = rows;
+            viewRowCount = size;
+        }
+        modelToView = null;
+        if (notify) {
+            fireRowSorterChanged(previous);
+        }
+    }
+    
+    // The current mapping as an array, so the table can carry its selection across a sort
+    private int[] currentViewToModel() {
+        if (viewToModel == null) {
+            int[] identity = new int[modelRowCount];
+            Arrays.setAll(identity, row -> row);
+            return identity;
+        }
+        return Arrays.copyOf(viewToModel, viewRowCount);
+    }
+}
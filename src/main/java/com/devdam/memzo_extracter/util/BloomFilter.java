@@ -0,0 +1,153 @@
+package com.devdam.memzo_extracter.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Bloom filter over 64-bit fingerprints such as {@link EmailKeys#fingerprint}. The
+ * fingerprint is already well mixed, so its two halves seed double hashing directly and
+ * no further hashing is done per probe.
+ *
+ * Not thread-safe for writers; callers serialize {@link #add(long)}.
+ */
+public final class BloomFilter {
+    
+    private static final int MAGIC = 0x4D5A424C; // "MZBL"
+    private static final int FORMAT = 1;
+    private static final double LN2 = Math.log(2);
+    
+    private final long[] words;
+    private final long bitCount;
+    private final int hashCount;
+    private final int capacity;
+    private int size;
+    private long setBits; // kept up to date by add, so the false positive rate costs nothing
+    
+    private BloomFilter(long[] words, int hashCount, int capacity, int size) {
+        this.words = words;
+        this.bitCount = (long) words.length * Long.SIZE;
+        this.hashCount = hashCount;
+        this.capacity = capacity;
+        this.size = size;
+        for (long word : words) {
+            setBits += Long.bitCount(word);
+        }
+    }
+    
+    /**
+     * Creates a filter whose false positive rate stays at {@code falsePositiveRate} until
+     * {@code capacity} fingerprints have been added.
+     */
+    public static BloomFilter forCapacity(int capacity, double falsePositiveRate) {
+        if (capacity <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("capacity=" + capacity + ", falsePositiveRate=" + falsePositiveRate);
+        }
+        double bits = -capacity * Math.log(falsePositiveRate) / (LN2 * LN2);
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (long) Math.ceil(bits / Long.SIZE)));
+        int hashCount = (int) Math.max(1, Math.round((double) wordCount * Long.SIZE / capacity * LN2));
+        return new BloomFilter(new long[wordCount], hashCount, capacity, 0);
+    }
+    
+    public void add(long fingerprint) {
+        long hash = fingerprint;
+        long step = (fingerprint >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((words[word] & mask) == 0) {
+                words[word] |= mask;
+                setBits++;
+            }
+            hash += step;
+        }
+        size++;
+    }
+    
+    /**
+     * @return {@code false} if the fingerprint was definitely never added
+     */
+    public boolean mightContain(long fingerprint) {
+        long hash = fingerprint;
+        long step = (fingerprint >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash, bitCount);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+            hash += step;
+        }
+        return true;
+    }
+    
+    /**
+     * @return the number of fingerprints added, counting repeats
+     */
+    public int size() {
+        return size;
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    public boolean isOverCapacity() {
+        return size > capacity;
+    }
+    
+    public long getBitCount() {
+        return bitCount;
+    }
+    
+    public int getHashCount() {
+        return hashCount;
+    }
+    
+    public long getMemoryBytes() {
+        return (long) words.length * Long.BYTES;
+    }
+    
+    /**
+     * False positive rate implied by the bits actually set, which also accounts for
+     * repeated adds.
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow((double) setBits / bitCount, hashCount);
+    }
+    
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeInt(capacity);
+        out.writeInt(hashCount);
+        out.writeInt(size);
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+    
+    /**
+     * Reads a filter written by {@link #writeTo(DataOutput)}.
+     *
+     * @throws IOException if the data is not a filter in this format
+     */
+    public static BloomFilter readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+            throw new IOException("Not a Bloom filter");
+        }
+        int capacity = in.readInt();
+        int hashCount = in.readInt();
+        int size = in.readInt();
+        int wordCount = in.readInt();
+        if (capacity <= 0 || hashCount <= 0 || size < 0 || wordCount <= 0 || wordCount > Integer.MAX_VALUE - 8) {
+            throw new IOException("Corrupt Bloom filter header");
+        }
+        long[] words = new long[wordCount];
+        for (int i = 0; i < wordCount; i++) {
+            words[i] = in.readLong();
+        }
+        return new BloomFilter(words, hashCount, capacity, size);
+    }
+}
@@ -0,0 +1,101 @@
+package com.devdam.memzo_extracter.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Normalized identity of an email address, used wherever emails are deduplicated or
+ * looked up. Two addresses are the same key when they are equal after trimming and
+ * lower-casing.
+ *
+ * Keys are 64-bit fingerprints computed straight from the characters, so normalizing an
+ * address allocates nothing; collect them in a {@link LongHashSet}. With 64 bits, ten
+ * million distinct addresses collide with a probability of about three in a million.
+ */
+public final class EmailKeys {
+    
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    private EmailKeys() {
+    }
+    
+    /**
+     * 64-bit hash of the normalized address, computed without building the normalized
+     * string. Never returns 0, so callers can use 0 to mark an empty slot.
+     */
+    public static long fingerprint(CharSequence email) {
+        int start = 0;
+        int end = email.length();
+        while (start < end && email.charAt(start) <= ' ') start++;
+        while (end > start && email.charAt(end - 1) <= ' ') end--;
+        
+        long hash = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            char c = email.charAt(i);
+            if (c < 0x80) {
+                // ASCII fast path; the same result as Character.toLowerCase
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+            } else {
+                c = Character.toLowerCase(c);
+            }
+            hash ^= c;
+            hash *= FNV_PRIME;
+        }
+        hash = mix(hash);
+        return hash != 0 ? hash : 1;
+    }
+    
+    /**
+     * Same value as {@link #fingerprint(CharSequence)} for the UTF-8 encoded address in
+     * {@code utf8[from, to)}. ASCII addresses are hashed straight from the bytes; anything
+     * else is decoded first.
+     */
+    public static long fingerprint(byte[] utf8, int from, int to) {
+        long hash = FNV_OFFSET;
+        for (int i = from; i < to; i++) {
+            if (utf8[i] < 0) {
+                return fingerprint(new String(utf8, from, to - from, StandardCharsets.UTF_8));
+            }
+        }
+        while (from < to && utf8[from] <= ' ') from++;
+        while (to > from && utf8[to - 1] <= ' ') to--;
+        for (int i = from; i < to; i++) {
+            int c = utf8[i];
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            hash ^= c;
+            hash *= FNV_PRIME;
+        }
+        hash = mix(hash);
+        return hash != 0 ? hash : 1;
+    }
+    
+    /**
+     * @return whether the address is null or only whitespace, like
+     *         {@code email == null || email.trim().isEmpty()} without the copy
+     */
+    public static boolean isBlank(CharSequence email) {
+        if (email == null) {
+            return true;
+        }
+        for (int i = 0, length = email.length(); i < length; i++) {
+            if (email.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // MurmurHash3 finalizer, spreads FNV's weak low bits across the whole word
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe1a85a27L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,318 @@
+package com.devdam.memzo_extracter.util;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Stable ascending sort orders of a column of values, as a permutation of row indexes:
+ * {@code order[i]} is the row that sorts at position {@code i}. Equal values keep their
+ * row order.
+ *
+ * Numbers are sorted by packing value and row into one {@code long} and sorting the
+ * packed array in parallel, which needs neither comparators nor boxing. Text is turned
+ * into sort keys once, so the collator never runs inside the sort, and the keys are
+ * then sorted the same way a few bytes at a time. Plain ASCII text gets its keys from a
+ * table of the collator's weights rather than from the collator. Meant for background
+ * threads: a few million rows take around a second, still far too long for the EDT.
+ */
+public final class SortPermutations {
+    
+    private static final int SMALL_GROUP = 16; // sorted by comparing whole keys
+    
+    private SortPermutations() {
+    }
+    
+    public static int[] byInt(int[] values) {
+        long[] keys = new long[values.length];
+        for (int row = 0; row < values.length; row++) {
+            keys[row] = ((long) values[row] << 32) | row;
+        }
+        Arrays.parallelSort(keys);
+        return rowsOf(keys);
+    }
+    
+    /**
+     * Sorts longs such as epoch minutes. {@link Long#MIN_VALUE}, the usual marker for a
+     * missing value, sorts first like any other value.
+     */
+    public static int[] byLong(long[] values) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long value : values) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        if (values.length > 0 && max - min >= 0 && max - min < (1L << 31)) {
+            long[] keys = new long[values.length];
+            for (int row = 0; row < values.length; row++) {
+                keys[row] = ((values[row] - min) << 32) | row;
+            }
+            Arrays.parallelSort(keys);
+            return rowsOf(keys);
+        }
+        
+        // Values too far apart to pack; rank the distinct values first
+        long[] distinct = values.clone();
+        Arrays.parallelSort(distinct);
+        int[] ranks = new int[values.length];
+        for (int row = 0; row < values.length; row++) {
+            ranks[row] = Arrays.binarySearch(distinct, values[row]);
+        }
+        return byInt(ranks);
+    }
+    
+    /**
+     * Sorts text the way {@code collator} compares collation keys, with {@code null} first.
+     */
+    public static int[] byText(String[] values, Collator collator) {
+        byte[][] keys = AsciiWeights.keys(collator, values);
+        if (keys == null) {
+            // Collators are not thread-safe, so every worker thread gets its own copy
+            ThreadLocal<Collator> collators = ThreadLocal.withInitial(() -> (Collator) collator.clone());
+            byte[][] collationKeys = new byte[values.length][];
+            IntStream.range(0, values.length).parallel().forEach(row -> {
+                if (values[row] != null) {
+                    collationKeys[row] = collators.get().getCollationKey(values[row]).toByteArray();
+                }
+            });
+            keys = collationKeys;
+        }
+        return byKeys(keys);
+    }
+    
+    /**
+     * Sorts byte strings compared as unsigned, with {@code null} first. Rows are ranked
+     * by eight key bytes at a time with a primitive sort, most significant bytes first,
+     * and only small groups sharing a long prefix are sorted by comparing whole keys.
+     */
+    public static int[] byKeys(byte[][] keys) {
+        int[] order = new int[keys.length];
+        int size = 0;
+        for (int row = 0; row < keys.length; row++) {
+            if (keys[row] == null) {
+                order[size++] = row;
+            }
+        }
+        int nulls = size;
+        for (int row = 0; row < keys.length; row++) {
+            if (keys[row] != null) {
+                order[size++] = row;
+            }
+        }
+        sortGroup(order, nulls, size, keys, 0);
+        return order;
+    }
+    
+    // Sorts order[from, to), whose keys agree on their first offset bytes and are in row order
+    private static void sortGroup(int[] order, int from, int to, byte[][] keys, int offset) {
+        int size = to - from;
+        if (size < SMALL_GROUP) {
+            insertionSort(order, from, to, keys);
+            return;
+        }
+        
+        long[] prefixes = new long[size];
+        boolean longer = false;
+        for (int i = 0; i < size; i++) {
+            byte[] key = keys[order[from + i]];
+            prefixes[i] = prefix(key, offset);
+            longer |= key.length > offset + Long.BYTES;
+        }
+        if (!longer) {
+            // Every key ends within these bytes; the prefixes alone can't tell [x, 0] from [x]
+            Integer[] rows = new Integer[size];
+            Arrays.setAll(rows, i -> order[from + i]);
+            Arrays.sort(rows, (a, b) -> compareKeys(keys, a, b));
+            for (int i = 0; i < size; i++) {
+                order[from + i] = rows[i];
+            }
+            return;
+        }
+        
+        long[] distinct = prefixes.clone();
+        Arrays.parallelSort(distinct);
+        long[] ranked = new long[size];
+        for (int i = 0; i < size; i++) {
+            ranked[i] = ((long) Arrays.binarySearch(distinct, prefixes[i]) << 32) | order[from + i];
+        }
+        Arrays.parallelSort(ranked);
+        for (int i = 0; i < size; i++) {
+            order[from + i] = (int) ranked[i];
+        }
+        
+        for (int start = 0; start < size; ) {
+            int end = start + 1;
+            while (end < size && ranked[end] >>> 32 == ranked[start] >>> 32) {
+                end++;
+            }
+            if (end - start > 1) {
+                sortGroup(order, from + start, from + end, keys, offset + Long.BYTES);
+            }
+            start = end;
+        }
+    }
+    
+    private static void insertionSort(int[] order, int from, int to, byte[][] keys) {
+        for (int i = from + 1; i < to; i++) {
+            int row = order[i];
+            int j = i;
+            while (j > from && compareKeys(keys, order[j - 1], row) > 0) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = row;
+        }
+    }
+    
+    private static int compareKeys(byte[][] keys, int a, int b) {
+        int result = Arrays.compareUnsigned(keys[a], keys[b]);
+        return result != 0 ? result : Integer.compare(a, b);
+    }
+    
+    // Eight key bytes from offset, zero padded, biased so that signed order is unsigned order
+    private static long prefix(byte[] key, int offset) {
+        long prefix = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            int index = offset + i;
+            prefix = (prefix << 8) | (index < key.length ? key[index] & 0xFF : 0);
+        }
+        return prefix ^ Long.MIN_VALUE;
+    }
+    
+    /**
+     * The collator's weights for each ASCII character, which turn ASCII text into sort
+     * keys without the collator. Building a collation key costs microseconds per string,
+     * which dominates sorting a few million of them.
+     *
+     * A collation key is the primary weights of the characters, then the secondary ones,
+     * then the tertiary ones, skipping characters that are ignorable at a level, with a
+     * zero between levels. When every ASCII character has at most one weight per level
+     * and the weights fit in a byte, the same key can be written a byte per weight; the
+     * layout is checked against the collator's own keys for every character and for a
+     * sample of the values before it is relied on.
+     */
+    private static final class AsciiWeights {
+        private static final int LEVELS = 3;
+        private static final int SAMPLE_SIZE = 1024;
+        
+        private final byte[][] weights = new byte[LEVELS][128]; // 0 when ignorable
+        
+        /**
+         * @return the sort keys of the values, or {@code null} if a value is not ASCII or
+         *         the collator's keys do not have the expected layout
+         */
+        static byte[][] keys(Collator collator, String[] values) {
+            for (String value : values) {
+                if (value != null && !isAscii(value)) {
+                    return null;
+                }
+            }
+            AsciiWeights table = new AsciiWeights();
+            for (char c = 0; c < 128; c++) {
+                char[][] levels = split(collator.getCollationKey(String.valueOf(c)).toByteArray());
+                if (levels == null) {
+                    return null;
+                }
+                for (int level = 0; level < LEVELS; level++) {
+                    table.weights[level][c] = levels[level].length == 0 ? 0 : (byte) levels[level][0];
+                }
+            }
+            int samples = Math.min(values.length, SAMPLE_SIZE);
+            for (int i = 0; i < samples; i++) {
+                String value = values[(int) ((long) i * values.length / samples)];
+                if (value != null && !Arrays.equals(collator.getCollationKey(value).toByteArray(), widen(table.key(value)))) {
+                    return null;
+                }
+            }
+            
+            byte[][] keys = new byte[values.length][];
+            IntStream.range(0, values.length).parallel().forEach(row -> {
+                if (values[row] != null) {
+                    keys[row] = table.key(values[row]);
+                }
+            });
+            return keys;
+        }
+        
+        private byte[] key(String value) {
+            int length = LEVELS - 1;
+            for (byte[] level : weights) {
+                for (int i = 0; i < value.length(); i++) {
+                    if (level[value.charAt(i)] != 0) {
+                        length++;
+                    }
+                }
+            }
+            byte[] key = new byte[length];
+            int next = 0;
+            for (int level = 0; level < LEVELS; level++) {
+                if (level > 0) {
+                    next++; // zero between levels
+                }
+                for (int i = 0; i < value.length(); i++) {
+                    byte weight = weights[level][value.charAt(i)];
+                    if (weight != 0) {
+                        key[next++] = weight;
+                    }
+                }
+            }
+            return key;
+        }
+        
+        // Splits a key into its levels; null unless each level has at most one weight below 256
+        private static char[][] split(byte[] key) {
+            char[][] levels = new char[LEVELS][];
+            StringBuilder current = new StringBuilder();
+            int level = 0;
+            for (int i = 0; i + 1 < key.length; i += 2) {
+                char unit = (char) (((key[i] & 0xFF) << 8) | (key[i + 1] & 0xFF));
+                if (unit != 0) {
+                    current.append(unit);
+                    continue;
+                }
+                if (level == LEVELS - 1) {
+                    return null;
+                }
+                levels[level++] = current.toString().toCharArray();
+                current.setLength(0);
+            }
+            levels[level++] = current.toString().toCharArray();
+            while (level < LEVELS) {
+                levels[level++] = new char[0];
+            }
+            for (char[] weights : levels) {
+                if (weights.length > 1 || (weights.length == 1 && weights[0] > 0xFF)) {
+                    return null;
+                }
+            }
+            return levels;
+        }
+        
+        // A byte-per-weight key in the collator's two bytes per weight layout
+        private static byte[] widen(byte[] key) {
+            byte[] wide = new byte[key.length * 2];
+            for (int i = 0; i < key.length; i++) {
+                wide[2 * i + 1] = key[i];
+            }
+            return wide;
+        }
+        
+        private static boolean isAscii(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) >= 128) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    private static int[] rowsOf(long[] keys) {
+        int[] rows = new int[keys.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = (int) keys[i];
+        }
+        return rows;
+    }
+}
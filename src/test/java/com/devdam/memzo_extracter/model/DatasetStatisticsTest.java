@@ -0,0 +1,102 @@
+package com.devdam.memzo_extracter.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the one-pass statistics against the separate loops the statistics tab ran
+ * before, over the dataset sequentially and in parallel, over rows, and in parts.
+ */
+class DatasetStatisticsTest {
+    
+    private static final String[] NAMES = {null, "", "Ann", "Zoë Smith"};
+    private static final String[] EMAILS = {null, "", "ann@example.com"};
+    private static final String[] CONTACTS = {null, "", "98765"};
+    
+    @Test
+    void matchesTheSeparateCounts() {
+        for (int size : new int[] {0, 1, 1_000, 70_000}) { // the largest is scanned in parallel
+            List<SelfieDetail> rows = rows(size);
+            SelfieDataset data = SelfieDataset.of(rows);
+            assertMatches(data, DatasetStatistics.of(data));
+            assertMatches(data, rows.stream().collect(DatasetStatistics.collector()));
+            assertMatches(data, rows.parallelStream().collect(DatasetStatistics.collector()));
+        }
+        assertMatches(new SelfieDataset(), DatasetStatistics.of(null));
+    }
+    
+    @Test
+    void continuesAndCombinesPartialCounts() {
+        SelfieDataset data = SelfieDataset.of(rows(5_000));
+        DatasetStatistics loading = new DatasetStatistics();
+        for (int loaded = 0; loaded < data.size(); loaded = Math.min(data.size(), loaded + 777)) {
+            loading.acceptRows(data, loading.getTotalRecords(), loaded);
+        }
+        loading.acceptRows(data, loading.getTotalRecords(), data.size());
+        assertMatches(data, loading);
+        
+        DatasetStatistics first = new DatasetStatistics();
+        DatasetStatistics second = new DatasetStatistics();
+        first.acceptRows(data, 0, 1_234);
+        second.acceptRows(data, 1_234, data.size());
+        assertMatches(data, first.combine(second));
+    }
+    
+    private static void assertMatches(SelfieDataset data, DatasetStatistics stats) {
+        int complete = 0;
+        int withEmail = 0;
+        int withPhotos = 0;
+        long photos = 0;
+        int zero = 0;
+        int one = 0;
+        int multiple = 0;
+        for (int row = 0; row < data.size(); row++) {
+            if (data.hasName(row) && data.hasEmail(row) && data.hasContact(row)) {
+                complete++;
+            }
+            if (data.hasEmail(row)) {
+                withEmail++;
+            }
+            if (data.getPhotos(row) > 0) {
+                withPhotos++;
+            }
+            photos += data.getPhotos(row);
+            if (data.getPhotos(row) == 0) {
+                zero++;
+            } else if (data.getPhotos(row) == 1) {
+                one++;
+            } else {
+                multiple++;
+            }
+        }
+        int total = data.size();
+        assertEquals(total, stats.getTotalRecords());
+        assertEquals(complete, stats.getCompleteRegistrations());
+        assertEquals(withEmail, stats.getRecordsWithEmail());
+        assertEquals(withPhotos, stats.getRecordsWithPhotos());
+        assertEquals(total > 0 ? (double) photos / total : 0.0, stats.getAveragePhotos(), 1e-9);
+        assertEquals(total > 0 ? (double) complete / total * 100 : 0, stats.getCompletionRate(), 1e-9);
+        assertEquals(zero, stats.getZeroPhotos());
+        assertEquals(one, stats.getOnePhoto());
+        assertEquals(multiple, stats.getMultiplePhotos());
+    }
+    
+    private static List<SelfieDetail> rows(int count) {
+        Random random = new Random(count);
+        List<SelfieDetail> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(SelfieDetail.builder()
+                    .name(NAMES[random.nextInt(NAMES.length)])
+                    .email(EMAILS[random.nextInt(EMAILS.length)])
+                    .contact(CONTACTS[random.nextInt(CONTACTS.length)])
+                    .photos(random.nextInt(8) == 0 ? null : random.nextInt(4))
+                    .build());
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,104 @@
+package com.devdam.memzo_extracter.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the hand-written date parsing and formatting against {@code java.time}, which
+ * the application used before, including days past the end of the month.
+ */
+class MemzoDatesTest {
+    
+    private static final DateTimeFormatter MEMZO_FORMAT = new DateTimeFormatterBuilder()
+            .parseCaseInsensitive()
+            .appendPattern("dd MMMM yyyy HH:mm")
+            .toFormatter(Locale.ENGLISH)
+            .withResolverStyle(ResolverStyle.SMART);
+    private static final DateTimeFormatter ISO_FORMAT = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm");
+    
+    private static final String[] MONTHS = {
+        "January", "February", "March", "April", "May", "June",
+        "July", "August", "September", "October", "November", "December"
+    };
+    
+    @Test
+    void parsesMemzoDatesAsJavaTimeDoes() {
+        Random random = new Random(5);
+        for (int i = 0; i < 20_000; i++) {
+            String month = MONTHS[random.nextInt(MONTHS.length)];
+            month = random.nextBoolean() ? month : month.toUpperCase(Locale.ROOT);
+            // Days 29 to 31 are clamped to the end of shorter months
+            String value = String.format("%02d %s %d %02d:%02d", 1 + random.nextInt(31), month,
+                    1800 + random.nextInt(500), random.nextInt(24), random.nextInt(60));
+            long expected = MemzoDates.toEpochMinutes(LocalDateTime.parse(value, MEMZO_FORMAT));
+            assertEquals(expected, MemzoDates.parseEpochMinutes(value), value);
+            assertEquals(expected, MemzoDates.parseEpochMinutes("  " + value + "\t"), value);
+        }
+    }
+    
+    @Test
+    void clampsDaysToTheEndOfTheMonth() {
+        assertEquals(minutes(2024, 2, 29, 10, 0), MemzoDates.parseEpochMinutes("31 February 2024 10:00"));
+        assertEquals(minutes(2026, 2, 28, 10, 0), MemzoDates.parseEpochMinutes("29 February 2026 10:00"));
+        assertEquals(minutes(1900, 2, 28, 0, 0), MemzoDates.parseEpochMinutes("30 February 1900 00:00"));
+        assertEquals(minutes(2000, 2, 29, 0, 0), MemzoDates.parseEpochMinutes("30 February 2000 00:00"));
+        assertEquals(minutes(2026, 9, 30, 23, 59), MemzoDates.parseEpochMinutes("31 september 2026 23:59"));
+    }
+    
+    @Test
+    void rejectsMalformedDates() {
+        String[] malformed = {
+            null, "", "   ", "05 Sept 2026 14:30", "32 September 2026 14:30", "00 September 2026 14:30",
+            "05 September 2026 24:00", "05 September 2026 14:60", "05 September 26 14:30", "5 September 2026 14:30",
+            "05 September 2026 14:30:00", "05-September-2026 14:30", "05 September 2026", "2026-09-05 14:30",
+        };
+        for (String value : malformed) {
+            assertEquals(MemzoDates.NO_DATE, MemzoDates.parseEpochMinutes(value), value);
+        }
+    }
+    
+    @Test
+    void formatsAndParsesIsoDatesAsJavaTimeDoes() {
+        Random random = new Random(6);
+        long first = minutes(0, 1, 1, 0, 0);
+        long last = minutes(9999, 12, 31, 23, 59);
+        for (int i = 0; i < 20_000; i++) {
+            long epochMinutes = first + (long) (random.nextDouble() * (last - first));
+            LocalDateTime dateTime = MemzoDates.toLocalDateTime(epochMinutes);
+            String formatted = MemzoDates.formatIso(epochMinutes);
+            assertEquals(dateTime.format(ISO_FORMAT), formatted);
+            assertEquals(epochMinutes, MemzoDates.toEpochMinutes(dateTime));
+            assertEquals(epochMinutes, MemzoDates.parseIsoEpochMinutes(formatted), formatted);
+        }
+        assertEquals("0000-01-01 00:00", MemzoDates.formatIso(first));
+        assertEquals("9999-12-31 23:59", MemzoDates.formatIso(last));
+        assertEquals("1969-12-31 23:59", MemzoDates.formatIso(-1));
+        assertNull(MemzoDates.formatIso(MemzoDates.NO_DATE));
+        assertNull(MemzoDates.toLocalDateTime(MemzoDates.NO_DATE));
+    }
+    
+    @Test
+    void rejectsIsoDatesPastTheEndOfTheMonth() {
+        assertEquals(minutes(2024, 2, 29, 8, 5), MemzoDates.parseIsoEpochMinutes(" 2024-02-29 08:05 "));
+        String[] malformed = {
+            null, "", "2026-02-29 08:05", "2026-04-31 08:05", "2026-13-01 08:05", "2026-00-01 08:05",
+            "2026-01-01 24:00", "2026-1-01 08:05", "2026/01/01 08:05", "2026-01-01T08:05", "01 January 2026 08:05",
+        };
+        for (String value : malformed) {
+            assertEquals(MemzoDates.NO_DATE, MemzoDates.parseIsoEpochMinutes(value), value);
+        }
+    }
+    
+    private static long minutes(int year, int month, int day, int hour, int minute) {
+        return MemzoDates.toEpochMinutes(LocalDateTime.of(year, month, day, hour, minute));
+    }
+}
@@ -0,0 +1,112 @@
+package com.devdam.memzo_extracter.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SelfieDatasetSnapshotTest {
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        SelfieDataset data = sampleDataset(2_000);
+        Path file = directory.resolve("data.snapshot");
+        SelfieDatasetSnapshot.write(data, file, "source", 42L);
+        
+        try (SelfieDatasetSnapshot snapshot = SelfieDatasetSnapshot.open(file)) {
+            assertEquals(data.size(), snapshot.getRowCount());
+            assertEquals(42L, snapshot.getContentHash());
+            assertEquals("source", snapshot.getSource());
+            SelfieDataset read = snapshot.read();
+            assertSameRows(data, read);
+            
+            SelfieDetail extra = SelfieDetail.builder().name("Appended").email("new@example.com").build();
+            read.add(extra, "more.csv");
+            data.add(extra, "more.csv");
+            assertSameRows(data, read);
+        }
+    }
+    
+    @Test
+    void readsValuesThatStraddleWindows() throws IOException {
+        SelfieDataset data = sampleDataset(500);
+        Path file = directory.resolve("data.snapshot");
+        SelfieDatasetSnapshot.write(data, file, "source", 7L);
+        
+        // Odd window sizes put ints, longs and strings across window boundaries
+        for (long windowSize : new long[] {Long.BYTES, 13, 4097}) {
+            try (SelfieDatasetSnapshot snapshot = SelfieDatasetSnapshot.open(file)) {
+                assertSameRows(data, snapshot.read(windowSize));
+            }
+        }
+    }
+    
+    @Test
+    void readsAnEmptyDataset() throws IOException {
+        Path file = directory.resolve("empty.snapshot");
+        SelfieDatasetSnapshot.write(new SelfieDataset(), file, "", 0L);
+        
+        try (SelfieDatasetSnapshot snapshot = SelfieDatasetSnapshot.open(file)) {
+            assertEquals(0, snapshot.read().size());
+        }
+    }
+    
+    @Test
+    void rejectsATruncatedFile() throws IOException {
+        Path file = directory.resolve("data.snapshot");
+        SelfieDatasetSnapshot.write(sampleDataset(100), file, "source", 1L);
+        long size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            size = channel.size();
+        }
+        
+        for (long length : new long[] {size - 1, size - Long.BYTES, size / 2, 3}) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+            assertThrows(IOException.class, () -> SelfieDatasetSnapshot.open(file).close());
+        }
+    }
+    
+    private static SelfieDataset sampleDataset(int rows) {
+        Random random = new Random(rows);
+        String[] names = {"Ann", "Zoë Müller", "", null, "李雷", "  padded  "};
+        SelfieDataset data = new SelfieDataset(4);
+        for (int row = 0; row < rows; row++) {
+            SelfieDetail detail = SelfieDetail.builder()
+                    .image("https://example.com/selfies/" + row + ".jpg")
+                    .name(names[random.nextInt(names.length)])
+                    .email(random.nextInt(5) == 0 ? null : "user" + random.nextInt(rows) + "@example.com")
+                    .contact(random.nextBoolean() ? "+91 98" + random.nextInt(100_000_000) : "")
+                    .downloadRequests(String.valueOf(random.nextInt(4)))
+                    .photos(random.nextInt(50))
+                    .photosShared(random.nextBoolean() ? "yes" : "no")
+                    .photosDownload(null)
+                    .date(random.nextInt(10) == 0 ? "not a date"
+                            : String.format("%02d September 2026 %02d:%02d", 1 + random.nextInt(30),
+                                    random.nextInt(24), random.nextInt(60)))
+                    .build();
+            data.add(detail, random.nextBoolean() ? "part-" + random.nextInt(3) + ".csv" : null);
+        }
+        return data;
+    }
+    
+    private static void assertSameRows(SelfieDataset expected, SelfieDataset actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int row = 0; row < expected.size(); row++) {
+            assertEquals(expected.getRow(row), actual.getRow(row), "row " + row);
+            assertEquals(expected.getSourceFile(row), actual.getSourceFile(row), "source file of row " + row);
+            assertEquals(expected.getDateMinutes(row), actual.getDateMinutes(row), "date of row " + row);
+        }
+    }
+}
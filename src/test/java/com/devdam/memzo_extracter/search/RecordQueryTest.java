@@ -0,0 +1,123 @@
+package com.devdam.memzo_extracter.search;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.devdam.memzo_extracter.model.DateIndex;
+import com.devdam.memzo_extracter.model.MemzoDates;
+import com.devdam.memzo_extracter.model.SelfieDataset;
+import com.devdam.memzo_extracter.model.SelfieDetail;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks parsed queries against the same conditions written out by hand, with and
+ * without indexes to start from.
+ */
+class RecordQueryTest {
+    
+    private static final String[] MONTHS = {"August", "September", "October"};
+    private static final String[] DOMAINS = {"gmail.com", "Example.com", "mail.gmail.co"};
+    
+    private final List<SelfieDetail> rows = rows(400);
+    private final SelfieDataset data = SelfieDataset.of(rows);
+    
+    @Test
+    void matchesTheConditionsItParses() {
+        long september = MemzoDates.toEpochMinutes(LocalDate.of(2026, 9, 1));
+        long october = MemzoDates.toEpochMinutes(LocalDate.of(2026, 10, 1));
+        Predicate<SelfieDetail> inSeptember = row -> {
+            long minutes = MemzoDates.parseEpochMinutes(row.getDate());
+            return minutes != MemzoDates.NO_DATE && minutes >= september && minutes < october;
+        };
+        Predicate<SelfieDetail> hasContact = row -> row.getContact() != null;
+        Predicate<SelfieDetail> atGmail = row -> row.getEmail() != null && row.getEmail().toLowerCase().endsWith("@gmail.com");
+        
+        Map<String, Predicate<SelfieDetail>> queries = Map.ofEntries(
+                Map.entry("photos>=3", row -> row.getPhotos() >= 3),
+                Map.entry("-photos>=3", row -> row.getPhotos() < 3),
+                Map.entry("photos:2", row -> row.getPhotos() == 2),
+                Map.entry("photos<2", row -> row.getPhotos() < 2),
+                Map.entry("date:2026-09", inSeptember),
+                Map.entry("-date:2026-09", inSeptember.negate()),
+                Map.entry("date>=2026-10", row -> MemzoDates.parseEpochMinutes(row.getDate()) >= october),
+                Map.entry("domain:gmail.com", atGmail),
+                Map.entry("-domain:@GMAIL.com", atGmail.negate()),
+                Map.entry("has:contact", hasContact),
+                Map.entry("-has:contact", hasContact.negate()),
+                Map.entry("name:\"ann lee\"", row -> contains(row.getName(), "ann lee")),
+                Map.entry("GMAIL", row -> contains(row.getEmail(), "gmail") || contains(row.getContact(), "gmail")
+                        || contains(row.getName(), "gmail")),
+                Map.entry("photos>1 -has:contact domain:example.com", row -> row.getPhotos() > 1
+                        && !hasContact.test(row) && contains(row.getEmail(), "@example.com")),
+                Map.entry("\"-photos>3\"", row -> false));
+        
+        for (Map.Entry<String, Predicate<SelfieDetail>> query : queries.entrySet()) {
+            int[] expected = IntStream.range(0, rows.size()).filter(row -> query.getValue().test(rows.get(row))).toArray();
+            assertArrayEquals(expected, matches(query.getKey()), query.getKey());
+        }
+    }
+    
+    @Test
+    void clampsPhotoBoundsPastTheLongRange() {
+        int[] all = IntStream.range(0, rows.size()).toArray();
+        assertArrayEquals(new int[0], matches("photos>9223372036854775807"));
+        assertArrayEquals(all, matches("-photos>9223372036854775807"));
+        assertArrayEquals(new int[0], matches("photos<-9223372036854775808"));
+        assertArrayEquals(all, matches("photos<=9223372036854775807"));
+        assertArrayEquals(all, matches("photos>=-9223372036854775808"));
+    }
+    
+    @Test
+    void rejectsValuesATermCannotTake() {
+        assertEquals("photos needs a whole number, not \"many\"",
+                assertThrows(IllegalArgumentException.class, () -> RecordQuery.parse("photos>many")).getMessage());
+        assertEquals("photos needs a whole number, not \"9223372036854775808\"",
+                assertThrows(IllegalArgumentException.class, () -> RecordQuery.parse("photos<9223372036854775808")).getMessage());
+        assertEquals("date needs yyyy, yyyy-mm or yyyy-mm-dd, not \"2026-13\"",
+                assertThrows(IllegalArgumentException.class, () -> RecordQuery.parse("date:2026-13")).getMessage());
+        assertEquals("has takes email, contact, name, date or photos, not \"age\"",
+                assertThrows(IllegalArgumentException.class, () -> RecordQuery.parse("has:age")).getMessage());
+        assertEquals("domain only takes domain:value",
+                assertThrows(IllegalArgumentException.class, () -> RecordQuery.parse("domain>x")).getMessage());
+        assertEquals("name: needs a value",
+                assertThrows(IllegalArgumentException.class, () -> RecordQuery.parse("-name:")).getMessage());
+    }
+    
+    // The same rows with and without indexes, which must only change the work done
+    private int[] matches(String text) {
+        RecordQuery query = RecordQuery.parse(text);
+        int[] scanned = query.compile(data, data.size(), null, null).matchingRows();
+        TrigramIndex index = TrigramIndex.build(data.size(), 3,
+                (row, field) -> field == 0 ? data.getEmail(row) : field == 1 ? data.getContact(row) : data.getName(row));
+        int[] indexed = query.compile(data, data.size(), DateIndex.build(data), new SearchResultCache(index)).matchingRows();
+        assertArrayEquals(scanned, indexed, text);
+        return scanned;
+    }
+    
+    private static boolean contains(String field, String phrase) {
+        return field != null && field.toLowerCase().contains(phrase);
+    }
+    
+    private static List<SelfieDetail> rows(int count) {
+        List<SelfieDetail> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(SelfieDetail.builder()
+                    .name(i % 9 == 0 ? null : i % 5 == 0 ? "Ann Lee " + i : "Person " + i)
+                    .email(i % 11 == 0 ? null : "user" + i + "@" + DOMAINS[i % DOMAINS.length])
+                    .contact(i % 3 == 0 ? null : "555-" + i)
+                    .photos(i % 6)
+                    .date(i % 7 == 0 ? null : String.format("%02d %s 2026 %02d:%02d",
+                            1 + i % 28, MONTHS[i % MONTHS.length], i % 24, i % 60))
+                    .build());
+        }
+        return rows;
+    }
+}
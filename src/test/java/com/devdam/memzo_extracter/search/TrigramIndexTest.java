@@ -0,0 +1,136 @@
+package com.devdam.memzo_extracter.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks index searches against a scan of every field for the lower-cased query, over
+ * text from a small alphabet so that trigrams are shared by many documents and most
+ * candidates have to be ruled out by the check.
+ */
+class TrigramIndexTest {
+    
+    private static final String ALPHABET = "abAB@. éÉ1";
+    private static final int FIELDS = 3;
+    
+    private final Random random = new Random(15);
+    private final List<String[]> documents = documents(3_000);
+    
+    @Test
+    void findsWhatAScanFinds() {
+        TrigramIndex index = TrigramIndex.build(documents.size(), FIELDS, this::read);
+        for (String query : queries(1_000)) {
+            BitSet expected = scan(query, documents.size());
+            assertEquals(expected, index.search(query), query);
+            assertTrue(index.estimateMatches(query) >= expected.cardinality(), query);
+        }
+    }
+    
+    @Test
+    void narrowsEarlierResults() {
+        TrigramIndex index = TrigramIndex.build(documents.size(), FIELDS, this::read);
+        for (String query : queries(500)) {
+            // Typed a character at a time, each result narrowing the one before
+            BitSet earlier = index.search("");
+            for (int length = 1; length <= query.length(); length++) {
+                String prefix = query.substring(0, length);
+                BitSet narrowed = index.searchWithin(prefix, earlier);
+                assertEquals(scan(prefix, documents.size()), narrowed, prefix);
+                earlier = narrowed;
+            }
+        }
+    }
+    
+    @Test
+    void searchesDocumentsAddedBetweenSearches() {
+        SearchResultCache cache = new SearchResultCache(TrigramIndex.build(1_000, FIELDS, this::read), 8);
+        List<String> queries = queries(300);
+        for (int added = 1_000; added <= documents.size(); added += 500) {
+            if (added > 1_000) {
+                cache.addDocuments(500);
+            }
+            for (String query : queries) {
+                for (int length = 1; length <= query.length(); length++) {
+                    String prefix = query.substring(0, length);
+                    BitSet expected = scan(prefix, added);
+                    assertEquals(expected, cache.search(prefix), prefix + " over " + added);
+                    assertTrue(cache.estimateMatches(prefix) >= expected.cardinality(), prefix);
+                }
+            }
+        }
+    }
+    
+    private CharSequence read(int document, int field) {
+        return documents.get(document)[field];
+    }
+    
+    private BitSet scan(String query, int documentCount) {
+        String needle = lowerCase(query.trim());
+        BitSet matches = new BitSet();
+        if (needle.isEmpty()) {
+            matches.set(0, documentCount); // even documents without text
+            return matches;
+        }
+        for (int document = 0; document < documentCount; document++) {
+            for (String field : documents.get(document)) {
+                if (field != null && lowerCase(field).contains(needle)) {
+                    matches.set(document);
+                }
+            }
+        }
+        return matches;
+    }
+    
+    // Character by character, as the index folds case
+    private static String lowerCase(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+    
+    private List<String[]> documents(int count) {
+        List<String[]> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String[] fields = new String[FIELDS];
+            for (int field = 0; field < FIELDS; field++) {
+                fields[field] = random.nextInt(10) == 0 ? null : text(random.nextInt(12));
+            }
+            documents.add(fields);
+        }
+        return documents;
+    }
+    
+    // Pieces of documents, which usually match, and random text, which usually does not
+    private List<String> queries(int count) {
+        List<String> queries = new ArrayList<>();
+        while (queries.size() < count) {
+            String field = documents.get(random.nextInt(documents.size()))[random.nextInt(FIELDS)];
+            if (field != null && random.nextBoolean()) {
+                int from = random.nextInt(field.length() + 1);
+                int to = from + random.nextInt(field.length() - from + 1);
+                String piece = field.substring(from, to);
+                queries.add(random.nextBoolean() ? piece.toUpperCase() : piece);
+            } else {
+                queries.add(text(random.nextInt(7)));
+            }
+        }
+        return queries;
+    }
+    
+    private String text(int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return text.toString();
+    }
+}
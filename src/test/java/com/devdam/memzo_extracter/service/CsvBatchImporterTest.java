@@ -0,0 +1,106 @@
+package com.devdam.memzo_extracter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.devdam.memzo_extracter.model.SelfieDataset;
+import com.devdam.memzo_extracter.model.SelfieDetail;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks a batch import against loading the files one by one and dropping by hand the
+ * rows whose emails, trimmed and lower-cased, appeared in an earlier file.
+ */
+class CsvBatchImporterTest {
+    
+    @TempDir
+    Path directory;
+    
+    private final CsvService csvService = new CsvService();
+    
+    @Test
+    void dropsRowsWhoseEmailAnEarlierFileHad() throws IOException {
+        String repeated = TestCsv.rows(150, "\n", true);
+        List<File> files = List.of(
+                // Repeats within the first file are kept
+                write("repeats.csv", repeated + repeated.substring(TestCsv.HEADER.length() + 1)),
+                write("first.csv", TestCsv.rows(300, "\n", true)),
+                write("upper.csv", TestCsv.rows(500, "\r\n", false).replace("@example.com", "@EXAMPLE.com ")));
+        
+        List<SelfieDetail> expected = new ArrayList<>();
+        List<String> sources = new ArrayList<>();
+        Set<String> earlierEmails = new HashSet<>();
+        for (File file : files) {
+            Set<String> emails = new HashSet<>();
+            for (SelfieDetail row : csvService.parseCsvFile(file)) {
+                String email = row.getEmail() == null ? "" : row.getEmail().trim().toLowerCase();
+                if (!email.isEmpty() && earlierEmails.contains(email)) {
+                    continue;
+                }
+                emails.add(email);
+                expected.add(row);
+                sources.add(file.getName());
+            }
+            earlierEmails.addAll(emails);
+        }
+        
+        List<Integer> filesMerged = new ArrayList<>();
+        CsvBatchImporter.Result result = new CsvBatchImporter(csvService).importFiles(files, new CsvBatchImporter.Monitor() {
+            @Override
+            public void progress(long bytesRead, int merged, int rowsMerged) {
+                filesMerged.add(merged);
+            }
+            
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+        
+        SelfieDataset merged = result.getData();
+        assertEquals(expected, merged.asList());
+        for (int row = 0; row < merged.size(); row++) {
+            assertEquals(sources.get(row), merged.getSourceFile(row), "source of row " + row);
+        }
+        int total = 0;
+        for (File file : files) {
+            total += csvService.parseCsvFile(file).size();
+        }
+        assertEquals(total - expected.size(), result.getDuplicates());
+        assertEquals(files.size(), (int) filesMerged.get(filesMerged.size() - 1));
+    }
+    
+    @Test
+    void stopsOnceCancelled() throws IOException {
+        List<File> files = List.of(write("a.csv", TestCsv.rows(50, "\n", true)), write("b.csv", TestCsv.rows(60, "\n", true)));
+        assertThrows(CancellationException.class, () -> new CsvBatchImporter(csvService).importFiles(files,
+                new CsvBatchImporter.Monitor() {
+                    @Override
+                    public void progress(long bytesRead, int merged, int rowsMerged) {
+                    }
+                    
+                    @Override
+                    public boolean isCancelled() {
+                        return true;
+                    }
+                }));
+    }
+    
+    private File write(String name, String csv) throws IOException {
+        Path path = directory.resolve(name);
+        Files.writeString(path, csv, StandardCharsets.UTF_8);
+        return path.toFile();
+    }
+}
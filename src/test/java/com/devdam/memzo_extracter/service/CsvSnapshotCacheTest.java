@@ -0,0 +1,129 @@
+package com.devdam.memzo_extracter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.devdam.memzo_extracter.model.SelfieDataset;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CsvSnapshotCacheTest {
+    
+    private static final String HEADER = "image,name,email,contact,download_requests,photos,photos_shared,photos_download,date\n";
+    
+    @TempDir
+    Path directory;
+    
+    private final CsvService csvService = new CsvService();
+    
+    @Test
+    void loadsWhatWasStored() throws Exception {
+        Path csv = writeCsv("a.csv", 300);
+        CsvSnapshotCache cache = new CsvSnapshotCache(directory.resolve("cache"));
+        CsvSnapshotCache.SourceFile source = cache.describe(csv.toFile());
+        assertNull(cache.load(source));
+        
+        SelfieDataset parsed = parse(csv);
+        cache.store(source, parsed);
+        SelfieDataset loaded = awaitSnapshot(cache, csv);
+        
+        assertEquals(parsed.size(), loaded.size());
+        for (int row = 0; row < parsed.size(); row++) {
+            assertEquals(parsed.getRow(row), loaded.getRow(row), "row " + row);
+            assertEquals(parsed.getDateMinutes(row), loaded.getDateMinutes(row), "date of row " + row);
+        }
+    }
+    
+    @Test
+    void ignoresTheSnapshotOfAChangedFile() throws Exception {
+        Path csv = writeCsv("a.csv", 300);
+        CsvSnapshotCache cache = new CsvSnapshotCache(directory.resolve("cache"));
+        cache.store(cache.describe(csv.toFile()), parse(csv));
+        awaitSnapshot(cache, csv);
+        
+        // Same size and modification time, different contents: only the content hash tells
+        FileTime modified = Files.getLastModifiedTime(csv);
+        byte[] bytes = Files.readAllBytes(csv);
+        int last = bytes.length - 2;
+        bytes[last] = (byte) (bytes[last] == '0' ? '1' : '0');
+        Files.write(csv, bytes);
+        Files.setLastModifiedTime(csv, modified);
+        assertNull(cache.load(cache.describe(csv.toFile())));
+        
+        Files.writeString(csv, "extra,row\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertNull(cache.load(cache.describe(csv.toFile())));
+    }
+    
+    @Test
+    void ignoresATruncatedSnapshot() throws Exception {
+        Path csv = writeCsv("a.csv", 300);
+        Path cacheDirectory = directory.resolve("cache");
+        CsvSnapshotCache cache = new CsvSnapshotCache(cacheDirectory);
+        cache.store(cache.describe(csv.toFile()), parse(csv));
+        awaitSnapshot(cache, csv);
+        
+        try (Stream<Path> snapshots = Files.list(cacheDirectory)) {
+            for (Path snapshot : snapshots.collect(Collectors.toList())) {
+                byte[] bytes = Files.readAllBytes(snapshot);
+                Files.write(snapshot, Arrays.copyOf(bytes, bytes.length / 2));
+            }
+        }
+        assertNull(cache.load(cache.describe(csv.toFile())));
+    }
+    
+    @Test
+    void loadsThroughTheCacheTheServiceWasGiven() throws Exception {
+        Path csv = writeCsv("a.csv", 300);
+        CsvSnapshotCache cache = new CsvSnapshotCache(directory.resolve("cache"));
+        CsvService service = new CsvService(cache);
+        SelfieDataset parsed = service.loadDataset(csv.toFile());
+        
+        assertEquals(parsed.asList(), awaitSnapshot(cache, csv).asList());
+        assertEquals(parsed.asList(), service.loadDataset(csv.toFile()).asList());
+    }
+    
+    private Path writeCsv(String name, int rows) throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int row = 0; row < rows; row++) {
+            csv.append("https://example.com/").append(row).append(".jpg,\"Name, ").append(row).append("\",user")
+                    .append(row).append("@example.com,98").append(row).append(',').append(row % 3).append(',')
+                    .append(row % 40).append(",yes,no,").append(1 + row % 28).append(" September 2026 10:")
+                    .append(String.format("%02d", row % 60)).append('\n');
+        }
+        Path file = directory.resolve(name);
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+        return file;
+    }
+    
+    private SelfieDataset parse(Path csv) throws IOException {
+        SelfieDataset data = new SelfieDataset();
+        csvService.parseCsvFile(csv.toFile(), data::add);
+        return data;
+    }
+    
+    // Snapshots are written in the background
+    private static SelfieDataset awaitSnapshot(CsvSnapshotCache cache, Path csv) throws Exception {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            SelfieDataset loaded = cache.load(cache.describe(csv.toFile()));
+            if (loaded != null) {
+                return loaded;
+            }
+            Thread.sleep(20);
+        }
+        SelfieDataset loaded = cache.load(cache.describe(csv.toFile()));
+        assertNotNull(loaded, "snapshot was not written");
+        return loaded;
+    }
+}
@@ -0,0 +1,59 @@
+package com.devdam.memzo_extracter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.devdam.memzo_extracter.model.SelfieDetail;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the complete-record scan used when following a file against the sequential
+ * parser, for a file cut at every offset and then completed.
+ */
+class CsvTailTest {
+    
+    @TempDir
+    Path directory;
+    
+    private final CsvService csvService = new CsvService();
+    
+    @Test
+    void followsAFileCutAtEveryOffset() throws IOException {
+        String csv = TestCsv.rows(30, "\r\n", true);
+        byte[] bytes = csv.getBytes(StandardCharsets.UTF_8);
+        Path path = write("followed.csv", csv);
+        List<SelfieDetail> expected = csvService.parseCsvFile(path.toFile());
+        int headerEnd = TestCsv.HEADER.length() + 1; // a header ended by its carriage return is complete
+        
+        for (int cut = 0; cut <= bytes.length; cut++) {
+            Files.write(path, Arrays.copyOf(bytes, cut));
+            List<SelfieDetail> rows = new ArrayList<>();
+            if (cut < headerEnd) {
+                assertThrows(IOException.class, () -> csvService.parseCompleteRecords(path.toFile(), rows::add, bytesRead -> { }));
+                continue;
+            }
+            CsvTail tail = csvService.parseCompleteRecords(path.toFile(), rows::add, bytesRead -> { });
+            assertTrue(tail.getOffset() <= cut);
+            
+            Files.write(path, bytes);
+            csvService.parseAppendedRecords(tail, rows::add);
+            assertEquals(expected, rows, "cut at " + cut);
+        }
+    }
+    
+    private Path write(String name, String contents) throws IOException {
+        Path file = directory.resolve(name);
+        Files.writeString(file, contents, StandardCharsets.UTF_8);
+        return file;
+    }
+}
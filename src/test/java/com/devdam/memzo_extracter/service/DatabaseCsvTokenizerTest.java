@@ -0,0 +1,169 @@
+package com.devdam.memzo_extracter.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.devdam.memzo_extracter.model.SelfieDetail;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the byte-level reader against the fields it was given, written with quoted line
+ * breaks and commas, CRLF and LF line ends, and with and without a final line break,
+ * over files large enough for records to straddle the reader's chunks.
+ */
+class DatabaseCsvTokenizerTest {
+    
+    private static final String[] VALUES = {
+        "Ann", "", "Smith, John", "say \"cheese\"", "two\nlines", "cr\r\nlf", "Zoë", "\"quoted\"",
+        "ends with \"\n\"", "ann@example.com", "+91 98765", "2026-01-02 03:04",
+    };
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void splitsTheFieldsThatWereWritten() throws IOException {
+        for (String lineBreak : new String[] {"\n", "\r\n"}) {
+            for (boolean finalLineBreak : new boolean[] {true, false}) {
+                List<String[]> records = records(5_000);
+                StringBuilder csv = new StringBuilder();
+                List<Long> offsets = new ArrayList<>();
+                long offset = 0;
+                for (int i = 0; i < records.size(); i++) {
+                    offsets.add(offset);
+                    String line = line(records.get(i)) + (i < records.size() - 1 || finalLineBreak ? lineBreak : "");
+                    csv.append(line);
+                    offset += line.getBytes(StandardCharsets.UTF_8).length;
+                }
+                Path file = write(csv.toString());
+                long size = Files.size(file);
+                String label = (lineBreak.length() == 1 ? "LF" : "CRLF") + (finalLineBreak ? "" : " without final line break");
+                
+                List<String[]> scanned = new ArrayList<>();
+                List<Long> starts = new ArrayList<>();
+                assertEquals(size, DatabaseCsvTokenizer.scan(file, 0, Long.MAX_VALUE, false, (start, record) -> {
+                    starts.add(start);
+                    scanned.add(fields(record));
+                }), label);
+                assertEquals(offsets, starts, label);
+                for (int i = 0; i < records.size(); i++) {
+                    assertArrayEquals(records.get(i), scanned.get(i), label + ", record " + i);
+                }
+                
+                // A record still being written is left for the next scan
+                List<Long> terminated = new ArrayList<>();
+                long end = DatabaseCsvTokenizer.scan(file, 0, Long.MAX_VALUE, true, (start, record) -> terminated.add(start));
+                int complete = finalLineBreak ? records.size() : records.size() - 1;
+                assertEquals(offsets.subList(0, complete), terminated, label);
+                assertEquals(finalLineBreak ? size : offsets.get(complete), end, label);
+            }
+        }
+    }
+    
+    @Test
+    void readsEntriesAtTheirOffsets() throws IOException {
+        List<String[]> records = records(3_000);
+        StringBuilder csv = new StringBuilder();
+        long[] offsets = new long[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            String line = line(records.get(i)) + "\r\n";
+            csv.append(line);
+            if (i + 1 < offsets.length) {
+                offsets[i + 1] = offsets[i] + line.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        Path file = write(csv.toString());
+        
+        long[] wanted = new long[records.size() / 7];
+        for (int i = 0; i < wanted.length; i++) {
+            wanted[i] = offsets[i * 7];
+        }
+        SelfieDetail[] entries = DatabaseCsvTokenizer.readEntries(file, wanted, wanted.length);
+        for (int i = 0; i < wanted.length; i++) {
+            SelfieDetail expected = entry(records.get(i * 7));
+            assertEquals(expected, entries[i], "record " + i * 7);
+            assertEquals(expected, DatabaseCsvTokenizer.readEntry(file, wanted[i]), "record " + i * 7);
+        }
+        
+        // An offset that is not the start of a record finds nothing
+        long[] misaligned = {offsets[1], offsets[2] + 1, offsets[3]};
+        SelfieDetail[] found = DatabaseCsvTokenizer.readEntries(file, misaligned, misaligned.length);
+        assertEquals(entry(records.get(1)), found[0]);
+        assertNull(found[1]);
+        assertEquals(entry(records.get(3)), found[2]);
+        assertNull(DatabaseCsvTokenizer.readEntry(directory.resolve("missing.csv"), 0));
+    }
+    
+    @Test
+    void trimsUnquotedFieldsOnly() throws IOException {
+        Path file = write(" Ann  , \" padded \" ,\t98\r\n\"unclosed,\nquote");
+        List<String[]> scanned = new ArrayList<>();
+        DatabaseCsvTokenizer.scan(file, 0, Long.MAX_VALUE, false, (offset, record) -> scanned.add(fields(record)));
+        assertArrayEquals(new String[] {"Ann", " padded ", "98"}, scanned.get(0));
+        assertArrayEquals(new String[] {"unclosed,\nquote"}, scanned.get(1));
+        assertEquals(2, scanned.size());
+    }
+    
+    private static List<String[]> records(int count) {
+        Random random = new Random(count);
+        List<String[]> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String[] fields = new String[4];
+            for (int field = 0; field < fields.length; field++) {
+                fields[field] = VALUES[random.nextInt(VALUES.length)];
+            }
+            if (random.nextBoolean()) {
+                fields[1] = "user" + i + "@example.com";
+            }
+            records.add(fields);
+        }
+        return records;
+    }
+    
+    // Quotes only the fields that need it, as the database writer does
+    private static String line(String[] fields) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            String field = fields[i];
+            if (field.isEmpty() || field.matches("[^,\"\r\n]*")) {
+                line.append(field);
+            } else {
+                line.append('"').append(field.replace("\"", "\"\"")).append('"');
+            }
+        }
+        return line.toString();
+    }
+    
+    private static String[] fields(DatabaseCsvTokenizer.Record record) {
+        String[] fields = new String[record.size()];
+        Arrays.setAll(fields, record::field);
+        return fields;
+    }
+    
+    private static SelfieDetail entry(String[] fields) {
+        if (!fields[1].contains("@")) {
+            return null;
+        }
+        return SelfieDetail.builder().name(fields[0]).email(fields[1]).contact(fields[2]).date(fields[3]).build();
+    }
+    
+    private Path write(String csv) throws IOException {
+        Path file = directory.resolve("db.csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+        return file;
+    }
+}
@@ -0,0 +1,131 @@
+package com.devdam.memzo_extracter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.devdam.memzo_extracter.model.SelfieDataset;
+import com.devdam.memzo_extracter.model.SelfieDetail;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the unique email database against what was appended to it, through the index
+ * and through full scans, across compactions and after the index goes stale.
+ */
+class EmailDatabaseJournalTest {
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void readsPagesInLoadOrder() throws IOException {
+        EmailDatabaseJournal database = new EmailDatabaseJournal(directory.resolve("db.csv"));
+        List<SelfieDetail> expected = new ArrayList<>();
+        for (int batch = 0; batch < 4; batch++) {
+            List<SelfieDetail> entries = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                int id = batch * 40 + i; // the first ten of each batch repeat the last batch
+                entries.add(entry(i % 7 == 0 ? "Last, \"First\"\nSecond" : "Person " + id,
+                        batch > 0 && i < 10 ? "USER" + id + "@EXAMPLE.COM" : "user" + id + "@example.com"));
+                if (batch == 0 || i >= 10) {
+                    expected.add(entries.get(i));
+                }
+            }
+            database.append(entries);
+            if (batch == 1) {
+                database.compact();
+            }
+        }
+        assertEquals(expected, database.load());
+        
+        long[] fingerprints = database.listFingerprints();
+        assertEquals(expected.size(), fingerprints.length);
+        List<SelfieDetail> pages = new ArrayList<>();
+        for (int from = 0; from < fingerprints.length; from += 7) {
+            pages.addAll(Arrays.asList(database.findAll(fingerprints, from, Math.min(fingerprints.length, from + 7))));
+        }
+        assertEquals(expected, pages);
+    }
+    
+    @Test
+    void dropsAJournalRecordCutShortByACrash() throws IOException {
+        Path path = directory.resolve("db.csv");
+        List<SelfieDetail> entries = List.of(entry("One", "one@example.com"), entry("Two", "two@example.com"));
+        new EmailDatabaseJournal(path).append(entries);
+        Path journal = directory.resolve("db.csv.journal");
+        long complete = Files.size(journal);
+        Files.writeString(journal, "\"Three\nhalf,three@exa", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        
+        EmailDatabaseJournal reopened = new EmailDatabaseJournal(path);
+        assertEquals(entries, reopened.load());
+        assertFalse(reopened.contains("three@example.com"));
+        assertEquals(complete, Files.size(journal));
+        
+        reopened.append(List.of(entry("Three", "three@example.com")));
+        assertEquals(List.of(entries.get(0), entries.get(1), entry("Three", "three@example.com")),
+                new EmailDatabaseJournal(path).load());
+    }
+    
+    @Test
+    void rebuildsAStaleIndex() throws IOException {
+        Path path = directory.resolve("db.csv");
+        EmailDatabaseJournal database = new EmailDatabaseJournal(path);
+        database.append(List.of(entry("Old", "old@example.com")));
+        database.compact();
+        assertTrue(database.contains("old@example.com"));
+        
+        // Edited by another program
+        Files.writeString(path, EmailDatabaseJournal.HEADER + "\nNew,new@example.com,555,2026-01-02 03:04\n",
+                StandardCharsets.UTF_8);
+        EmailDatabaseJournal reopened = new EmailDatabaseJournal(path);
+        assertTrue(reopened.contains("NEW@example.com"));
+        assertFalse(reopened.contains("old@example.com"));
+        assertEquals(List.of(entry("New", "new@example.com")), reopened.load());
+        
+        // Left half-written
+        Files.write(directory.resolve("db.csv.idx"), new byte[100]);
+        reopened = new EmailDatabaseJournal(path);
+        assertEquals(1, reopened.size());
+        assertEquals(entry("New", "new@example.com"), reopened.find("new@example.com"));
+    }
+    
+    @Test
+    void servesSavedRecordsFromTheDatabase() throws IOException {
+        EmailDatabaseJournal database = new EmailDatabaseJournal(directory.resolve("db.csv"));
+        List<SelfieDetail> saved = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            saved.add(entry("Person " + i, "user" + i + "@example.com"));
+        }
+        database.append(saved);
+        
+        EmailRegistry registry = new EmailRegistry(database);
+        assertEquals(saved.size(), registry.size());
+        assertFalse(registry.isSnapshotPrepared());
+        
+        SelfieDataset upload = new SelfieDataset();
+        upload.add(entry("Known", "USER5@example.com"));
+        upload.add(entry("Fresh", "fresh@example.com"));
+        assertEquals(1, registry.merge(upload).getAdded().size());
+        registry.save();
+        
+        List<SelfieDetail> snapshot = registry.snapshot();
+        assertEquals(saved.size() + 1, snapshot.size());
+        registry.prepareSnapshot();
+        assertEquals(saved, snapshot.subList(0, saved.size()));
+        assertEquals("fresh@example.com", snapshot.get(saved.size()).getEmail());
+    }
+    
+    private static SelfieDetail entry(String name, String email) {
+        return SelfieDetail.builder().name(name).email(email).contact("555").date("2026-01-02 03:04").build();
+    }
+}
@@ -0,0 +1,80 @@
+package com.devdam.memzo_extracter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.devdam.memzo_extracter.model.SelfieDataset;
+import com.devdam.memzo_extracter.model.SelfieDetail;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the quote-aware range splitting against the sequential parser for range sizes
+ * down to a byte, so that ranges start inside quoted fields and line breaks, and that
+ * ranges are appended in file order as they are done.
+ */
+class ParallelCsvReaderTest {
+    
+    @TempDir
+    Path directory;
+    
+    private final CsvService csvService = new CsvService();
+    
+    @Test
+    void parsesTheSameRowsInRangesAsSequentially() throws IOException {
+        for (String lineBreak : new String[] {"\n", "\r\n"}) {
+            for (boolean finalLineBreak : new boolean[] {true, false}) {
+                File file = write("rows.csv", TestCsv.rows(60, lineBreak, finalLineBreak)).toFile();
+                List<SelfieDetail> expected = csvService.parseCsvFile(file);
+                for (long rangeSize : new long[] {1, 7, 64, 1_000, 1 << 20}) {
+                    SelfieDataset parsed = new SelfieDataset();
+                    assertTrue(csvService.parseInRanges(file, rangeSize, parsed, bytesRead -> { }));
+                    assertEquals(expected, parsed.asList(), "range size " + rangeSize);
+                }
+            }
+        }
+    }
+    
+    @Test
+    void appendsRangesInFileOrderAsTheyAreDone() throws IOException {
+        File file = write("rows.csv", TestCsv.rows(2_000, "\n", true)).toFile();
+        List<SelfieDetail> expected = csvService.parseCsvFile(file);
+        SelfieDataset parsed = new SelfieDataset();
+        List<Integer> sizes = new ArrayList<>();
+        long[] lastBytesRead = {-1};
+        csvService.parseInRanges(file, 4_096, parsed, bytesRead -> {
+            assertTrue(bytesRead > lastBytesRead[0]);
+            lastBytesRead[0] = bytesRead;
+            // Every row appended so far is already in place
+            assertEquals(expected.subList(0, parsed.size()), parsed.asList());
+            sizes.add(parsed.size());
+        });
+        
+        assertEquals(file.length(), lastBytesRead[0]);
+        assertEquals(expected.size(), parsed.size());
+        assertTrue(sizes.size() > 10 && sizes.get(0) < expected.size() / 10);
+    }
+    
+    @Test
+    void hasNoRangesToSplitWithoutACompleteHeader() throws IOException {
+        File file = write("header.csv", TestCsv.HEADER).toFile();
+        SelfieDataset parsed = new SelfieDataset();
+        assertFalse(csvService.parseInRanges(file, 1, parsed, bytesRead -> { }));
+        assertEquals(0, parsed.size());
+    }
+    
+    private Path write(String name, String contents) throws IOException {
+        Path file = directory.resolve(name);
+        Files.writeString(file, contents, StandardCharsets.UTF_8);
+        return file;
+    }
+}
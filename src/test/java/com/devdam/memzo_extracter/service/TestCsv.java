@@ -0,0 +1,38 @@
+package com.devdam.memzo_extracter.service;
+
+import java.util.Random;
+
+/**
+ * CSV text in the export's layout that exercises the quoting rules: quoted fields with
+ * commas, escaped quotes and line breaks, empty fields and non-ASCII text.
+ */
+final class TestCsv {
+    
+    static final String HEADER = "image,name,email,contact,download_requests,photos,photos_shared,photos_download,date";
+    
+    private TestCsv() {
+    }
+    
+    static String rows(int rows, String lineBreak, boolean finalLineBreak) {
+        Random random = new Random(rows);
+        String[] names = {
+                "Ann", "\"Smith, John\"", "\"say \"\"cheese\"\"\"", "\"two\nlines\"", "\"cr\r\nlf\"",
+                "", "\"\"", "Zoë", "\"\"\"quoted\"\"\"", "\"ends with \"\"\n\"\"\"",
+        };
+        StringBuilder csv = new StringBuilder(HEADER).append(lineBreak);
+        for (int row = 0; row < rows; row++) {
+            csv.append("https://example.com/").append(row).append(".jpg,")
+                    .append(names[random.nextInt(names.length)]).append(',')
+                    .append(random.nextInt(4) == 0 ? "" : "user" + row + "@example.com").append(',')
+                    .append(random.nextInt(3) == 0 ? "\"+91\n98" + row + "\"" : "98" + row).append(',')
+                    .append(random.nextInt(4)).append(',')
+                    .append(random.nextInt(50)).append(",yes,")
+                    .append(random.nextBoolean() ? "\"a,b\"" : "no").append(',')
+                    .append(1 + random.nextInt(28)).append(" September 2026 1").append(random.nextInt(10)).append(":30");
+            if (row < rows - 1 || finalLineBreak) {
+                csv.append(lineBreak);
+            }
+        }
+        return csv.toString();
+    }
+}
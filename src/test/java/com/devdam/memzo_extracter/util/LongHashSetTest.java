@@ -0,0 +1,91 @@
+package com.devdam.memzo_extracter.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the set against a {@code HashSet} through random adds and removes of values
+ * that share their low bits, so that probe runs are long, wrap past the end of the
+ * array and have entries shifted back into the holes removals leave.
+ */
+class LongHashSetTest {
+    
+    @Test
+    void findsEveryValueAfterRemovalsInsideProbeRuns() {
+        Random random = new Random(12);
+        // Capacity 16 that never resizes: every value wants slot 13, 14 or 15
+        LongHashSet set = new LongHashSet(8);
+        Set<Long> expected = new HashSet<>();
+        long[] values = new long[24];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ((long) (i + 1) << 32) | (13 + i % 3);
+        }
+        for (int step = 0; step < 20_000; step++) {
+            long value = values[random.nextInt(values.length)];
+            if (expected.size() < 8 && random.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+            assertSameValues(expected, set, values);
+        }
+    }
+    
+    @Test
+    void matchesAHashSetWhileGrowing() {
+        Random random = new Random(13);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        long[] values = new long[5_000];
+        for (int i = 0; i < values.length; i++) {
+            // Few distinct low bits make clusters at every capacity
+            values[i] = random.nextLong() & ~0x3f0L;
+            if (values[i] == 0) {
+                values[i] = 1;
+            }
+        }
+        for (int step = 0; step < 200_000; step++) {
+            long value = values[random.nextInt(values.length)];
+            if (random.nextInt(3) > 0) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+        }
+        assertSameValues(expected, set, values);
+        
+        for (long value : values) {
+            set.remove(value);
+        }
+        assertTrue(set.isEmpty());
+        set.forEach(value -> {
+            throw new AssertionError("left " + value);
+        });
+    }
+    
+    @Test
+    void neverStoresZero() {
+        LongHashSet set = new LongHashSet();
+        assertThrows(IllegalArgumentException.class, () -> set.add(0));
+        assertFalse(set.contains(0));
+        assertFalse(set.remove(0));
+    }
+    
+    private static void assertSameValues(Set<Long> expected, LongHashSet set, long[] values) {
+        assertEquals(expected.size(), set.size());
+        for (long value : values) {
+            assertEquals(expected.contains(value), set.contains(value), Long.toHexString(value));
+        }
+        Set<Long> listed = new HashSet<>();
+        set.forEach(listed::add);
+        assertEquals(expected, listed);
+    }
+}
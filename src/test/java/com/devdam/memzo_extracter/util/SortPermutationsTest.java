@@ -0,0 +1,72 @@
+package com.devdam.memzo_extracter.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class SortPermutationsTest {
+    
+    @Test
+    void sortsAsciiTextInCollatorOrder() {
+        // Mixed case, digits, punctuation and spaces, which collators weigh differently from ASCII order
+        String[] values = randomText(5_000, " -_.,'@!#09AZaz", 0);
+        for (Locale locale : new Locale[] {Locale.ENGLISH, Locale.FRENCH, Locale.GERMAN, Locale.ROOT}) {
+            for (int strength : new int[] {Collator.PRIMARY, Collator.SECONDARY, Collator.TERTIARY, Collator.IDENTICAL}) {
+                Collator collator = Collator.getInstance(locale);
+                collator.setStrength(strength);
+                assertArrayEquals(collatorOrder(values, collator), SortPermutations.byText(values, collator),
+                        locale + " strength " + strength);
+            }
+        }
+    }
+    
+    @Test
+    void sortsNonAsciiTextInCollatorOrder() {
+        String[] values = randomText(2_000, "aAeEéÉzZ ü-", 1);
+        Collator collator = Collator.getInstance(Locale.GERMAN);
+        assertArrayEquals(collatorOrder(values, collator), SortPermutations.byText(values, collator));
+    }
+    
+    @Test
+    void keepsRowOrderForEqualValues() {
+        String[] values = {"b", "A", "a", null, "B", "a", null, "A"};
+        Collator collator = Collator.getInstance(Locale.ENGLISH);
+        collator.setStrength(Collator.PRIMARY);
+        assertArrayEquals(new int[] {3, 6, 1, 2, 5, 7, 0, 4}, SortPermutations.byText(values, collator));
+    }
+    
+    // What byText promises: the order of the collation keys, nulls first, ties in row order.
+    // Collator.compare is not used, as for French it can disagree with the keys.
+    private static int[] collatorOrder(String[] values, Collator collator) {
+        CollationKey[] keys = new CollationKey[values.length];
+        for (int row = 0; row < values.length; row++) {
+            keys[row] = values[row] != null ? collator.getCollationKey(values[row]) : null;
+        }
+        Comparator<Integer> byKey = Comparator.comparing(row -> keys[row], Comparator.nullsFirst(Comparator.naturalOrder()));
+        return IntStream.range(0, values.length).boxed().sorted(byKey).mapToInt(Integer::intValue).toArray();
+    }
+    
+    private static String[] randomText(int count, String extraCharacters, long seed) {
+        Random random = new Random(seed);
+        String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789" + extraCharacters;
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(50) == 0) {
+                continue; // null
+            }
+            StringBuilder value = new StringBuilder();
+            for (int length = random.nextInt(12); length > 0; length--) {
+                value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            values[i] = value.toString();
+        }
+        return values;
+    }
+}